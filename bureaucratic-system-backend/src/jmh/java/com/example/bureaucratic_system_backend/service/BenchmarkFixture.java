@@ -0,0 +1,178 @@
+package com.example.bureaucratic_system_backend.service;
+
+import com.example.bureaucratic_system_backend.config.VirtualThreads;
+import com.example.bureaucratic_system_backend.model.Book;
+import com.example.bureaucratic_system_backend.model.Borrows;
+import com.example.bureaucratic_system_backend.store.DocumentStore;
+import com.example.bureaucratic_system_backend.store.EmbeddedDocumentStore;
+import com.example.bureaucratic_system_backend.store.InstrumentedDocumentStore;
+import com.example.bureaucratic_system_backend.store.LatencyDocumentStore;
+import com.example.bureaucratic_system_backend.store.Write;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.composite.CompositeMeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * The service graph the Spring context would build, wired by hand on top of an in-memory store
+ * with injected latency, so benchmarks run without Firebase or a Spring context.
+ *
+ * Seed data first, then call {@link #start}: the indexes load from the store when they are
+ * created, just as they do at application startup.
+ *
+ * With {@code metrics} off, meters register with an empty composite registry, which makes them
+ * no-ops; comparing both settings shows the cost of the instrumentation.
+ */
+final class BenchmarkFixture implements AutoCloseable {
+
+    static final String AUTHOR = "Benchmark Author";
+
+    private final DocumentStore store;
+    private final MeterRegistry meterRegistry;
+    private int books = 0;
+
+    FirebaseService firebaseService;
+    MembershipCache membershipCache;
+    CatalogIndex catalogIndex;
+    ActiveBorrowIndex activeBorrowIndex;
+    KeyedLockRegistry keyedLocks;
+    IdAllocator idAllocator;
+    BorrowService borrowService;
+    FeeService feeService;
+    ReturnService returnService;
+    LoanTicketStore loanTickets;
+    LoanWaitlist waitlist;
+
+    BenchmarkFixture(long latencyMicros) {
+        this(latencyMicros, false);
+    }
+
+    BenchmarkFixture(long latencyMicros, boolean metrics) {
+        this.meterRegistry = metrics ? new SimpleMeterRegistry() : new CompositeMeterRegistry();
+        this.store = new InstrumentedDocumentStore(
+                new LatencyDocumentStore(EmbeddedDocumentStore.inMemory(), latencyMicros), meterRegistry);
+        FirebaseService.useDocumentStore(store);
+    }
+
+    static String title(int index) {
+        return "Title " + index;
+    }
+
+    static String citizenId(int index) {
+        return "C" + index;
+    }
+
+    static String membershipId(int index) {
+        return "M" + index;
+    }
+
+    // ----------------------- Seeding -----------------------
+
+    void seedTitles(String prefix, int titles, int copiesPerTitle, boolean available) {
+        List<Write> writes = new ArrayList<>();
+        for (int title = 0; title < titles; title++) {
+            for (int copy = 0; copy < copiesPerTitle; copy++) {
+                String bookId = String.valueOf(++books);
+                writes.add(Write.set("books", bookId, new Book(bookId, prefix + title, AUTHOR, available)));
+            }
+        }
+        commitAll(writes);
+    }
+
+    void seedMembers(int members) {
+        List<Write> writes = new ArrayList<>();
+        String issueDate = LocalDate.now().toString();
+        for (int i = 0; i < members; i++) {
+            writes.add(Write.set("citizen", citizenId(i), Map.of("id", citizenId(i), "name", "Citizen " + i)));
+            writes.add(Write.set("memberships", membershipId(i),
+                    Map.of("id", membershipId(i), "issueDate", issueDate, "citizenId", citizenId(i))));
+        }
+        commitAll(writes);
+    }
+
+    // Returned borrows, {@code overdueDays} late (0 or less means returned on time)
+    void seedReturnedBorrows(String prefix, int count, int overdueDays) {
+        List<Write> writes = new ArrayList<>();
+        LocalDate returnDate = LocalDate.now();
+        String dueDate = returnDate.minusDays(overdueDays).toString();
+        String borrowDate = returnDate.minusDays(overdueDays + 30L).toString();
+        for (int i = 0; i < count; i++) {
+            Borrows borrow = new Borrows(prefix + i, "1", membershipId(i), borrowDate, dueDate, returnDate.toString());
+            writes.add(Write.set("borrows", borrow.getId(), borrow));
+        }
+        commitAll(writes);
+    }
+
+    private void commitAll(List<Write> writes) {
+        int batch = store.maxWritesPerCommit();
+        for (int from = 0; from < writes.size(); from += batch) {
+            FirebaseService.await(store.commit(writes.subList(from, Math.min(from + batch, writes.size()))));
+        }
+    }
+
+    // ----------------------- Services -----------------------
+
+    BenchmarkFixture start(int membershipCacheEntries) {
+        membershipCache = new MembershipCache(membershipCacheEntries);
+        firebaseService = new FirebaseService(membershipCache);
+        catalogIndex = new CatalogIndex();
+        activeBorrowIndex = new ActiveBorrowIndex();
+        keyedLocks = new KeyedLockRegistry();
+        idAllocator = new IdAllocator(firebaseService, 100, 0);
+        borrowService = new BorrowService(firebaseService, catalogIndex, activeBorrowIndex, keyedLocks);
+        feeService = new FeeService(firebaseService, keyedLocks);
+        loanTickets = new LoanTicketStore(100_000, 30);
+        waitlist = new LoanWaitlist(keyedLocks, meterRegistry, 100);
+        returnService = new ReturnService(borrowService, feeService, firebaseService, catalogIndex, waitlist,
+                membershipCache, idAllocator, loanTickets);
+        awaitIndexes();
+        return this;
+    }
+
+    BookLoaningService newLoaningService(int counters, boolean virtualThreads) {
+        return newLoaningService(counters, virtualThreads, new LoanDispatchQueue(1024, LoanDispatchQueue.WaitStrategy.BLOCKING));
+    }
+
+    BookLoaningService newLoaningService(int counters, boolean virtualThreads, LoanDispatcher dispatcher) {
+        return new BookLoaningService(borrowService, dispatcher,
+                catalogIndex, membershipCache, idAllocator, keyedLocks, loanTickets, waitlist,
+                counterThreadFactory(virtualThreads), meterRegistry,
+                counters);
+    }
+
+    // Daemon threads: counters never exit on their own and must not keep the benchmark JVM alive
+    private static ThreadFactory counterThreadFactory(boolean virtualThreads) {
+        if (virtualThreads && VirtualThreads.isSupported()) {
+            return VirtualThreads.factory("counter-");
+        }
+        AtomicInteger sequence = new AtomicInteger(1);
+        return runnable -> {
+            Thread thread = new Thread(runnable, "counter-" + sequence.getAndIncrement());
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+
+    private void awaitIndexes() {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(30);
+        while (!catalogIndex.isReady() || catalogIndex.size() < books || !activeBorrowIndex.isReady()
+                || !waitlist.isReady()) {
+            if (System.nanoTime() > deadline) {
+                throw new IllegalStateException("Catalog, borrow index or waitlist did not load " + books + " books in time.");
+            }
+            Thread.onSpinWait();
+        }
+    }
+
+    @Override
+    public void close() {
+        store.close();
+    }
+}
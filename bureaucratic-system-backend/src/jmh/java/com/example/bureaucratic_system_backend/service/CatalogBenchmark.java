@@ -0,0 +1,60 @@
+package com.example.bureaucratic_system_backend.service;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@link FirebaseService#getAllBooksGroupedByAuthorAndName}, the catalog listing, over catalogs
+ * of {@code books} copies with four copies per title, half of them on loan.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Xms1g")
+@Threads(4)
+public class CatalogBenchmark {
+
+    @Param({"1000", "10000"})
+    int books;
+
+    @Param({"0", "1000"})
+    long latencyMicros;
+
+    BenchmarkFixture fixture;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        fixture = new BenchmarkFixture(latencyMicros);
+        fixture.seedTitles("Title ", books / 4, 2, true);
+        fixture.seedTitles("Title ", books / 4, 2, false);
+        fixture.start(10_000);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        fixture.close();
+    }
+
+    @Benchmark
+    public List<Map<String, Object>> getAllBooksGroupedByAuthorAndName() {
+        return fixture.firebaseService.getAllBooksGroupedByAuthorAndName();
+    }
+}
@@ -0,0 +1,103 @@
+package com.example.bureaucratic_system_backend.service;
+
+import com.example.bureaucratic_system_backend.model.Citizen;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+import static com.example.bureaucratic_system_backend.service.BenchmarkFixture.AUTHOR;
+
+/**
+ * Requests going through {@link BookLoaningService#addCitizenToQueue} and the counter threads,
+ * measured from enqueueing a batch until every request in it has been handled.
+ *
+ * Every member already holds the title they ask for, so each request ends at the duplicate check
+ * and the catalog never changes; what is measured is the queue hand-off, the counter loop and the
+ * membership lookup. With {@code membershipCacheEntries=0} that lookup reaches the store on every
+ * request, so the injected latency shows how well more counters hide it.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Xms1g")
+public class DispatchBenchmark {
+
+    private static final int MEMBERS = 256;
+    private static final int BATCH = 64;
+
+    @Param({"1", "2", "4", "8"})
+    int counters;
+
+    @Param({"0", "1000"})
+    long latencyMicros;
+
+    // Micrometer instrumentation on or off (no-op meters), to check its overhead
+    @Param({"false", "true"})
+    boolean metrics;
+
+    @Param({"0", "10000"})
+    int membershipCacheEntries;
+
+    @Param({"false", "true"})
+    boolean virtualThreads;
+
+    // fifo: LoanDispatchQueue ring buffer; fair: FairShareLoanQueue round robin between citizens
+    @Param({"fifo", "fair"})
+    String scheduling;
+
+    private BenchmarkFixture fixture;
+    private BookLoaningService loaningService;
+    private final Citizen[] citizens = new Citizen[MEMBERS];
+    private int next = 0;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        fixture = new BenchmarkFixture(latencyMicros, metrics);
+        fixture.seedMembers(MEMBERS);
+        fixture.seedTitles("Title ", 1, MEMBERS, true);
+        fixture.start(membershipCacheEntries);
+
+        BookLoaningService setupService = fixture.newLoaningService(0, false);
+        for (int i = 0; i < MEMBERS; i++) {
+            citizens[i] = new Citizen(BenchmarkFixture.citizenId(i), "Citizen " + i);
+            setupService.tryToBorrowBook(citizens[i].getId(), BenchmarkFixture.title(0), AUTHOR);
+        }
+        LoanDispatcher dispatcher = scheduling.equals("fair")
+                ? new FairShareLoanQueue(1024, 16, 1)
+                : new LoanDispatchQueue(1024, LoanDispatchQueue.WaitStrategy.BLOCKING);
+        loaningService = fixture.newLoaningService(counters, virtualThreads, dispatcher);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        fixture.close();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BATCH)
+    public void dispatch() {
+        long target = loaningService.getProcessedRequests() + BATCH;
+        for (int i = 0; i < BATCH; i++) {
+            Citizen citizen = citizens[next++ % MEMBERS];
+            loaningService.addCitizenToQueue(citizen, BenchmarkFixture.title(0), AUTHOR);
+        }
+        while (loaningService.getProcessedRequests() < target) {
+            Thread.onSpinWait();
+        }
+    }
+}
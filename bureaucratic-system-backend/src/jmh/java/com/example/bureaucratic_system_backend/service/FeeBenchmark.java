@@ -0,0 +1,85 @@
+package com.example.bureaucratic_system_backend.service;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * {@link FeeService#generateOverdueFee} for returned borrows. With {@code overdue=true} a fee is
+ * written and then deleted again so the next round can generate it anew; each thread works on
+ * its own borrows so threads never collide on the same fee.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Xms1g")
+@Threads(4)
+public class FeeBenchmark {
+
+    // Borrows per thread; must cover the benchmark thread count (-t) times this
+    private static final int BORROWS_PER_THREAD = 64;
+    private static final int MAX_THREADS = 64;
+
+    @Param({"0", "200", "1000"})
+    long latencyMicros;
+
+    @Param({"false", "true"})
+    boolean overdue;
+
+    BenchmarkFixture fixture;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        fixture = new BenchmarkFixture(latencyMicros);
+        fixture.seedMembers(BORROWS_PER_THREAD * MAX_THREADS);
+        fixture.seedReturnedBorrows("R", BORROWS_PER_THREAD * MAX_THREADS, overdue ? 10 : 0);
+        fixture.start(10_000);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        fixture.close();
+    }
+
+    @State(Scope.Thread)
+    public static class BorrowSlice {
+        private static final AtomicInteger nextSlice = new AtomicInteger();
+
+        private int first;
+        private int next;
+
+        @Setup(Level.Trial)
+        public void setUp() {
+            first = (nextSlice.getAndIncrement() % MAX_THREADS) * BORROWS_PER_THREAD;
+        }
+
+        String nextBorrowId() {
+            return "R" + (first + next++ % BORROWS_PER_THREAD);
+        }
+    }
+
+    @Benchmark
+    public void generateOverdueFee(BorrowSlice slice) {
+        String borrowId = slice.nextBorrowId();
+        fixture.feeService.generateOverdueFee(borrowId);
+        if (overdue) {
+            fixture.firebaseService.deleteFee(borrowId); // The fee ID is the borrow ID
+        }
+    }
+}
@@ -0,0 +1,125 @@
+package com.example.bureaucratic_system_backend.service;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static com.example.bureaucratic_system_backend.service.BenchmarkFixture.AUTHOR;
+
+/**
+ * The loan path a counter runs ({@code BookLoaningService.tryToBorrowBook}) and the return path
+ * ({@link ReturnService#processReturn}).
+ *
+ * A loan is always followed by its return, otherwise the catalog runs dry after a few
+ * invocations and the rest only measure the "not available" branch. Contention is set with
+ * {@code titles}: all threads share the same {@code titles * copiesPerTitle} copies, so fewer
+ * titles means more threads competing for the same book locks and preconditions.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Xms1g")
+@Threads(4)
+public class LoanBenchmark {
+
+    // Must cover the benchmark thread count (-t)
+    private static final int MEMBERS = 64;
+
+    @Param({"0", "200", "1000"})
+    long latencyMicros;
+
+    // Micrometer instrumentation on or off (no-op meters), to check its overhead
+    @Param({"false", "true"})
+    boolean metrics;
+
+    @Param({"1", "16", "256"})
+    int titles;
+
+    @Param({"4"})
+    int copiesPerTitle;
+
+    BenchmarkFixture fixture;
+    BookLoaningService loaningService;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        fixture = new BenchmarkFixture(latencyMicros, metrics);
+        fixture.seedMembers(MEMBERS);
+        fixture.seedTitles("Title ", titles, copiesPerTitle, true);
+        fixture.seedTitles("Held ", MEMBERS, 1, true);
+        fixture.start(10_000);
+        loaningService = fixture.newLoaningService(0, false); // Invoked directly, no counter threads
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        fixture.close();
+    }
+
+    @State(Scope.Thread)
+    public static class Member {
+        private static final AtomicInteger nextIndex = new AtomicInteger();
+
+        int index;
+        String citizenId;
+        String membershipId;
+        private int nextTitle;
+
+        @Setup(Level.Trial)
+        public void setUp() {
+            index = nextIndex.getAndIncrement() % MEMBERS;
+            citizenId = BenchmarkFixture.citizenId(index);
+            membershipId = BenchmarkFixture.membershipId(index);
+            nextTitle = index;
+        }
+
+        String nextTitle(int titles) {
+            return BenchmarkFixture.title(nextTitle++ % titles);
+        }
+    }
+
+    // The member already holds a copy of this title, so every request for it is a duplicate
+    @State(Scope.Thread)
+    public static class HeldLoan {
+        String title;
+
+        @Setup(Level.Trial)
+        public void setUp(LoanBenchmark benchmark, Member member) {
+            title = "Held " + member.index;
+            benchmark.loaningService.tryToBorrowBook(member.citizenId, title, AUTHOR);
+        }
+    }
+
+    @Benchmark
+    public boolean borrowAndReturn(Member member) {
+        String title = member.nextTitle(titles);
+        loaningService.tryToBorrowBook(member.citizenId, title, AUTHOR);
+        try {
+            fixture.returnService.processReturn(member.membershipId, title, AUTHOR);
+            return true;
+        } catch (RuntimeException e) {
+            return false; // Every copy was on loan to other threads: the request joined the waitlist instead
+        }
+    }
+
+    @Benchmark
+    public void borrowDuplicate(Member member, HeldLoan heldLoan) {
+        loaningService.tryToBorrowBook(member.citizenId, heldLoan.title, AUTHOR);
+    }
+}
@@ -0,0 +1,63 @@
+package com.example.bureaucratic_system_backend.store;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * Wraps a store and delays every result by a fixed latency, standing in for the round trip to
+ * Firestore. The operation itself runs immediately, so a value read is already that old when the
+ * caller sees it, as with a remote store.
+ */
+public class LatencyDocumentStore implements DocumentStore {
+
+    private final DocumentStore delegate;
+    private final Executor delayed; // null when there is no latency to inject
+
+    public LatencyDocumentStore(DocumentStore delegate, long latencyMicros) {
+        this.delegate = delegate;
+        this.delayed = latencyMicros > 0
+                ? CompletableFuture.delayedExecutor(latencyMicros, TimeUnit.MICROSECONDS)
+                : null;
+    }
+
+    @Override
+    public CompletableFuture<StoredDocument> get(String collection, String id) {
+        return delay(delegate.get(collection, id));
+    }
+
+    @Override
+    public CompletableFuture<List<StoredDocument>> query(Query query) {
+        return delay(delegate.query(query));
+    }
+
+    @Override
+    public CompletableFuture<Void> commit(List<Write> writes) {
+        return delay(delegate.commit(writes));
+    }
+
+    @Override
+    public void listen(String collection, Consumer<ChangeSet> listener) {
+        delegate.listen(collection, listener);
+    }
+
+    @Override
+    public int maxWritesPerCommit() {
+        return delegate.maxWritesPerCommit();
+    }
+
+    @Override
+    public void close() {
+        delegate.close();
+    }
+
+    private <T> CompletableFuture<T> delay(CompletableFuture<T> result) {
+        if (delayed == null) {
+            return result;
+        }
+        return result.whenCompleteAsync((value, error) -> {
+        }, delayed);
+    }
+}
@@ -1,15 +1,15 @@
 package com.example.bureaucratic_system_backend;
 
-import com.example.bureaucratic_system_backend.config.FirebaseConfig;
 import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
+import org.springframework.scheduling.annotation.EnableScheduling;
 
 @SpringBootApplication
+@EnableScheduling
 public class BureaucraticSystemBackendApplication {
 
-	public static void main(String[] args) throws Exception {
-		FirebaseConfig firebaseConfig = new FirebaseConfig();
-		firebaseConfig.initializeFirebase();
+	public static void main(String[] args) {
+		// Firebase is initialized by FirebaseConfig, once the storage settings are known
 		SpringApplication.run(BureaucraticSystemBackendApplication.class, args);
 		//System.out.println("miau");
 	}
@@ -0,0 +1,78 @@
+package com.example.bureaucratic_system_backend.config;
+
+import com.example.bureaucratic_system_backend.service.FairShareLoanQueue;
+import com.example.bureaucratic_system_backend.service.JournaledLoanDispatcher;
+import com.example.bureaucratic_system_backend.service.LoanDispatchQueue;
+import com.example.bureaucratic_system_backend.service.LoanDispatcher;
+import com.example.bureaucratic_system_backend.service.LoanJournal;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Chooses how loan requests are scheduled onto the counters.
+ *
+ * {@code fifo} (default) is the lock-free ring buffer: strict arrival order, no allocation per
+ * request. {@code fair} round-robins between citizens and drops duplicates of pending requests,
+ * at the cost of a lock around the queue.
+ *
+ * With {@code loan.journal.enabled} (default) the queue is journaled to
+ * {@code loan.journal.directory}, so requests still waiting survive a restart ({@link LoanJournal}).
+ */
+@Configuration
+public class DispatchConfig {
+
+    @Bean
+    public LoanDispatcher loanDispatcher(@Value("${loan.dispatch.scheduling:fifo}") String scheduling,
+                                         @Value("${loan.dispatch.capacity:1024}") int capacity,
+                                         @Value("${loan.dispatch.wait-strategy:blocking}") String waitStrategy,
+                                         @Value("${loan.dispatch.fair.max-per-citizen:16}") int maxPerCitizen,
+                                         @Value("${loan.dispatch.fair.quantum:1}") int quantum,
+                                         @Value("${loan.journal.enabled:true}") boolean journalEnabled,
+                                         @Value("${loan.journal.directory:data/loan-journal}") String journalDirectory,
+                                         @Value("${loan.journal.segment-bytes:4194304}") int segmentBytes,
+                                         @Value("${loan.journal.flush-interval-millis:5}") long flushIntervalMillis,
+                                         @Value("${loan.journal.durable-enqueue:false}") boolean durableEnqueue,
+                                         MeterRegistry meterRegistry) {
+        LoanDispatcher dispatcher;
+        switch (scheduling.trim().toLowerCase()) {
+            case "fifo":
+                dispatcher = new LoanDispatchQueue(capacity,
+                        LoanDispatchQueue.WaitStrategy.valueOf(waitStrategy.trim().toUpperCase()));
+                break;
+            case "fair":
+                FairShareLoanQueue queue = new FairShareLoanQueue(capacity, maxPerCitizen, quantum);
+                FunctionCounter.builder("loan.queue.duplicates", queue, FairShareLoanQueue::getSuppressedDuplicates)
+                        .description("Loan requests dropped because an identical one was still queued")
+                        .register(meterRegistry);
+                dispatcher = queue;
+                break;
+            default:
+                throw new IllegalArgumentException("Unknown loan.dispatch.scheduling: " + scheduling + " (expected fifo or fair)");
+        }
+        if (!journalEnabled) {
+            return dispatcher;
+        }
+
+        LoanJournal journal;
+        try {
+            journal = new LoanJournal(Path.of(journalDirectory), segmentBytes, flushIntervalMillis,
+                    TimeUnit.MILLISECONDS, durableEnqueue);
+        } catch (IOException e) {
+            throw new IllegalStateException("Could not open the loan journal in " + journalDirectory + ": " + e.getMessage(), e);
+        }
+        // Closed with the context (inferred close()), which forces the journal to disk
+        JournaledLoanDispatcher journaled = new JournaledLoanDispatcher(dispatcher, journal);
+        Gauge.builder("loan.journal.pending", journaled, JournaledLoanDispatcher::getJournaledRequests)
+                .description("Loan requests journaled and not yet acknowledged by a counter")
+                .register(meterRegistry);
+        return journaled;
+    }
+}
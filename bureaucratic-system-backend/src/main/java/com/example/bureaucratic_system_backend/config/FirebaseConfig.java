@@ -3,20 +3,34 @@ package com.example.bureaucratic_system_backend.config;
 import com.google.auth.oauth2.GoogleCredentials;
 import com.google.firebase.FirebaseApp;
 import com.google.firebase.FirebaseOptions;
+import jakarta.annotation.PostConstruct;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Configuration;
 
-import javax.annotation.PostConstruct;
 import java.io.InputStream;
 
+// Initializes FirebaseApp when Spring creates this bean, before the document store (see StorageConfig)
 @Configuration
 public class FirebaseConfig {
 
+    private static final Logger logger = LoggerFactory.getLogger(FirebaseConfig.class);
+
+    @Value("${storage.backend:firestore}")
+    private String storageBackend;
+
     @PostConstruct
     public void initializeFirebase() throws Exception {
         // Use classloader to load the file from the resources folder
         InputStream serviceAccount = getClass().getClassLoader().getResourceAsStream("key.json");
 
         if (serviceAccount == null) {
+            if ("embedded".equalsIgnoreCase(storageBackend.trim())) {
+                // Data is local; only Firebase token checks are unavailable
+                logger.warn("key.json not found; running on the embedded store without Firebase.");
+                return;
+            }
             throw new IllegalStateException("key.json file not found in the classpath");
         }
 
@@ -26,7 +40,7 @@ public class FirebaseConfig {
 
         if (FirebaseApp.getApps().isEmpty()) {
             FirebaseApp.initializeApp(options);
-            System.out.println("Firebase has been initialized successfully!");
+            logger.info("Firebase has been initialized successfully!");
         }
     }
 }
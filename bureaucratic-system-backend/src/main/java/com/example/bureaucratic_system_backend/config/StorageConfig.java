@@ -0,0 +1,48 @@
+package com.example.bureaucratic_system_backend.config;
+
+import com.example.bureaucratic_system_backend.service.FirebaseService;
+import com.example.bureaucratic_system_backend.store.DocumentStore;
+import com.example.bureaucratic_system_backend.store.EmbeddedDocumentStore;
+import com.example.bureaucratic_system_backend.store.FirestoreDocumentStore;
+import com.example.bureaucratic_system_backend.store.InstrumentedDocumentStore;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.DependsOn;
+
+import java.io.IOException;
+import java.nio.file.Paths;
+
+/**
+ * Selects where documents live: {@code storage.backend=firestore} (default) or {@code embedded}
+ * for a single-node deployment that keeps its data on local disk and needs no Google Cloud access.
+ *
+ * Beans that use {@link FirebaseService}'s static methods while being constructed declare
+ * {@code @DependsOn("documentStore")}.
+ */
+@Configuration
+public class StorageConfig {
+
+    private static final Logger logger = LoggerFactory.getLogger(StorageConfig.class);
+
+    @Bean(destroyMethod = "close")
+    @DependsOn("firebaseConfig") // FirebaseApp must exist before the Firestore store is used
+    public DocumentStore documentStore(@Value("${storage.backend:firestore}") String backend,
+                                       @Value("${storage.embedded.directory:data/store}") String directory,
+                                       @Value("${storage.embedded.fsync:true}") boolean fsync,
+                                       @Value("${storage.embedded.snapshot-interval:10000}") int snapshotInterval,
+                                       MeterRegistry meterRegistry) throws IOException {
+        DocumentStore backendStore = switch (backend.trim().toLowerCase()) {
+            case "firestore" -> new FirestoreDocumentStore();
+            case "embedded" -> new EmbeddedDocumentStore(Paths.get(directory), fsync, snapshotInterval);
+            default -> throw new IllegalArgumentException("Unknown storage.backend: " + backend + ". Use firestore or embedded.");
+        };
+        DocumentStore store = new InstrumentedDocumentStore(backendStore, meterRegistry);
+        FirebaseService.useDocumentStore(store);
+        logger.info("Using {} document store.", backend);
+        return store;
+    }
+}
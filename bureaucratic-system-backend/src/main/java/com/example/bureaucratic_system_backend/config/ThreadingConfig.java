@@ -0,0 +1,57 @@
+package com.example.bureaucratic_system_backend.config;
+
+import org.apache.coyote.ProtocolHandler;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.web.embedded.tomcat.TomcatProtocolHandlerCustomizer;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Chooses between platform and virtual threads for the counters and for Tomcat.
+ *
+ * Uses the same property as Spring Boot 3.2+ ({@code spring.threads.virtual.enabled}).
+ * The project still compiles for Java 17, so virtual threads are looked up reflectively and
+ * only used when the JVM running the backend is 21 or newer; otherwise we log and stay on
+ * platform threads.
+ */
+@Configuration
+public class ThreadingConfig {
+
+    private static final Logger logger = LoggerFactory.getLogger(ThreadingConfig.class);
+
+    private final boolean virtualThreads;
+
+    public ThreadingConfig(@Value("${spring.threads.virtual.enabled:false}") boolean virtualThreadsRequested) {
+        this.virtualThreads = virtualThreadsRequested && VirtualThreads.isSupported();
+        if (virtualThreadsRequested && !virtualThreads) {
+            logger.warn("Virtual threads requested but not supported by Java {}. Using platform threads.",
+                    Runtime.version().feature());
+        }
+        logger.info("Counters and request handlers run on {} threads.", virtualThreads ? "virtual" : "platform");
+    }
+
+    @Bean
+    public ThreadFactory counterThreadFactory() {
+        if (virtualThreads) {
+            return VirtualThreads.factory("counter-");
+        }
+        AtomicInteger sequence = new AtomicInteger(1);
+        return runnable -> new Thread(runnable, "counter-" + sequence.getAndIncrement());
+    }
+
+    @Bean
+    public TomcatProtocolHandlerCustomizer<ProtocolHandler> virtualThreadRequestHandlers() {
+        return protocolHandler -> {
+            if (virtualThreads) {
+                ExecutorService executor = VirtualThreads.newPerTaskExecutor();
+                protocolHandler.setExecutor(executor);
+            }
+        };
+    }
+}
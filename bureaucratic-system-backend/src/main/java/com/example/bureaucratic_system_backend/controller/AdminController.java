@@ -3,21 +3,32 @@ package com.example.bureaucratic_system_backend.controller;
 import com.example.bureaucratic_system_backend.model .*;
 import com.example.bureaucratic_system_backend.service.AdminService;
 import com.example.bureaucratic_system_backend.service.BookLoaningService;
+import com.example.bureaucratic_system_backend.service.CatalogImportService;
+import com.example.bureaucratic_system_backend.service.ExportService;
+import com.example.bureaucratic_system_backend.service.FeeLedgerMigration;
 import com.example.bureaucratic_system_backend.service.FeeService;
 import com.example.bureaucratic_system_backend.service.FirebaseService;
+import com.example.bureaucratic_system_backend.service.IdTokenCache;
+import com.example.bureaucratic_system_backend.service.KeyedLockRegistry;
+import com.example.bureaucratic_system_backend.service.OverdueFeeAccrualJob;
+import com.example.bureaucratic_system_backend.service.StatisticsService;
 import com.google.gson.JsonArray;
 import com.google.gson.JsonElement;
 import com.google.gson.JsonObject;
-import com.google.firebase.auth.FirebaseAuth;
-import com.google.firebase.auth.FirebaseToken;
+import jakarta.servlet.http.HttpServletRequest;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation .*;
+import org.springframework.web.context.request.WebRequest;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
 import java.io.FileWriter;
 import java.nio.file.Paths;
+import java.time.LocalDate;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
@@ -38,10 +49,30 @@ import java.util.Map;
         @Autowired
         private FeeService feeService;
 
-        // Utility method to extract role from Firebase token
+        @Autowired
+        private CatalogImportService catalogImportService;
+
+        @Autowired
+        private KeyedLockRegistry keyedLocks;
+
+        @Autowired
+        private IdTokenCache idTokenCache;
+
+        @Autowired
+        private OverdueFeeAccrualJob overdueFeeAccrualJob;
+
+        @Autowired
+        private FeeLedgerMigration feeLedgerMigration;
+
+        @Autowired
+        private StatisticsService statisticsService;
+
+        @Autowired
+        private ExportService exportService;
+
+        // Utility method to extract role from Firebase token; verified tokens are cached until they expire
         private String extractRoleFromToken(String token) throws Exception {
-            FirebaseToken decodedToken = FirebaseAuth.getInstance().verifyIdToken(token.replace("Bearer ", ""));
-            return (String) decodedToken.getClaims().get("role");
+            return idTokenCache.getRole(token);
         }
 
         // ----------------------- Configuration -----------------------
@@ -143,16 +174,30 @@ import java.util.Map;
             }
         }
         @GetMapping("/counters")
-        public ResponseEntity<List<Counter>> getCounters() {
+        public ResponseEntity<List<Counter>> getCounters(WebRequest request) {
             try {
+                String eTag = ETags.local("counters", FirebaseService.getCountersVersion());
+                if (request.checkNotModified(eTag)) {
+                    return null; // 304 without querying the counters
+                }
                 List<Counter> counters = FirebaseService.getAllCounters();
-                return ResponseEntity.ok(counters);
+                return ResponseEntity.ok().eTag(eTag).body(counters);
             } catch (Exception e) {
+                // No ETag: the next request must read the counters again
                 logger.error("Error fetching counters: {}", e.getMessage());
                 return ResponseEntity.status(500).body(Collections.emptyList());
             }
         }
 
+        // Keys currently locked and how often lock acquisitions had to wait
+        @GetMapping("/lock-stats")
+        public ResponseEntity<Map<String, Object>> getLockStats(@RequestHeader("Authorization") String token) {
+            if (!"admin".equals(token)) {
+                return ResponseEntity.status(403).body(Map.of("error", "Access denied: Admins only."));
+            }
+            return ResponseEntity.ok(keyedLocks.getStats());
+        }
+
         // ----------------------- Book Management -----------------------
 
 
@@ -201,6 +246,49 @@ import java.util.Map;
             }
         }
 
+        @PostMapping("/import-books")
+        public ResponseEntity<Map<String, Object>> importBooks(@RequestHeader("Authorization") String token,
+                                                               @RequestParam(required = false) String format,
+                                                               HttpServletRequest request) {
+            if (!"admin".equals(token)) {
+                return ResponseEntity.status(403).body(Map.of("error", "Access denied: Admins only."));
+            }
+            try {
+                // Streamed straight from the request body; never buffered whole
+                CatalogImportService.Format importFormat = (format != null)
+                        ? CatalogImportService.Format.fromString(format)
+                        : formatFromContentType(request.getContentType());
+                CatalogImportService.ImportProgress progress =
+                        catalogImportService.importBooks(request.getInputStream(), importFormat);
+                return ResponseEntity.ok(progress.toMap());
+            } catch (IllegalArgumentException e) {
+                return ResponseEntity.badRequest().body(Map.of("error", e.getMessage()));
+            } catch (Exception e) {
+                logger.error("Error importing books: {}", e.getMessage());
+                return ResponseEntity.status(500).body(Map.of("error", "Internal server error."));
+            }
+        }
+
+        @GetMapping("/import-books/{importId}")
+        public ResponseEntity<Map<String, Object>> getImportProgress(@RequestHeader("Authorization") String token,
+                                                                     @PathVariable String importId) {
+            if (!"admin".equals(token)) {
+                return ResponseEntity.status(403).body(Map.of("error", "Access denied: Admins only."));
+            }
+            CatalogImportService.ImportProgress progress = catalogImportService.getProgress(importId);
+            if (progress == null) {
+                return ResponseEntity.status(404).body(Map.of("error", "Unknown import: " + importId));
+            }
+            return ResponseEntity.ok(progress.toMap());
+        }
+
+        private CatalogImportService.Format formatFromContentType(String contentType) {
+            if (contentType != null && (contentType.contains("ndjson") || contentType.contains("jsonl"))) {
+                return CatalogImportService.Format.NDJSON;
+            }
+            return CatalogImportService.Format.CSV;
+        }
+
         // ----------------------- Citizen Management -----------------------
 
         @PostMapping("/add-citizen")
@@ -302,6 +390,101 @@ import java.util.Map;
             }
         }
 
+        // Runs (or resumes) today's overdue fee accrual now instead of waiting for the schedule
+        @PostMapping("/fees/accrue-overdue")
+        public ResponseEntity<Map<String, Object>> accrueOverdueFees(@RequestHeader("Authorization") String token) {
+            if (!"admin".equals(token)) {
+                return ResponseEntity.status(403).body(Map.of("error", "Access denied: Admins only."));
+            }
+            try {
+                return ResponseEntity.ok(overdueFeeAccrualJob.run(LocalDate.now()));
+            } catch (IllegalStateException e) {
+                return ResponseEntity.status(409).body(Map.of("error", e.getMessage()));
+            } catch (Exception e) {
+                logger.error("Error accruing overdue fees: {}", e.getMessage());
+                return ResponseEntity.status(500).body(Map.of("error", "Internal server error."));
+            }
+        }
+
+        // Converts fees stored as dollar strings to cents and counts them into the balances; safe to repeat
+        @PostMapping("/fees/migrate-ledger")
+        public ResponseEntity<Map<String, Object>> migrateFeeLedger(@RequestHeader("Authorization") String token) {
+            if (!"admin".equals(token)) {
+                return ResponseEntity.status(403).body(Map.of("error", "Access denied: Admins only."));
+            }
+            try {
+                return ResponseEntity.ok(feeLedgerMigration.run());
+            } catch (IllegalStateException e) {
+                return ResponseEntity.status(409).body(Map.of("error", e.getMessage()));
+            } catch (Exception e) {
+                logger.error("Error migrating fees: {}", e.getMessage());
+                return ResponseEntity.status(500).body(Map.of("error", "Internal server error."));
+            }
+        }
+
+        // Dashboard figures, read from the precomputed aggregates
+        @GetMapping("/statistics")
+        public ResponseEntity<Map<String, Object>> getStatistics(@RequestHeader("Authorization") String token,
+                                                                 @RequestParam(defaultValue = "10") int top) {
+            if (!"admin".equals(token)) {
+                return ResponseEntity.status(403).body(Map.of("error", "Access denied: Admins only."));
+            }
+            try {
+                return ResponseEntity.ok(statisticsService.getSummary(top));
+            } catch (IllegalArgumentException e) {
+                return ResponseEntity.badRequest().body(Map.of("error", e.getMessage()));
+            } catch (Exception e) {
+                logger.error("Error reading statistics: {}", e.getMessage());
+                return ResponseEntity.status(500).body(Map.of("error", "Internal server error."));
+            }
+        }
+
+        // Streams a whole collection as a JSON array, written as it is read
+        @GetMapping("/export/{collection}")
+        public ResponseEntity<StreamingResponseBody> exportCollection(@RequestHeader("Authorization") String token,
+                                                                      @PathVariable String collection,
+                                                                      @RequestParam(required = false) String membershipId) {
+            if (!"admin".equals(token)) {
+                return ResponseEntity.status(403).build();
+            }
+            try {
+                exportService.validate(collection, membershipId);
+            } catch (IllegalArgumentException e) {
+                return ResponseEntity.badRequest().build();
+            }
+            StreamingResponseBody body = out -> {
+                long started = System.currentTimeMillis();
+                try {
+                    long exported = exportService.export(collection, membershipId, out);
+                    logger.info("Exported {} documents of {} in {} ms.", exported, collection, System.currentTimeMillis() - started);
+                } catch (Exception e) {
+                    // The response is already under way, so it can only end early
+                    logger.error("Export of {} stopped: {}", collection, e.getMessage());
+                    throw e;
+                }
+            };
+            return ResponseEntity.ok()
+                    .contentType(MediaType.APPLICATION_JSON)
+                    .header(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=\"" + collection + ".json\"")
+                    .body(body);
+        }
+
+        // Recomputes the aggregates from the collections; run when the library is quiet
+        @PostMapping("/statistics/rebuild")
+        public ResponseEntity<Map<String, Object>> rebuildStatistics(@RequestHeader("Authorization") String token) {
+            if (!"admin".equals(token)) {
+                return ResponseEntity.status(403).body(Map.of("error", "Access denied: Admins only."));
+            }
+            try {
+                return ResponseEntity.ok(statisticsService.rebuild());
+            } catch (IllegalStateException e) {
+                return ResponseEntity.status(409).body(Map.of("error", e.getMessage()));
+            } catch (Exception e) {
+                logger.error("Error rebuilding statistics: {}", e.getMessage());
+                return ResponseEntity.status(500).body(Map.of("error", "Internal server error."));
+            }
+        }
+
 
 
     }
@@ -3,17 +3,23 @@ package com.example.bureaucratic_system_backend.controller;
 import com.example.bureaucratic_system_backend.model.Citizen;
 import com.example.bureaucratic_system_backend.model.Fees;
 import com.example.bureaucratic_system_backend.model.LoanRequest;
+import com.example.bureaucratic_system_backend.model.LoanTicket;
 import com.example.bureaucratic_system_backend.service.BookLoaningService;
 import com.example.bureaucratic_system_backend.service.CitizenService;
 import com.example.bureaucratic_system_backend.service.EnrollmentDepartmentService;
 import com.example.bureaucratic_system_backend.service.FeeService;
-import com.google.firebase.auth.FirebaseAuth;
-import com.google.firebase.auth.FirebaseToken;
+import com.example.bureaucratic_system_backend.service.IdTokenCache;
+import com.example.bureaucratic_system_backend.service.LoanTicketStore;
+import com.example.bureaucratic_system_backend.service.MembershipCache;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
 
 @RestController
 @RequestMapping("/api/citizens")
@@ -21,6 +27,8 @@ public class ApiController {
 
     private static final Logger logger = LoggerFactory.getLogger(ApiController.class);
 
+    private static final long TICKET_EVENTS_TIMEOUT_MILLIS = TimeUnit.MINUTES.toMillis(5);
+
     @Autowired
     private BookLoaningService bookLoaningService;
     @Autowired
@@ -29,10 +37,15 @@ public class ApiController {
     private FeeService feeService;
     @Autowired
     private EnrollmentDepartmentService enrollmentDepartmentService;
+    @Autowired
+    private MembershipCache membershipCache;
+    @Autowired
+    private IdTokenCache idTokenCache;
+    @Autowired
+    private LoanTicketStore loanTicketStore;
 
     private String extractRoleFromToken(String token) throws Exception {
-        FirebaseToken decodedToken = FirebaseAuth.getInstance().verifyIdToken(token.replace("Bearer ", ""));
-        return (String) decodedToken.getClaims().get("role");
+        return idTokenCache.getRole(token);
     }
 
 
@@ -61,20 +74,71 @@ public class ApiController {
     }
 
     @PostMapping("/loan-request")
-    public ResponseEntity<String> processLoanRequest(@RequestHeader("Authorization") String token, @RequestBody LoanRequest loanRequest) {
+    public ResponseEntity<?> processLoanRequest(@RequestHeader("Authorization") String token, @RequestBody LoanRequest loanRequest) {
         try {
             if (!"citizen".equals(token)) {
                 return ResponseEntity.status(403).body("Access denied: citizen only.");
             }
 
+            // Reject non-members before they take a queue slot and a counter's time
+            if (!membershipCache.hasMembership(loanRequest.getCitizenId())) {
+                return ResponseEntity.badRequest().body("Citizen does not have a valid membership.");
+            }
+
             Citizen citizen = new Citizen();
             citizen.setId(loanRequest.getCitizenId());
-            bookLoaningService.addCitizenToQueue(citizen, loanRequest.getBookTitle(), loanRequest.getBookAuthor());
-            return ResponseEntity.ok("Loan request processed successfully.");
+            // The outcome is reported on the ticket: GET /loan-requests/{ticketId} or its /events stream
+            LoanTicket ticket = bookLoaningService.addCitizenToQueue(citizen, loanRequest.getBookTitle(), loanRequest.getBookAuthor());
+            return ResponseEntity.accepted().body(ticket);
+        } catch (IllegalStateException e) {
+            return ResponseEntity.status(503).body(e.getMessage());
+        } catch (RuntimeException e) {
+            logger.error("Error processing loan request for citizen ID {}: {}", loanRequest.getCitizenId(), e.getMessage());
+            return ResponseEntity.status(500).body("Internal server error.");
         } catch (Exception e) {
             return ResponseEntity.status(401).body("Unauthorized");
         }
     }
+
+    @GetMapping("/loan-requests/{ticketId}")
+    public ResponseEntity<?> getLoanTicket(@RequestHeader("Authorization") String token, @PathVariable String ticketId) {
+        if (!"citizen".equals(token)) {
+            return ResponseEntity.status(403).body("Access denied: citizen only.");
+        }
+        LoanTicket ticket = loanTicketStore.get(ticketId);
+        if (ticket == null) {
+            return ResponseEntity.status(404).body("Loan request not found or expired: " + ticketId);
+        }
+        return ResponseEntity.ok(ticket);
+    }
+
+    // Server-Sent Events: the current ticket, then every change; the stream ends once it is loaned or rejected.
+    // Errors carry no body, since the response is declared as an event stream.
+    @GetMapping(value = "/loan-requests/{ticketId}/events", produces = "text/event-stream")
+    public ResponseEntity<SseEmitter> streamLoanTicket(@RequestHeader("Authorization") String token, @PathVariable String ticketId) {
+        if (!"citizen".equals(token)) {
+            return ResponseEntity.status(403).build();
+        }
+        SseEmitter emitter = new SseEmitter(TICKET_EVENTS_TIMEOUT_MILLIS);
+        Runnable unsubscribe = loanTicketStore.subscribe(ticketId, ticket -> {
+            try {
+                emitter.send(SseEmitter.event().name("status").data(ticket));
+                if (ticket.isFinished()) {
+                    emitter.complete();
+                }
+            } catch (IOException | IllegalStateException e) {
+                emitter.completeWithError(e); // Client went away or the stream already ended
+            }
+        });
+        if (unsubscribe == null) {
+            return ResponseEntity.notFound().build();
+        }
+        emitter.onCompletion(unsubscribe);
+        emitter.onTimeout(unsubscribe);
+        emitter.onError(e -> unsubscribe.run());
+        return ResponseEntity.ok(emitter);
+    }
+
     @GetMapping("/fees/{borrowId}")
     public ResponseEntity<?> getFeeByBorrowId(@RequestHeader("Authorization") String token, @PathVariable String borrowId) {
         try {
@@ -93,6 +157,21 @@ public class ApiController {
             return ResponseEntity.status(500).body("Internal server error.");
         }
     }
+
+    // Outstanding and lifetime fee totals of a membership, in cents (one document read)
+    @GetMapping("/fees/balance/{membershipId}")
+    public ResponseEntity<?> getFeeBalance(@RequestHeader("Authorization") String token, @PathVariable String membershipId) {
+        try {
+            if (!"citizen".equals(token)) {
+                return ResponseEntity.status(403).body("Access denied: citizen only.");
+            }
+            return ResponseEntity.ok(feeService.getBalance(membershipId));
+        } catch (Exception e) {
+            logger.error("Error retrieving fee balance for membership ID {}: {}", membershipId, e.getMessage());
+            return ResponseEntity.status(500).body("Internal server error.");
+        }
+    }
+
     @PostMapping("/mark-as-paid/{borrowId}")
     public ResponseEntity<String> markFeeAsPaid(@RequestHeader("Authorization") String token, @PathVariable String borrowId) {
         try {
@@ -14,8 +14,13 @@ public class BookLoaningController {
 
     @PostMapping("/add-to-queue")
     public String addCitizenToQueue(@RequestBody Citizen citizen, @RequestParam String bookTitle, @RequestParam String bookAuthor) {
-        bookLoaningService.addCitizenToQueue(citizen, bookTitle, bookAuthor);
-        return "Citizen added to the queue for book loaning.";
+        String ticketId = bookLoaningService.addCitizenToQueue(citizen, bookTitle, bookAuthor).getId();
+        return "Citizen added to the queue for book loaning. Ticket ID: " + ticketId;
+    }
+
+    @GetMapping("/queue-depth")
+    public int getQueueDepth() {
+        return bookLoaningService.getQueueDepth();
     }
 
     @PostMapping("/pause-counter/{counterId}")
@@ -0,0 +1,27 @@
+package com.example.bureaucratic_system_backend.controller;
+
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Strong ETags built from resource version counters, so a conditional GET can be answered with
+ * 304 before the body is computed. Callers must read the version before they read the data.
+ */
+final class ETags {
+
+    // Versions counted in memory restart with the process and differ between instances, so their
+    // ETags carry a tag of this process and never match one handed out by another
+    private static final String PROCESS_TAG = Long.toString(ThreadLocalRandom.current().nextLong() & Long.MAX_VALUE, 36);
+
+    private ETags() {
+    }
+
+    // For versions kept in this process
+    static String local(String resource, long version) {
+        return "\"" + resource + "-" + PROCESS_TAG + "-" + version + "\"";
+    }
+
+    // For versions stored with the data, the same on every instance
+    static String stored(String resource, long version) {
+        return "\"" + resource + "-" + version + "\"";
+    }
+}
@@ -1,9 +1,9 @@
 package com.example.bureaucratic_system_backend.controller;
 
 import com.example.bureaucratic_system_backend.model.Book;
-import com.example.bureaucratic_system_backend.model.Borrows;
-import com.example.bureaucratic_system_backend.model.Fees;
 import com.example.bureaucratic_system_backend.model.Membership;
+import com.example.bureaucratic_system_backend.model.Page;
+import com.example.bureaucratic_system_backend.service.CatalogIndex;
 import com.example.bureaucratic_system_backend.service.FirebaseService;
 import com.google.firebase.auth.FirebaseAuth;
 import com.google.firebase.auth.FirebaseToken;
@@ -11,6 +11,7 @@ import org.springframework.web.bind.annotation.*;
 
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.WebRequest;
 
 import java.util.List;
 import java.util.Map;
@@ -20,11 +21,16 @@ import java.util.stream.Collectors;
 @RequestMapping("/api/firebase")
 public class FirebaseController {
 
+    private static final int DEFAULT_PAGE_SIZE = 50;
+    private static final int MAX_PAGE_SIZE = 500;
+
     private final FirebaseService firebaseService;
+    private final CatalogIndex catalogIndex;
 
 
-    public FirebaseController(FirebaseService firebaseService) {
+    public FirebaseController(FirebaseService firebaseService, CatalogIndex catalogIndex) {
         this.firebaseService = firebaseService;
+        this.catalogIndex = catalogIndex;
     }
 
     @GetMapping("/memberships/{citizenId}")
@@ -34,20 +40,67 @@ public class FirebaseController {
     // Enhanced /books endpoint
 
     @GetMapping("/books")
-    public ResponseEntity<List<Map<String, Object>>> getAllBooks() {
-        List<Map<String, Object>> groupedBooks = firebaseService.getAllBooksGroupedByAuthorAndName();
-        return ResponseEntity.ok(groupedBooks);
+    public ResponseEntity<List<Map<String, Object>>> getAllBooks(WebRequest request) {
+        // Served from the catalog index; the full collection scan is only a fallback while it loads
+        if (!catalogIndex.isReady()) {
+            return ResponseEntity.ok(firebaseService.getAllBooksGroupedByAuthorAndName());
+        }
+        String eTag = ETags.local("books", catalogIndex.getVersion());
+        if (request.checkNotModified(eTag)) {
+            return null; // 304, nothing rebuilt
+        }
+        return ResponseEntity.ok().eTag(eTag).body(catalogIndex.getAvailableTitles());
+    }
+    // Every copy, not grouped, one page at a time
+    @GetMapping("/books/copies")
+    public ResponseEntity<Page<Book>> getBookCopies(@RequestParam(required = false) String cursor,
+                                                    @RequestParam(defaultValue = "" + DEFAULT_PAGE_SIZE) int limit) {
+        if (limit < 1 || limit > MAX_PAGE_SIZE) {
+            return ResponseEntity.badRequest().build();
+        }
+        try {
+            return ResponseEntity.ok(FirebaseService.await(firebaseService.getBooksPageAsync(cursor, limit)));
+        } catch (Exception e) {
+            return ResponseEntity.internalServerError().body(null);
+        }
+    }
+    // Size and freshness of the in-memory catalog index
+    @GetMapping("/catalog/status")
+    public ResponseEntity<Map<String, Object>> getCatalogStatus() {
+        return ResponseEntity.ok(Map.of(
+                "ready", catalogIndex.isReady(),
+                "copies", catalogIndex.size(),
+                "titles", catalogIndex.titleCount(),
+                "lastSnapshotLagMillis", catalogIndex.getLastSnapshotLagMillis(),
+                "millisSinceLastSnapshot", catalogIndex.getMillisSinceLastSnapshot()
+        ));
     }
     @PostMapping("/memberships")
     public void addMembership(@RequestBody Membership membership) {
         firebaseService.addMembership(membership);
     }
+    // The whole list, as before paging; with a cursor or a limit, one page ({items, nextCursor})
+    // whose nextCursor is passed as cursor for the following page
     @GetMapping("/borrows/{membershipId}")
-    public ResponseEntity<List<Borrows>> getBorrowsByMembershipId(@PathVariable String membershipId) {
+    public ResponseEntity<?> getBorrowsByMembershipId(@PathVariable String membershipId,
+                                                      @RequestParam(required = false) String cursor,
+                                                      @RequestParam(required = false) Integer limit,
+                                                      WebRequest request) {
+        if (limit != null && (limit < 1 || limit > MAX_PAGE_SIZE)) {
+            return ResponseEntity.badRequest().build();
+        }
         try {
-
-            List<Borrows> borrowsList = firebaseService.getBorrowsByMembershipId(membershipId);
-            return ResponseEntity.ok(borrowsList);
+            // One document read decides whether the listing is queried at all
+            String eTag = ETags.stored("borrows-" + membershipId,
+                    FirebaseService.await(firebaseService.getBorrowsVersionAsync(membershipId)));
+            if (request.checkNotModified(eTag)) {
+                return null;
+            }
+            if (cursor == null && limit == null) {
+                return ResponseEntity.ok().eTag(eTag).body(firebaseService.getBorrowsByMembershipId(membershipId));
+            }
+            return ResponseEntity.ok().eTag(eTag).body(FirebaseService.await(
+                    firebaseService.getBorrowsPageByMembershipIdAsync(membershipId, cursor, pageSize(limit))));
         } catch (Exception e) {
             return ResponseEntity.internalServerError().body(null);
         }
@@ -66,14 +119,32 @@ public class FirebaseController {
         }
     }
 
-    // Fetch fees history by membership ID
+    // Fetch fees history by membership ID, whole or paged like the borrows
     @GetMapping("/fees/{membershipId}")
-    public ResponseEntity<List<Fees>> getFeesByMembershipId(@PathVariable String membershipId) {
+    public ResponseEntity<?> getFeesByMembershipId(@PathVariable String membershipId,
+                                                   @RequestParam(required = false) String cursor,
+                                                   @RequestParam(required = false) Integer limit,
+                                                   WebRequest request) {
+        if (limit != null && (limit < 1 || limit > MAX_PAGE_SIZE)) {
+            return ResponseEntity.badRequest().build();
+        }
         try {
-            List<Fees> feesList = firebaseService.getFeesByMembershipId(membershipId);
-            return ResponseEntity.ok(feesList);
+            String eTag = ETags.stored("fees-" + membershipId,
+                    FirebaseService.await(firebaseService.getFeesVersionAsync(membershipId)));
+            if (request.checkNotModified(eTag)) {
+                return null;
+            }
+            if (cursor == null && limit == null) {
+                return ResponseEntity.ok().eTag(eTag).body(firebaseService.getFeesByMembershipId(membershipId));
+            }
+            return ResponseEntity.ok().eTag(eTag).body(FirebaseService.await(
+                    firebaseService.getFeesPageByMembershipIdAsync(membershipId, cursor, pageSize(limit))));
         } catch (Exception e) {
             return ResponseEntity.internalServerError().body(null);
         }
     }
+
+    private static int pageSize(Integer limit) {
+        return limit != null ? limit : DEFAULT_PAGE_SIZE;
+    }
 }
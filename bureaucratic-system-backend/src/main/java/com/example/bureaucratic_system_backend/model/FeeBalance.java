@@ -0,0 +1,40 @@
+package com.example.bureaucratic_system_backend.model;
+
+// Running totals of a membership's fees, kept in feeBalances/{membershipId}
+public class FeeBalance {
+    private String membershipId;
+    private long outstandingCents; // Unpaid part of the fees
+    private long lifetimeCents;    // All fees ever charged, paid or not
+
+    public FeeBalance(String membershipId, long outstandingCents, long lifetimeCents) {
+        this.membershipId = membershipId;
+        this.outstandingCents = outstandingCents;
+        this.lifetimeCents = lifetimeCents;
+    }
+
+    public FeeBalance() {}
+
+    public String getMembershipId() {
+        return membershipId;
+    }
+
+    public void setMembershipId(String membershipId) {
+        this.membershipId = membershipId;
+    }
+
+    public long getOutstandingCents() {
+        return outstandingCents;
+    }
+
+    public void setOutstandingCents(long outstandingCents) {
+        this.outstandingCents = outstandingCents;
+    }
+
+    public long getLifetimeCents() {
+        return lifetimeCents;
+    }
+
+    public void setLifetimeCents(long lifetimeCents) {
+        this.lifetimeCents = lifetimeCents;
+    }
+}
@@ -1,19 +1,25 @@
 package com.example.bureaucratic_system_backend.model;
 
+// Amounts are in cents. Documents written before that (amount as a dollar string, paid as
+// "Yes"/"No") are still read through FirebaseService.toFee and converted when next written.
+// paidCents is the part of the amount already paid; an overdue fee that grows after being paid
+// is unpaid again, but owes only the increase.
 public class Fees {
     private String id;
     private String membershipId;
-    private String amount;
+    private long amountCents;
     private String borrowId;
-    private String paid;
+    private boolean paid;
+    private long paidCents;
 
     // Constructor
-    public Fees(String id, String membershipId, String amount, String borrowId, String paid) {
+    public Fees(String id, String membershipId, long amountCents, String borrowId, boolean paid) {
         this.id = id;
         this.membershipId = membershipId;
-        this.amount = amount;
+        this.amountCents = amountCents;
         this.borrowId = borrowId;
         this.paid = paid;
+        this.paidCents = paid ? amountCents : 0;
     }
 
     // Default constructor
@@ -36,12 +42,12 @@ public class Fees {
         this.membershipId = membershipId;
     }
 
-    public String getAmount() {
-        return amount;
+    public long getAmountCents() {
+        return amountCents;
     }
 
-    public void setAmount(String amount) {
-        this.amount = amount;
+    public void setAmountCents(long amountCents) {
+        this.amountCents = amountCents;
     }
 
     public String getBorrowId() {
@@ -52,11 +58,19 @@ public class Fees {
         this.borrowId = borrowId;
     }
 
-    public String getPaid() {
+    public boolean isPaid() {
         return paid;
     }
 
-    public void setPaid(String paid) {
+    public void setPaid(boolean paid) {
         this.paid = paid;
     }
-}
\ No newline at end of file
+
+    public long getPaidCents() {
+        return paidCents;
+    }
+
+    public void setPaidCents(long paidCents) {
+        this.paidCents = paidCents;
+    }
+}
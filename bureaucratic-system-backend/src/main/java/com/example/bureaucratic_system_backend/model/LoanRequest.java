@@ -1,9 +1,14 @@
 package com.example.bureaucratic_system_backend.model;
 
+import com.fasterxml.jackson.annotation.JsonIgnore;
+
 public class LoanRequest {
     private String bookTitle;
     private String bookAuthor;
     private String citizenId;
+    // Set by the dispatch queue; not part of the request body
+    private long enqueuedAtNanos;
+    private String ticketId;
 
     // Constructor
     public LoanRequest(String bookTitle, String bookAuthor, String citizenId) {
@@ -40,4 +45,24 @@ public class LoanRequest {
     public void setCitizenId(String citizenId) {
         this.citizenId = citizenId;
     }
+
+    @JsonIgnore
+    public long getEnqueuedAtNanos() {
+        return enqueuedAtNanos;
+    }
+
+    @JsonIgnore
+    public void setEnqueuedAtNanos(long enqueuedAtNanos) {
+        this.enqueuedAtNanos = enqueuedAtNanos;
+    }
+
+    @JsonIgnore
+    public String getTicketId() {
+        return ticketId;
+    }
+
+    @JsonIgnore
+    public void setTicketId(String ticketId) {
+        this.ticketId = ticketId;
+    }
 }
@@ -0,0 +1,76 @@
+package com.example.bureaucratic_system_backend.model;
+
+/**
+ * Status of a queued loan request, returned to the client when the request is accepted.
+ *
+ * Instances are immutable: every status change replaces the ticket, so a ticket handed to a
+ * reader or a subscriber never changes under it.
+ */
+public class LoanTicket {
+
+    public enum Status {
+        QUEUED, PROCESSING, WAITLISTED, LOANED, REJECTED
+    }
+
+    private final String id;
+    private final String citizenId;
+    private final String bookTitle;
+    private final String bookAuthor;
+    private final Status status;
+    private final String borrowId; // Set once LOANED
+    private final String reason;   // Set once REJECTED
+    private final long updatedAt;  // Epoch millis
+
+    public LoanTicket(String id, String citizenId, String bookTitle, String bookAuthor,
+                      Status status, String borrowId, String reason, long updatedAt) {
+        this.id = id;
+        this.citizenId = citizenId;
+        this.bookTitle = bookTitle;
+        this.bookAuthor = bookAuthor;
+        this.status = status;
+        this.borrowId = borrowId;
+        this.reason = reason;
+        this.updatedAt = updatedAt;
+    }
+
+    public LoanTicket withStatus(Status status, String borrowId, String reason) {
+        return new LoanTicket(id, citizenId, bookTitle, bookAuthor, status, borrowId, reason, System.currentTimeMillis());
+    }
+
+    public boolean isFinished() {
+        return status == Status.LOANED || status == Status.REJECTED;
+    }
+
+    // Getters
+    public String getId() {
+        return id;
+    }
+
+    public String getCitizenId() {
+        return citizenId;
+    }
+
+    public String getBookTitle() {
+        return bookTitle;
+    }
+
+    public String getBookAuthor() {
+        return bookAuthor;
+    }
+
+    public Status getStatus() {
+        return status;
+    }
+
+    public String getBorrowId() {
+        return borrowId;
+    }
+
+    public String getReason() {
+        return reason;
+    }
+
+    public long getUpdatedAt() {
+        return updatedAt;
+    }
+}
@@ -0,0 +1,32 @@
+package com.example.bureaucratic_system_backend.model;
+
+import java.util.List;
+
+// One page of a listing; nextCursor is passed back to get the following page, null on the last one
+public class Page<T> {
+    private List<T> items;
+    private String nextCursor;
+
+    public Page(List<T> items, String nextCursor) {
+        this.items = items;
+        this.nextCursor = nextCursor;
+    }
+
+    public Page() {}
+
+    public List<T> getItems() {
+        return items;
+    }
+
+    public void setItems(List<T> items) {
+        this.items = items;
+    }
+
+    public String getNextCursor() {
+        return nextCursor;
+    }
+
+    public void setNextCursor(String nextCursor) {
+        this.nextCursor = nextCursor;
+    }
+}
@@ -0,0 +1,118 @@
+package com.example.bureaucratic_system_backend.service;
+
+import com.example.bureaucratic_system_backend.model.Borrows;
+import com.example.bureaucratic_system_backend.store.ChangeSet;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.context.annotation.DependsOn;
+import org.springframework.stereotype.Component;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * In-memory index of open borrows (no return date), keyed by membership and then by book.
+ *
+ * Filled by the first snapshot of a listener on {@code borrows} and kept current by the changes
+ * that follow, so borrows created, returned or edited by other instances or by an admin are seen
+ * here too. The write paths in {@link BorrowService} and {@link AdminService} also apply their own
+ * commits right away, so this instance never misses a loan it just made while the listener
+ * catches up. Returned borrows are dropped as they arrive, so only open ones are held. Until the
+ * first snapshot arrives {@link #isReady()} is false and callers fall back to store queries.
+ */
+@Component
+@DependsOn("documentStore")
+public class ActiveBorrowIndex {
+
+    private static final Logger logger = LoggerFactory.getLogger(ActiveBorrowIndex.class);
+
+    private final Map<String, Map<String, Borrows>> byMembership = new ConcurrentHashMap<>();
+    private final Map<String, Borrows> byId = new ConcurrentHashMap<>();
+    private volatile boolean ready = false;
+
+    public ActiveBorrowIndex() {
+        FirebaseService.listenToBorrowChanges(this::applySnapshot);
+    }
+
+    public boolean isReady() {
+        return ready;
+    }
+
+    // ----------------------- Lookups -----------------------
+
+    public Borrows find(String membershipId, String bookId) {
+        Map<String, Borrows> borrows = byMembership.get(membershipId);
+        return borrows == null ? null : borrows.get(bookId);
+    }
+
+    // Open borrow of the member for any of the given copies, or null
+    public Borrows findAny(String membershipId, Set<String> bookIds) {
+        Map<String, Borrows> borrows = byMembership.get(membershipId);
+        if (borrows == null) {
+            return null;
+        }
+        for (Borrows borrow : borrows.values()) {
+            if (bookIds.contains(borrow.getBookId())) {
+                return borrow;
+            }
+        }
+        return null;
+    }
+
+    public Collection<Borrows> getOpenBorrows(String membershipId) {
+        Map<String, Borrows> borrows = byMembership.get(membershipId);
+        return borrows == null ? Collections.emptyList() : Collections.unmodifiableCollection(borrows.values());
+    }
+
+    public int size() {
+        return byId.size();
+    }
+
+    // ----------------------- Updates -----------------------
+
+    // Records or replaces a borrow; one with a return date is removed instead
+    public void add(Borrows borrow) {
+        removeById(borrow.getId());
+        if (borrow.getReturnDate() != null) {
+            return;
+        }
+        byId.put(borrow.getId(), borrow);
+        byMembership.compute(borrow.getMembershipId(), (id, borrows) -> {
+            Map<String, Borrows> result = (borrows != null) ? borrows : new ConcurrentHashMap<>();
+            result.put(borrow.getBookId(), borrow);
+            return result;
+        });
+    }
+
+    public void removeById(String borrowId) {
+        Borrows removed = byId.remove(borrowId);
+        if (removed == null) {
+            return;
+        }
+        byMembership.computeIfPresent(removed.getMembershipId(), (id, borrows) -> {
+            borrows.remove(removed.getBookId(), removed);
+            return borrows.isEmpty() ? null : borrows;
+        });
+    }
+
+    // ----------------------- Listener -----------------------
+
+    private void applySnapshot(ChangeSet changeSet) {
+        for (ChangeSet.Change change : changeSet.changes()) {
+            if (change.type() == ChangeSet.Type.REMOVED) {
+                removeById(change.document().id());
+            } else {
+                Borrows borrow = change.document().toObject(Borrows.class);
+                borrow.setId(change.document().id());
+                add(borrow);
+            }
+        }
+        if (!ready) {
+            ready = true;
+            logger.info("Active borrow index loaded with {} open borrows.", byId.size());
+        }
+    }
+}
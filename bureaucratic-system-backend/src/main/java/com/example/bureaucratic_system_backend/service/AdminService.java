@@ -3,16 +3,17 @@ package com.example.bureaucratic_system_backend.service;
 import com.example.bureaucratic_system_backend.model.Book;
 import com.example.bureaucratic_system_backend.model.Borrows;
 import com.example.bureaucratic_system_backend.model.Citizen;
+import com.example.bureaucratic_system_backend.model.Fees;
 import com.example.bureaucratic_system_backend.model.Membership;
+import com.example.bureaucratic_system_backend.store.DocumentMapper;
+import com.example.bureaucratic_system_backend.store.StoredDocument;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.stereotype.Service;
 
-import java.util.List;
 import java.util.Map;
-import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.locks.Lock;
-import java.util.concurrent.locks.ReentrantLock;
 
 @Service
 public class AdminService {
@@ -20,16 +21,19 @@ public class AdminService {
     private static final Logger logger = LoggerFactory.getLogger(AdminService.class);
 
     // Locks for thread-safe operations
-    private final Map<String, Lock> bookLocks = new ConcurrentHashMap<>();
-    private final Map<String, Lock> citizenLocks = new ConcurrentHashMap<>();
-    private final Map<String, Lock> membershipLocks = new ConcurrentHashMap<>();
-    private final Map<String, Lock> feeLocks = new ConcurrentHashMap<>();
+    private final KeyedLockRegistry keyedLocks;
 
     // Firebase service for database operations
     private final FirebaseService firebaseService;
+    private final ActiveBorrowIndex activeBorrowIndex;
+    private final IdAllocator idAllocator;
 
-    public AdminService(FirebaseService firebaseService) {
+    public AdminService(FirebaseService firebaseService, ActiveBorrowIndex activeBorrowIndex, IdAllocator idAllocator,
+                        KeyedLockRegistry keyedLocks) {
         this.firebaseService = firebaseService;
+        this.activeBorrowIndex = activeBorrowIndex;
+        this.idAllocator = idAllocator;
+        this.keyedLocks = keyedLocks;
     }
 
     // ----------------------- Books Management -----------------------
@@ -37,21 +41,12 @@ public class AdminService {
 
     public void addBook(Book book) {
         try {
-            // Fetch all existing book IDs
-            List<String> existingIds = firebaseService.getAllDocumentIds("books");
-
-            // Generate the next available ID
-            int nextId = generateNextId(existingIds);
-            book.setId(String.valueOf(nextId));
+            // Next numeric ID from the reserved block; no scan of existing IDs
+            book.setId(idAllocator.nextBookId());
 
             // Set 'available' to 'true'
             book.setAvailable(true);
 
-            // Check if the book ID already exists (redundant due to ID generation but kept for safety)
-            if (firebaseService.getDocumentById("books", book.getId()) != null) {
-                throw new IllegalArgumentException("Book with ID " + book.getId() + " already exists.");
-            }
-
             // Add the book to Firebase
             firebaseService.addBook(book);
             logger.info("Book added successfully: {}", book.getName());
@@ -61,31 +56,13 @@ public class AdminService {
         }
     }
 
-    /**
-     * Generates the next available numeric ID based on the list of existing IDs.
-     * Assumes IDs are numeric strings.
-     */
-    private int generateNextId(List<String> existingIds) {
-        int maxId = 0;
-        for (String id : existingIds) {
-            try {
-                int numericId = Integer.parseInt(id);
-                maxId = Math.max(maxId, numericId);
-            } catch (NumberFormatException e) {
-                logger.warn("Non-numeric ID found: {}. Ignoring it for ID generation.", id);
-            }
-        }
-        return maxId + 1; // Next ID is the max ID + 1
-    }
-
     public void updateBookField(String bookId, String fieldName, Object value) {
         if (!firebaseService.documentExists("books", bookId)) {
             throw new IllegalArgumentException("Book with ID " + bookId + " does not exist.");
         }
 
         String lockKey = "book:" + bookId + ":" + fieldName;
-        bookLocks.putIfAbsent(lockKey, new ReentrantLock());
-        Lock lock = bookLocks.get(lockKey);
+        Lock lock = keyedLocks.get(lockKey);
 
         lock.lock();
         try {
@@ -104,8 +81,7 @@ public class AdminService {
             throw new IllegalArgumentException("Book with ID " + bookId + " does not exist.");
         }
 
-        bookLocks.putIfAbsent(bookId, new ReentrantLock());
-        Lock lock = bookLocks.get(bookId);
+        Lock lock = keyedLocks.get("book:" + bookId);
 
         lock.lock();
         try {
@@ -140,8 +116,7 @@ public class AdminService {
         }
 
         String lockKey = "citizen:" + citizenId + ":" + fieldName;
-        citizenLocks.putIfAbsent(lockKey, new ReentrantLock());
-        Lock lock = citizenLocks.get(lockKey);
+        Lock lock = keyedLocks.get(lockKey);
 
         lock.lock();
         try {
@@ -160,8 +135,7 @@ public class AdminService {
             throw new IllegalArgumentException("Citizen with ID " + citizenId + " does not exist.");
         }
 
-        citizenLocks.putIfAbsent(citizenId, new ReentrantLock());
-        Lock lock = citizenLocks.get(citizenId);
+        Lock lock = keyedLocks.get("citizen:" + citizenId);
 
         lock.lock();
         try {
@@ -179,10 +153,13 @@ public class AdminService {
 
     public void addMembership(Membership membership) {
         try {
-            if (!firebaseService.documentExists("citizens", membership.getCitizenId())) {
+            CompletableFuture<Boolean> citizenExists = firebaseService.documentExistsAsync("citizens", membership.getCitizenId());
+            CompletableFuture<Boolean> membershipExists = firebaseService.documentExistsAsync("memberships", membership.getMembershipNumber());
+
+            if (!FirebaseService.await(citizenExists)) {
                 throw new IllegalArgumentException("Citizen with ID " + membership.getCitizenId() + " does not exist.");
             }
-            if (firebaseService.getDocumentById("memberships", membership.getMembershipNumber()) != null) {
+            if (FirebaseService.await(membershipExists)) {
                 throw new IllegalArgumentException("Membership with number " + membership.getMembershipNumber() + " already exists.");
             }
             firebaseService.addMembership(membership);
@@ -199,8 +176,7 @@ public class AdminService {
         }
 
         String lockKey = "membership:" + membershipId + ":" + fieldName;
-        membershipLocks.putIfAbsent(lockKey, new ReentrantLock());
-        Lock lock = membershipLocks.get(lockKey);
+        Lock lock = keyedLocks.get(lockKey);
 
         lock.lock();
         try {
@@ -219,8 +195,7 @@ public class AdminService {
             throw new IllegalArgumentException("Membership with ID " + membershipId + " does not exist.");
         }
 
-        membershipLocks.putIfAbsent(membershipId, new ReentrantLock());
-        Lock lock = membershipLocks.get(membershipId);
+        Lock lock = keyedLocks.get("membership:" + membershipId);
 
         lock.lock();
         try {
@@ -236,17 +211,31 @@ public class AdminService {
     // ----------------------- Fees Management -----------------------
 
     public void updateFeeField(String feeId, String fieldName, Object value) {
-        if (!firebaseService.documentExists("fees", feeId)) {
-            throw new IllegalArgumentException("Fee with ID " + feeId + " does not exist.");
+        if ("id".equals(fieldName)) {
+            throw new IllegalArgumentException("The ID of a fee cannot be changed.");
         }
 
-        String lockKey = "fee:" + feeId + ":" + fieldName;
-        feeLocks.putIfAbsent(lockKey, new ReentrantLock());
-        Lock lock = feeLocks.get(lockKey);
+        // Same lock as FeeService: amount, paid state and membership also move the balances
+        Lock lock = keyedLocks.get("fee:" + feeId);
 
         lock.lock();
         try {
-            firebaseService.updateField("fees", feeId, fieldName, value);
+            StoredDocument existing = FirebaseService.await(FirebaseService.getStoredDocumentAsync("fees", feeId));
+            if (existing == null) {
+                throw new IllegalArgumentException("Fee with ID " + feeId + " does not exist.");
+            }
+            Map<String, Object> data = DocumentMapper.toData(FirebaseService.toFee(existing));
+            data.put(fieldName, value);
+
+            // Conditioned on the fee being unchanged since it was read; a conflict is reported, not retried
+            Fees updated = DocumentMapper.toObject(data, Fees.class);
+            // Marked paid or unpaid by hand: the whole amount
+            if ("paid".equals(fieldName)) {
+                updated.setPaidCents(updated.isPaid() ? updated.getAmountCents() : 0);
+            }
+            FeeLedgerBatch batch = new FeeLedgerBatch();
+            batch.change(existing, updated);
+            FirebaseService.commitFees(batch);
             logger.info("Fee field '{}' updated successfully for fee ID: {}", fieldName, feeId);
         } catch (Exception e) {
             logger.error("Error updating fee field '{}' for fee ID: {}", fieldName, feeId, e.getMessage());
@@ -261,8 +250,7 @@ public class AdminService {
             throw new IllegalArgumentException("Fee with ID " + feeId + " does not exist.");
         }
 
-        feeLocks.putIfAbsent(feeId, new ReentrantLock());
-        Lock lock = feeLocks.get(feeId);
+        Lock lock = keyedLocks.get("fee:" + feeId);
 
         lock.lock();
         try {
@@ -280,13 +268,17 @@ public class AdminService {
 
     public void addBorrow(Borrows borrow) {
         try {
-            if (!firebaseService.documentExists("books", borrow.getBookId())) {
+            CompletableFuture<Boolean> bookExists = firebaseService.documentExistsAsync("books", borrow.getBookId());
+            CompletableFuture<Boolean> membershipExists = firebaseService.documentExistsAsync("memberships", borrow.getMembershipId());
+
+            if (!FirebaseService.await(bookExists)) {
                 throw new IllegalArgumentException("Book with ID " + borrow.getBookId() + " does not exist.");
             }
-            if (!firebaseService.documentExists("memberships", borrow.getMembershipId())) {
+            if (!FirebaseService.await(membershipExists)) {
                 throw new IllegalArgumentException("Membership with ID " + borrow.getMembershipId() + " does not exist.");
             }
-            firebaseService.addBorrow(borrow);
+            FirebaseService.await(firebaseService.addBorrowAsync(borrow));
+            activeBorrowIndex.add(borrow);
             logger.info("Borrow record added successfully: {}", borrow.getId());
         } catch (Exception e) {
             logger.error("Error adding borrow record: {}", e.getMessage(), e.getMessage());
@@ -300,12 +292,13 @@ public class AdminService {
         }
 
         String lockKey = "borrow:" + borrowId;
-        feeLocks.putIfAbsent(lockKey, new ReentrantLock());
-        Lock lock = feeLocks.get(lockKey);
+        Lock lock = keyedLocks.get(lockKey);
 
         lock.lock();
         try {
-            firebaseService.updateBorrow(borrowId, updatedBorrow);
+            updatedBorrow.setId(borrowId);
+            FirebaseService.await(firebaseService.updateBorrowAsync(borrowId, updatedBorrow));
+            activeBorrowIndex.add(updatedBorrow);
             logger.info("Borrow record updated successfully: {}", borrowId);
         } catch (Exception e) {
             logger.error("Error updating borrow record with ID: {}", borrowId, e.getMessage());
@@ -1,9 +1,15 @@
 package com.example.bureaucratic_system_backend.service;
 
 import com.example.bureaucratic_system_backend.model.*;
+import com.example.bureaucratic_system_backend.store.StoredDocument;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.context.annotation.DependsOn;
 import org.springframework.stereotype.Service;
 
 import java.io.BufferedReader;
@@ -11,18 +17,30 @@ import java.io.FileReader;
 import java.io.IOException;
 import java.util.*;
 import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.Condition;
 import java.util.concurrent.locks.Lock;
 import java.util.concurrent.locks.ReentrantLock;
 
 @Service
+@DependsOn("documentStore")
 public class BookLoaningService implements Department {
 
     private static final Logger logger = LoggerFactory.getLogger(BookLoaningService.class);
 
+    // How many different copies a counter tries when other instances keep taking them first
+    private static final int MAX_LOAN_ATTEMPTS = 3;
 
-    private final Queue<LoanRequest> queue = new LinkedBlockingQueue<>();
-    private final Map<String, Lock> bookLocks = new ConcurrentHashMap<>();
+
+    private final LoanDispatcher dispatchQueue;
+    private final CatalogIndex catalogIndex;
+    private final MembershipCache membershipCache;
+    private final IdAllocator idAllocator;
+    private final KeyedLockRegistry keyedLocks;
+    private final LoanTicketStore loanTickets;
+    private final LoanWaitlist waitlist;
     private final List<Counter> countersList = new ArrayList<>();
     private static BookLoaningService instance;
 
@@ -34,17 +52,67 @@ public class BookLoaningService implements Department {
     private volatile boolean counter2Paused = false;
 
     private final Map<Integer, Boolean> counterPauseStatus = new ConcurrentHashMap<>();
-    private final Map<Integer, Object> counterLocks = new ConcurrentHashMap<>();
-
+    // ReentrantLock rather than synchronized so paused counters never pin a virtual thread's carrier
+    private final Map<Integer, ReentrantLock> counterLocks = new ConcurrentHashMap<>();
+    private final Map<Integer, Condition> counterResumed = new ConcurrentHashMap<>();
+    private final ThreadFactory counterThreadFactory;
+    // Requests taken off the queue and handled by a counter, whatever their outcome
+    private final LongAdder processedRequests = new LongAdder();
+
+    private final MeterRegistry meterRegistry;
+    private final Timer queueWait;
+    // Micrometer counter, not model.Counter
+    private final Map<LoanOutcome, io.micrometer.core.instrument.Counter> outcomes = new EnumMap<>(LoanOutcome.class);
+
+
+    @Autowired
+    public BookLoaningService(BorrowService borrowService, LoanDispatcher dispatchQueue, CatalogIndex catalogIndex,
+                              MembershipCache membershipCache, IdAllocator idAllocator, KeyedLockRegistry keyedLocks,
+                              LoanTicketStore loanTickets, LoanWaitlist waitlist, @Qualifier("counterThreadFactory") ThreadFactory counterThreadFactory,
+                              MeterRegistry meterRegistry) {
+        this(borrowService, dispatchQueue, catalogIndex, membershipCache, idAllocator, keyedLocks, loanTickets,
+                waitlist, counterThreadFactory, meterRegistry, readCounterConfig());
+    }
 
-    public BookLoaningService(BorrowService borrowService) {
+    // Counter count given directly instead of read from config.txt; used by the benchmarks
+    BookLoaningService(BorrowService borrowService, LoanDispatcher dispatchQueue, CatalogIndex catalogIndex,
+                       MembershipCache membershipCache, IdAllocator idAllocator, KeyedLockRegistry keyedLocks,
+                       LoanTicketStore loanTickets, LoanWaitlist waitlist, ThreadFactory counterThreadFactory, MeterRegistry meterRegistry, int numberOfCounters) {
         this.borrowService = borrowService;
-        int numberOfCounters = readCounterConfig();
+        this.dispatchQueue = dispatchQueue;
+        this.catalogIndex = catalogIndex;
+        this.membershipCache = membershipCache;
+        this.idAllocator = idAllocator;
+        this.keyedLocks = keyedLocks;
+        this.loanTickets = loanTickets;
+        this.waitlist = waitlist;
+        this.counterThreadFactory = counterThreadFactory;
+        this.meterRegistry = meterRegistry;
+
+        Gauge.builder("loan.queue.depth", dispatchQueue, LoanDispatcher::size)
+                .description("Loan requests waiting for a counter")
+                .register(meterRegistry);
+        this.queueWait = Timer.builder("loan.queue.wait")
+                .description("Time from enqueueing a loan request until a counter takes it")
+                .publishPercentileHistogram()
+                .register(meterRegistry);
+        for (LoanOutcome outcome : LoanOutcome.values()) {
+            outcomes.put(outcome, io.micrometer.core.instrument.Counter.builder("loan.outcomes")
+                    .description("Loan requests handled by the counters, by outcome")
+                    .tag("outcome", outcome.tag())
+                    .register(meterRegistry));
+        }
+
+        // Requests replayed from the loan journal are already queued; their tickets must exist before a counter takes them
+        for (LoanJournal.Entry entry : dispatchQueue.recovered()) {
+            loanTickets.restore(entry.ticketId(), entry.citizenId(), entry.bookTitle(), entry.bookAuthor());
+        }
+
         initializeCounters(numberOfCounters);
         logger.info("BookLoaningService initialized with {} counters.", numberOfCounters);
     }
 
-    private int readCounterConfig() {
+    private static int readCounterConfig() {
         try (BufferedReader reader = new BufferedReader(new FileReader("/Users/anisiapirvulescu/Desktop/bureaucratic-system-2/bureaucratic-system-backend/src/main/java/com/example/bureaucratic_system_backend/config/config.txt"))) {
             String line;
             while ((line = reader.readLine()) != null) {
@@ -66,72 +134,129 @@ public class BookLoaningService implements Department {
             final int counterId = i;
 
             // Initialize lock for the counter
-            counterLocks.put(counterId, new Object());
+            ReentrantLock lock = new ReentrantLock();
+            counterLocks.put(counterId, lock);
+            counterResumed.put(counterId, lock.newCondition());
 
             // Add initial paused state for the counter
             counterPauseStatus.put(counterId, false);
 
-            // Create and save the Counter model to Firestore
-            Counter counter = new Counter(counterId, false); // Default: not paused
-            countersList.add(counter);
-            FirebaseService.saveCounterToFirestore(counter);
-
-            logger.info("Counter {} initialized in memory and saved to Firestore.", counterId);
+            countersList.add(new Counter(counterId, false)); // Default: not paused
         }
 
+        // Save all counters to Firestore in batched writes rather than one round trip each
+        FirebaseService.saveCountersToFirestore(countersList);
+        logger.info("{} counters initialized in memory and saved to Firestore.", numberOfCounters);
+
         // Set up Firestore listener for counters
-        FirebaseService.listenToCounterChanges(counterLocks, counterPauseStatus);
+        FirebaseService.listenToCounterChanges(this::applyCounterState);
 
         // Start threads for each counter
         for (int i = 1; i <= numberOfCounters; i++) {
             final int counterId = i;
-            Thread counterThread = new Thread(() -> processQueue(counterId));
+            Thread counterThread = counterThreadFactory.newThread(() -> processQueue(counterId));
             counters.add(counterThread);
             counterThread.start();
 
-            logger.info("Thread for Counter {} started.", counterId);
+            logger.debug("Thread for Counter {} started.", counterId);
         }
     }
 
-    public void addCitizenToQueue(Citizen citizen, String bookTitle, String bookAuthor) {
-        synchronized (queue) {
-            queue.add(new LoanRequest(bookTitle, bookAuthor, citizen.getId()));
-            queue.notifyAll();
-            logger.info("Added citizen with ID {} to the queue for book '{}' by '{}'.", citizen.getId(), bookTitle, bookAuthor);
+    /**
+     * Queues a loan request and returns the ticket that reports its outcome. A duplicate of a
+     * request still waiting in the queue gets that request's ticket.
+     *
+     * @throws IllegalStateException if the queue is full or the request cannot be journaled
+     */
+    public LoanTicket addCitizenToQueue(Citizen citizen, String bookTitle, String bookAuthor) {
+        LoanTicket ticket = loanTickets.create(citizen.getId(), bookTitle, bookAuthor);
+        String queuedTicketId;
+        try {
+            queuedTicketId = dispatchQueue.offer(bookTitle, bookAuthor, citizen.getId(), ticket.getId());
+        } catch (RuntimeException e) {
+            loanTickets.discard(ticket.getId()); // Could not be journaled
+            throw e;
+        }
+        if (queuedTicketId == null) {
+            loanTickets.discard(ticket.getId());
+            logger.warn("Loan queue is full ({} requests). Rejected citizen with ID {}.", dispatchQueue.capacity(), citizen.getId());
+            throw new IllegalStateException("Loan queue is full. Please try again later.");
         }
+        if (!queuedTicketId.equals(ticket.getId())) {
+            loanTickets.discard(ticket.getId());
+            LoanTicket pending = loanTickets.get(queuedTicketId);
+            // The pending request's ticket may have expired or been evicted while it waited
+            return (pending != null) ? pending
+                    : loanTickets.restore(queuedTicketId, citizen.getId(), bookTitle, bookAuthor);
+        }
+        logger.info("Added citizen with ID {} to the queue for book '{}' by '{}'.", citizen.getId(), bookTitle, bookAuthor);
+        return ticket;
+    }
+
+    public int getQueueDepth() {
+        return dispatchQueue.size();
+    }
+
+    public long getProcessedRequests() {
+        return processedRequests.sum();
     }
 
     private void processQueue(int counterId) {
-        Object lock = counterLocks.get(counterId);
+        ReentrantLock lock = counterLocks.get(counterId);
+        Condition resumed = counterResumed.get(counterId);
 
         if (lock == null) {
             logger.error("No lock found for counter {}. Exiting thread.", counterId);
             return; // Stop processing if no lock is found
         }
 
+        // Time this counter spends serving, paused and waiting for requests
+        Timer busyTime = counterTimer(counterId, "busy");
+        Timer pausedTime = counterTimer(counterId, "paused");
+        Timer idleTime = counterTimer(counterId, "idle");
+
+        LoanRequest request = new LoanRequest(); // Reused for every request this counter serves
         while (true) {
             try {
-                synchronized (lock) {
-                    while (isCounterPausedInFirestore(counterId)) {
-                        logger.info("Counter {} is paused. Waiting...", counterId);
-                        lock.wait(); // Wait until notified
+                lock.lock();
+                try {
+                    if (isCounterPaused(counterId)) {
+                        long pausedSince = System.nanoTime();
+                        while (isCounterPaused(counterId)) {
+                            logger.info("Counter {} is paused. Waiting...", counterId);
+                            resumed.await(); // Wait until signalled
+                        }
+                        pausedTime.record(System.nanoTime() - pausedSince, TimeUnit.NANOSECONDS);
                     }
+                } finally {
+                    lock.unlock();
                 }
 
-                LoanRequest request = null;
-                synchronized (queue) {
-                    if (!queue.isEmpty()) {
-                        request = queue.poll();
-                    }
-                }
-
-                if (request != null) {
-                    tryToBorrowBook(request.getCitizenId(), request.getBookTitle(), request.getBookAuthor());
-                } else {
-                    synchronized (queue) {
-                        queue.wait(); // Wait for new requests
+                long idleSince = System.nanoTime();
+                dispatchQueue.take(request); // Waits for new requests
+                long takenAt = System.nanoTime();
+                idleTime.record(takenAt - idleSince, TimeUnit.NANOSECONDS);
+                queueWait.record(takenAt - request.getEnqueuedAtNanos(), TimeUnit.NANOSECONDS);
+
+                LoanOutcome outcome = LoanOutcome.FAILED;
+                loanTickets.processing(request.getTicketId());
+                try {
+                    outcome = tryToBorrowBook(request.getCitizenId(), request.getBookTitle(), request.getBookAuthor(),
+                            request.getTicketId());
+                } finally {
+                    busyTime.record(System.nanoTime() - takenAt, TimeUnit.NANOSECONDS);
+                    outcomes.get(outcome).increment();
+                    processedRequests.increment();
+                    // Loaned and waitlisted requests are reported on the ticket by tryToBorrowBook
+                    if (outcome != LoanOutcome.LOANED && outcome != LoanOutcome.WAITLISTED) {
+                        loanTickets.rejected(request.getTicketId(), outcome.tag());
                     }
+                    dispatchQueue.complete(request.getTicketId());
                 }
+            } catch (RuntimeException e) {
+                // A failed lookup or write drops this request but must not stop the counter
+                logger.error("Counter {} failed to process loan request for citizen ID {}: {}",
+                        counterId, request.getCitizenId(), e.getMessage());
             } catch (InterruptedException e) {
                 Thread.currentThread().interrupt();
                 logger.warn("Counter {} interrupted. Exiting...", counterId);
@@ -139,77 +264,141 @@ public class BookLoaningService implements Department {
             }
         }
     }
-    private boolean isCounterPausedInFirestore(int counterId) {
+
+    private Timer counterTimer(int counterId, String state) {
+        return Timer.builder("loan.counter.time")
+                .description("Time each counter spends busy, paused or idle")
+                .tag("counter", String.valueOf(counterId))
+                .tag("state", state)
+                .register(meterRegistry);
+    }
+
+    // Pause state is kept in memory: it is written by pauseCounter/resumeCounter and by the
+    // Firestore counters listener, so the dispatch loop never has to query Firestore.
+    private boolean isCounterPaused(int counterId) {
+        return Boolean.TRUE.equals(counterPauseStatus.get(counterId));
+    }
+
+    // Called for local pause/resume and for counter changes observed in Firestore
+    private void applyCounterState(int counterId, boolean isPaused) {
+        ReentrantLock lock = counterLocks.get(counterId);
+        if (lock == null) {
+            return; // Not a counter served by this instance
+        }
+        lock.lock();
         try {
-            Map<String, Object> counterData = FirebaseService.getCounterById(counterId);
-            if (counterData != null) {
-                // Check if the "isPaused" key exists and cast the value properly
-                if (counterData.containsKey("isPaused")) {
-                    Object pausedState = counterData.get("isPaused");
-                    if (pausedState instanceof Boolean) {
-                        return (boolean) pausedState;
-                    } else {
-                        logger.warn("Invalid data type for 'isPaused' in counter {}. Assuming paused.", counterId);
-                        return true; // Assume paused if data type is invalid
-                    }
-                } else {
-                    logger.warn("'isPaused' field not found for counter {}. Assuming paused.", counterId);
-                    return true; // Assume paused if key is missing
-                }
-            } else {
-                logger.warn("No counter data found for counter {}. Assuming paused.", counterId);
-                return true; // Assume paused if no data is found
+            counterPauseStatus.put(counterId, isPaused);
+            if (!isPaused) {
+                counterResumed.get(counterId).signalAll();
             }
-        } catch (Exception e) {
-            logger.error("Error fetching counter state from Firestore for counter {}: {}", counterId, e.getMessage());
-            return true; // Assume paused in case of error
+        } finally {
+            lock.unlock();
         }
     }
 
-    private void tryToBorrowBook(String citizenId, String bookTitle, String bookAuthor) {
+    LoanOutcome tryToBorrowBook(String citizenId, String bookTitle, String bookAuthor) {
+        return tryToBorrowBook(citizenId, bookTitle, bookAuthor, null);
+    }
+
+    // A LOANED outcome is reported on the ticket here, where the borrow ID is known
+    private LoanOutcome tryToBorrowBook(String citizenId, String bookTitle, String bookAuthor, String ticketId) {
         logger.info("Attempting to borrow book '{}' by '{}' for citizen ID {}.", bookTitle, bookAuthor, citizenId);
 
-        String membershipId = FirebaseService.getMembershipIdById(citizenId);
+        String membershipId = membershipCache.getMembershipId(citizenId);
         if (membershipId == null) {
             logger.warn("Citizen ID {} does not have a valid membership.", citizenId);
-            return;
+            return LoanOutcome.NO_MEMBERSHIP;
         }
 
-        Borrows existingBorrow = FirebaseService.getBorrowByMembershipAndBook(membershipId, bookTitle, bookAuthor);
+        Borrows existingBorrow = borrowService.findActiveBorrow(membershipId, bookTitle, bookAuthor);
         if (existingBorrow != null) {
             logger.warn("Citizen ID {} has already borrowed the book '{}' by '{}' and has not returned it yet.",
                     citizenId, bookTitle, bookAuthor);
-            return;
+            return LoanOutcome.ALREADY_BORROWED;
         }
 
-        Book book = FirebaseService.getBookByTitleAndAuthor(bookTitle, bookAuthor);
-        if (book == null) {
-            logger.warn("Book '{}' by '{}' not found in the system.", bookTitle, bookAuthor);
-            return;
-        }
+        Set<String> triedCopies = new HashSet<>();
+        for (int attempt = 1; attempt <= MAX_LOAN_ATTEMPTS; attempt++) {
+            CatalogIndex.Copy copy;
+            Lock titleLock = waitlist.lockFor(bookTitle, bookAuthor);
+            titleLock.lock();
+            try {
+                // Checked under the title lock so a copy returned meanwhile is either found here
+                // or handed to this request by the waitlist
+                copy = findAvailableCopy(bookTitle, bookAuthor, triedCopies);
+                if (copy == null) {
+                    return joinWaitlist(citizenId, membershipId, bookTitle, bookAuthor, ticketId);
+                }
+            } finally {
+                titleLock.unlock();
+            }
+            triedCopies.add(copy.bookId());
 
-        bookLocks.putIfAbsent(book.getId(), new ReentrantLock());
-        Lock bookLock = bookLocks.get(book.getId());
+            Lock bookLock = keyedLocks.get("book:" + copy.bookId());
 
-        bookLock.lock();
-        try {
-            if (book.isAvailable() && FirebaseService.getMembershipIdById(citizenId) != null) {
+            bookLock.lock();
+            try {
+                if (!copy.available() || membershipCache.getMembershipId(citizenId) == null) {
+                    logger.warn("Book '{}' by '{}' is unavailable or citizen ID {} does not have a valid membership.", bookTitle, bookAuthor, citizenId);
+                    return copy.available() ? LoanOutcome.NO_MEMBERSHIP : LoanOutcome.UNAVAILABLE;
+                }
                 logger.info("Book '{}' by '{}' is available. Assigning it to citizen ID {}.", bookTitle, bookAuthor, citizenId);
-                book.setAvailable(false);
-                FirebaseService.updateBookField(book.getId(), "available", false);
-                //FirebaseService.borrowBook(book.getId(), FirebaseService.getMembershipIdById(citizenId));
-                String borrowId = UUID.randomUUID().toString();
-                borrowService.createBorrow(borrowId, book.getId(), membershipId);
-
-                logger.info("Book '{}' by '{}' successfully loaned to citizen ID {}.", bookTitle, bookAuthor, citizenId);
-            } else {
-                logger.warn("Book '{}' by '{}' is unavailable or citizen ID {} does not have a valid membership.", bookTitle, bookAuthor, citizenId);
+                String borrowId = idAllocator.nextBorrowId();
+                // Availability flip and borrow record are committed together, conditioned on the copy
+                // being unchanged since it was read
+                if (borrowService.commitLoan(borrowId, copy.bookId(), copy.version(), membershipId, copy.titleKey())) {
+                    catalogIndex.markLoaned(copy.bookId());
+                    loanTickets.loaned(ticketId, borrowId);
+                    logger.info("Book '{}' by '{}' successfully loaned to citizen ID {}.", bookTitle, bookAuthor, citizenId);
+                    return LoanOutcome.LOANED;
+                }
+                logger.info("Copy {} of '{}' by '{}' was taken concurrently (attempt {}).", copy.bookId(), bookTitle, bookAuthor, attempt);
+            } finally {
+                bookLock.unlock();
+                logger.info("Released lock for book '{}' by '{}'.", bookTitle, bookAuthor);
             }
-        } finally {
-            bookLock.unlock();
-            logger.info("Released lock for book '{}' by '{}'.", bookTitle, bookAuthor);
         }
+        logger.warn("Gave up loaning '{}' by '{}' to citizen ID {} after {} conflicting attempts.",
+                bookTitle, bookAuthor, citizenId, MAX_LOAN_ATTEMPTS);
+        return LoanOutcome.CONFLICT;
     }
+
+    // Called with the title lock held, after no available copy was found
+    private LoanOutcome joinWaitlist(String citizenId, String membershipId, String bookTitle, String bookAuthor,
+                                     String ticketId) {
+        if (!catalogIndex.isReady() || catalogIndex.getCopyIds(bookTitle, bookAuthor).isEmpty()) {
+            // Unknown title, or the catalog is still loading and it cannot be told apart from one
+            logger.warn("Book '{}' by '{}' not found in the system.", bookTitle, bookAuthor);
+            return LoanOutcome.UNAVAILABLE;
+        }
+        LoanWaitlist.Reservation reservation = LoanWaitlist.Reservation.of(bookTitle, bookAuthor, citizenId,
+                membershipId, ticketId);
+        LoanWaitlist.Reservation waiting = waitlist.add(reservation);
+        if (waiting == null) {
+            logger.warn("No copy of '{}' by '{}' available and its waitlist is full.", bookTitle, bookAuthor);
+            return LoanOutcome.UNAVAILABLE;
+        }
+        // The same ID is the same request, replayed from the loan journal after it had joined
+        if (!waiting.id().equals(reservation.id())) {
+            // The member keeps the place of their earlier request; this ticket is closed as a duplicate
+            logger.info("Citizen ID {} is already waiting for '{}' by '{}' (ticket {}).",
+                    citizenId, bookTitle, bookAuthor, waiting.ticketId());
+            return LoanOutcome.DUPLICATE;
+        }
+        loanTickets.waitlisted(ticketId);
+        logger.info("No copy of '{}' by '{}' available. Citizen ID {} joined the waitlist.", bookTitle, bookAuthor, citizenId);
+        return LoanOutcome.WAITLISTED;
+    }
+
+    // Resolves a copy from the in-memory catalog, or from the store while the index is still loading
+    private CatalogIndex.Copy findAvailableCopy(String bookTitle, String bookAuthor, Set<String> exclude) {
+        if (catalogIndex.isReady()) {
+            return catalogIndex.findAvailableCopy(bookTitle, bookAuthor, exclude);
+        }
+        StoredDocument document = FirebaseService.await(FirebaseService.findAvailableCopyAsync(bookTitle, bookAuthor));
+        return document == null ? null : CatalogIndex.Copy.from(document);
+    }
+
     @Override
     public void pauseCounter(int counterId) {
         countersList.stream()
@@ -217,6 +406,7 @@ public class BookLoaningService implements Department {
                 .findFirst()
                 .ifPresent(counter -> {
                     counter.setPaused(true);
+                    applyCounterState(counterId, true);
                     FirebaseService.updateCounterState(counterId, true); // Update state in Firebase
                     logger.info("Paused counter {}.", counterId);
                 });
@@ -229,10 +419,8 @@ public class BookLoaningService implements Department {
                 .findFirst()
                 .ifPresent(counter -> {
                     counter.setPaused(false);
+                    applyCounterState(counterId, false);
                     FirebaseService.updateCounterState(counterId, false); // Update state in Firebase
-                    synchronized (counterLocks.get(counterId)) {
-                        counterLocks.get(counterId).notify();
-                    }
                     logger.info("Resumed counter {}.", counterId);
                 });
     }
@@ -1,40 +1,42 @@
 package com.example.bureaucratic_system_backend.service;
 
 import com.example.bureaucratic_system_backend.model.Borrows;
+import com.google.cloud.Timestamp;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.stereotype.Service;
 
 import java.time.LocalDate;
-import java.util.Map;
-import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.locks.Lock;
-import java.util.concurrent.locks.ReentrantLock;
 
 @Service
 public class BorrowService {
 
     private static final Logger logger = LoggerFactory.getLogger(BorrowService.class);
 
-    private final Map<String, Lock> borrowLocks = new ConcurrentHashMap<>();
+    private final KeyedLockRegistry keyedLocks;
     private final FirebaseService firebaseService;
+    private final CatalogIndex catalogIndex;
+    private final ActiveBorrowIndex activeBorrowIndex;
 
-    public BorrowService(FirebaseService firebaseService) {
+    public BorrowService(FirebaseService firebaseService, CatalogIndex catalogIndex, ActiveBorrowIndex activeBorrowIndex,
+                         KeyedLockRegistry keyedLocks) {
+        this.keyedLocks = keyedLocks;
         this.firebaseService = firebaseService;
+        this.catalogIndex = catalogIndex;
+        this.activeBorrowIndex = activeBorrowIndex;
     }
 
     // ----------------------- Borrow Management -----------------------
 
     public void createBorrow(String borrowId, String bookId, String membershipId) {
-        borrowLocks.putIfAbsent(borrowId, new ReentrantLock());
-        Lock lock = borrowLocks.get(borrowId);
+        Lock lock = keyedLocks.get("borrow:" + borrowId);
 
         lock.lock();
         try {
-            String borrowDate = LocalDate.now().toString();
-            String dueDate = LocalDate.now().plusDays(30).toString(); // Default loan period is 30 days
-            Borrows borrow = new Borrows(borrowId, bookId, membershipId, borrowDate, dueDate, null);
-            firebaseService.addBorrow(borrow);
+            Borrows borrow = newBorrow(borrowId, bookId, membershipId);
+            FirebaseService.await(firebaseService.addBorrowAsync(borrow));
+            activeBorrowIndex.add(borrow);
 
             logger.info("Borrow record created successfully for borrow ID: {}", borrowId);
         } catch (Exception e) {
@@ -44,16 +46,71 @@ public class BorrowService {
         }
     }
 
+    /**
+     * Loans a copy in one atomic write: marks the book unavailable and creates the borrow record.
+     *
+     * @param bookVersion update time the copy was read at; the commit fails if it changed since
+     * @param title title of the copy, counted in the loan statistics
+     * @return false if the copy was loaned or modified concurrently, so nothing was written
+     */
+    public boolean commitLoan(String borrowId, String bookId, Timestamp bookVersion, String membershipId,
+                              CatalogIndex.TitleKey title) {
+        Borrows borrow = newBorrow(borrowId, bookId, membershipId);
+        boolean committed = FirebaseService.commitLoan(bookId, bookVersion, borrow, title);
+        if (committed) {
+            activeBorrowIndex.add(borrow);
+            logger.info("Loan committed for book ID: {} with borrow ID: {}", bookId, borrowId);
+        }
+        return committed;
+    }
+
+    /**
+     * Returns a borrow in one atomic write: sets its return date and either releases the copy or,
+     * when {@code handOff} is given, loans it straight to the next member.
+     *
+     * @param title title of the borrowed copy, counted in the loan statistics
+     * @param reservation the waitlist reservation {@code handOff} serves, removed in the same commit
+     * @return false if the borrow was already returned, or the reservation served, here or on
+     *         another instance
+     */
+    public boolean commitReturn(Borrows borrow, String returnDate, Borrows handOff, CatalogIndex.TitleKey title,
+                                LoanWaitlist.Reservation reservation) {
+        Lock lock = keyedLocks.get("borrow:" + borrow.getId());
+
+        lock.lock();
+        try {
+            if (!FirebaseService.commitReturn(borrow.getId(), returnDate, borrow.getBookId(), handOff, title, reservation)) {
+                return false;
+            }
+            borrow.setReturnDate(returnDate);
+            activeBorrowIndex.add(borrow); // Removes it, now that it has a return date
+            if (handOff != null) {
+                activeBorrowIndex.add(handOff);
+                logger.info("Copy {} handed from borrow ID {} to borrow ID {}", borrow.getBookId(), borrow.getId(), handOff.getId());
+            }
+            logger.info("Return committed for borrow ID: {}", borrow.getId());
+            return true;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    Borrows newBorrow(String borrowId, String bookId, String membershipId) {
+        String borrowDate = LocalDate.now().toString();
+        String dueDate = LocalDate.now().plusDays(30).toString(); // Default loan period is 30 days
+        return new Borrows(borrowId, bookId, membershipId, borrowDate, dueDate, null);
+    }
+
     public void updateReturnDate(String borrowId, String returnDate) {
-        borrowLocks.putIfAbsent(borrowId, new ReentrantLock());
-        Lock lock = borrowLocks.get(borrowId);
+        Lock lock = keyedLocks.get("borrow:" + borrowId);
 
         lock.lock();
         try {
             Borrows borrow = firebaseService.getBorrowById(borrowId);
             if (borrow != null) {
                 borrow.setReturnDate(returnDate);
-                firebaseService.updateBorrow(borrowId, borrow);
+                FirebaseService.await(firebaseService.updateBorrowAsync(borrowId, borrow));
+                activeBorrowIndex.add(borrow);
                 logger.info("Return date updated successfully for borrow ID: {}", borrowId);
             } else {
                 logger.warn("Borrow record not found for borrow ID: {}", borrowId);
@@ -65,6 +122,17 @@ public class BorrowService {
         }
     }
 
+    // Open borrow of the member for any copy of the title, or null
+    public Borrows findActiveBorrow(String membershipId, String bookTitle, String bookAuthor) {
+        if (catalogIndex.isReady() && activeBorrowIndex.isReady()) {
+            return activeBorrowIndex.findAny(membershipId, catalogIndex.getCopyIds(bookTitle, bookAuthor));
+        }
+        if (catalogIndex.isReady()) {
+            return FirebaseService.getActiveBorrowForCopies(membershipId, catalogIndex.getCopyIds(bookTitle, bookAuthor));
+        }
+        return FirebaseService.getBorrowByMembershipAndBook(membershipId, bookTitle, bookAuthor);
+    }
+
     public Borrows getBorrowById(String borrowId) {
         try {
             return firebaseService.getBorrowById(borrowId);
@@ -75,12 +143,12 @@ public class BorrowService {
     }
 
     public void deleteBorrow(String borrowId) {
-        borrowLocks.putIfAbsent(borrowId, new ReentrantLock());
-        Lock lock = borrowLocks.get(borrowId);
+        Lock lock = keyedLocks.get("borrow:" + borrowId);
 
         lock.lock();
         try {
             firebaseService.deleteBorrow(borrowId);
+            activeBorrowIndex.removeById(borrowId);
             logger.info("Borrow record deleted successfully for borrow ID: {}", borrowId);
         } catch (Exception e) {
             logger.error("Error deleting borrow record for borrow ID: {}: {}", borrowId, e.getMessage());
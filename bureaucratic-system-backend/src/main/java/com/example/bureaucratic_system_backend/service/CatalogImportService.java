@@ -0,0 +1,387 @@
+package com.example.bureaucratic_system_backend.service;
+
+import com.example.bureaucratic_system_backend.model.Book;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParseException;
+import com.google.gson.JsonParser;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Bulk catalog import from a CSV or NDJSON stream.
+ *
+ * Rows are parsed one line at a time, so memory stays bounded by the number of batches in flight
+ * rather than by the size of the upload. Every batch gets a fresh range of IDs from
+ * {@link IdAllocator#reserveBookIds} and is written as one Firestore batched write; at most
+ * {@code catalog.import.max-in-flight-batches} batches are outstanding at a time. Invalid rows
+ * and failed batches are recorded in the import's progress and the import carries on.
+ *
+ * CSV input needs a header row with {@code name} and {@code author} columns and may have a
+ * {@code copies} column (default 1). NDJSON rows are objects with the same fields.
+ */
+@Service
+public class CatalogImportService {
+
+    private static final Logger logger = LoggerFactory.getLogger(CatalogImportService.class);
+
+    private static final int MAX_REPORTED_ERRORS = 100; // Further errors are counted but not listed
+    private static final int MAX_COPIES_PER_ROW = 1000;
+    private static final int MAX_TRACKED_IMPORTS = 20;
+
+    public enum Format {
+        CSV, NDJSON;
+
+        public static Format fromString(String value) {
+            try {
+                return Format.valueOf(value.trim().toUpperCase(Locale.ROOT));
+            } catch (IllegalArgumentException e) {
+                throw new IllegalArgumentException("Unknown import format: " + value + ". Use csv or ndjson.");
+            }
+        }
+    }
+
+    /**
+     * Live counters of one import, readable while it is still running.
+     */
+    public static class ImportProgress {
+        private final String importId;
+        private final Format format;
+        private final long startedAtMillis = System.currentTimeMillis();
+        private final AtomicLong rowsRead = new AtomicLong();
+        private final AtomicLong rowsRejected = new AtomicLong();
+        private final AtomicLong booksWritten = new AtomicLong();
+        private final AtomicLong booksFailed = new AtomicLong();
+        private final AtomicLong errorCount = new AtomicLong();
+        private final List<String> errors = Collections.synchronizedList(new ArrayList<>());
+        private volatile String status = "running";
+        private volatile long finishedAtMillis = 0;
+
+        ImportProgress(String importId, Format format) {
+            this.importId = importId;
+            this.format = format;
+        }
+
+        public String getImportId() {
+            return importId;
+        }
+
+        public boolean isFinished() {
+            return finishedAtMillis != 0;
+        }
+
+        void recordError(String message) {
+            if (errorCount.incrementAndGet() <= MAX_REPORTED_ERRORS) {
+                errors.add(message);
+            }
+        }
+
+        void finish(String finalStatus) {
+            status = finalStatus;
+            finishedAtMillis = System.currentTimeMillis();
+        }
+
+        public Map<String, Object> toMap() {
+            Map<String, Object> result = new LinkedHashMap<>();
+            result.put("importId", importId);
+            result.put("format", format.name().toLowerCase(Locale.ROOT));
+            result.put("status", status);
+            result.put("rowsRead", rowsRead.get());
+            result.put("rowsRejected", rowsRejected.get());
+            result.put("booksWritten", booksWritten.get());
+            result.put("booksFailed", booksFailed.get());
+            result.put("errorCount", errorCount.get());
+            synchronized (errors) {
+                result.put("errors", new ArrayList<>(errors));
+            }
+            long end = isFinished() ? finishedAtMillis : System.currentTimeMillis();
+            result.put("elapsedMillis", end - startedAtMillis);
+            return result;
+        }
+    }
+
+    private final IdAllocator idAllocator;
+    private final int batchSize;
+    private final int maxInFlightBatches;
+    private final AtomicLong importSequence = new AtomicLong();
+    private final Map<String, ImportProgress> imports = new ConcurrentHashMap<>();
+
+    public CatalogImportService(IdAllocator idAllocator,
+                                @Value("${catalog.import.batch-size:480}") int batchSize,
+                                @Value("${catalog.import.max-in-flight-batches:4}") int maxInFlightBatches) {
+        if (batchSize < 1 || batchSize > FirebaseService.getMaxBooksPerBatch()) {
+            throw new IllegalArgumentException("catalog.import.batch-size must be between 1 and "
+                    + FirebaseService.getMaxBooksPerBatch() + ".");
+        }
+        if (maxInFlightBatches < 1) {
+            throw new IllegalArgumentException("catalog.import.max-in-flight-batches must be positive.");
+        }
+        this.idAllocator = idAllocator;
+        this.batchSize = batchSize;
+        this.maxInFlightBatches = maxInFlightBatches;
+    }
+
+    // ----------------------- Imports -----------------------
+
+    /**
+     * Reads the whole stream on the calling thread and returns once every batch has been
+     * written or has failed. Progress can be followed through {@link #getProgress} meanwhile.
+     */
+    public ImportProgress importBooks(InputStream input, Format format) {
+        ImportProgress progress = new ImportProgress("import-" + importSequence.incrementAndGet(), format);
+        track(progress);
+        logger.info("Catalog import {} started ({}).", progress.importId, format);
+
+        Semaphore inFlight = new Semaphore(maxInFlightBatches);
+        List<Book> batch = new ArrayList<>(batchSize);
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(input, StandardCharsets.UTF_8))) {
+            RowParser parser = (format == Format.CSV) ? new CsvRowParser() : new NdjsonRowParser();
+            String line;
+            long lineNumber = 0;
+            while ((line = reader.readLine()) != null) {
+                lineNumber++;
+                if (line.isBlank() || parser.consumeHeader(line)) {
+                    continue;
+                }
+                progress.rowsRead.incrementAndGet();
+                Row row;
+                try {
+                    row = parser.parse(line);
+                    validate(row);
+                } catch (IllegalArgumentException e) {
+                    progress.rowsRejected.incrementAndGet();
+                    progress.recordError("Line " + lineNumber + ": " + e.getMessage());
+                    continue;
+                }
+                for (int copy = 0; copy < row.copies(); copy++) {
+                    batch.add(new Book(null, row.name(), row.author(), true));
+                    if (batch.size() == batchSize) {
+                        submit(batch, progress, inFlight);
+                        batch = new ArrayList<>(batchSize);
+                    }
+                }
+            }
+            if (!batch.isEmpty()) {
+                submit(batch, progress, inFlight);
+            }
+            awaitAll(inFlight);
+            progress.finish(progress.errorCount.get() == 0 ? "completed" : "completed_with_errors");
+        } catch (IOException | RuntimeException e) {
+            progress.recordError("Import aborted: " + e.getMessage());
+            awaitAll(inFlight);
+            progress.finish("failed");
+            logger.error("Catalog import {} aborted: {}", progress.importId, e.getMessage());
+        }
+        logger.info("Catalog import {} {}: {} books written, {} failed, {} rows rejected.", progress.importId,
+                progress.status, progress.booksWritten.get(), progress.booksFailed.get(), progress.rowsRejected.get());
+        return progress;
+    }
+
+    public ImportProgress getProgress(String importId) {
+        return imports.get(importId);
+    }
+
+    private void submit(List<Book> batch, ImportProgress progress, Semaphore inFlight) {
+        try {
+            inFlight.acquire();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Interrupted while waiting for earlier batches.", e);
+        }
+
+        long firstId;
+        try {
+            firstId = idAllocator.reserveBookIds(batch.size());
+        } catch (RuntimeException e) {
+            inFlight.release();
+            throw e; // Without IDs nothing else can be written either
+        }
+        for (int i = 0; i < batch.size(); i++) {
+            batch.get(i).setId(String.valueOf(firstId + i));
+        }
+
+        String range = firstId + "-" + (firstId + batch.size() - 1);
+        FirebaseService.addBooksAsync(batch).whenComplete((ignored, error) -> {
+            try {
+                if (error == null) {
+                    progress.booksWritten.addAndGet(batch.size());
+                } else {
+                    progress.booksFailed.addAndGet(batch.size());
+                    progress.recordError("Batch with book IDs " + range + " failed: " + error.getMessage());
+                    logger.warn("Catalog import {}: batch {} failed: {}", progress.importId, range, error.getMessage());
+                }
+            } finally {
+                inFlight.release();
+            }
+        });
+    }
+
+    // Waits until every submitted batch has completed
+    private void awaitAll(Semaphore inFlight) {
+        inFlight.acquireUninterruptibly(maxInFlightBatches);
+        inFlight.release(maxInFlightBatches);
+    }
+
+    private void track(ImportProgress progress) {
+        imports.put(progress.importId, progress);
+        if (imports.size() > MAX_TRACKED_IMPORTS) {
+            imports.values().stream()
+                    .filter(ImportProgress::isFinished)
+                    .min((a, b) -> Long.compare(a.finishedAtMillis, b.finishedAtMillis))
+                    .ifPresent(oldest -> imports.remove(oldest.importId));
+        }
+    }
+
+    private static void validate(Row row) {
+        if (row.name() == null || row.name().isBlank()) {
+            throw new IllegalArgumentException("missing name");
+        }
+        if (row.author() == null || row.author().isBlank()) {
+            throw new IllegalArgumentException("missing author");
+        }
+        if (row.copies() < 1 || row.copies() > MAX_COPIES_PER_ROW) {
+            throw new IllegalArgumentException("copies must be between 1 and " + MAX_COPIES_PER_ROW);
+        }
+    }
+
+    // ----------------------- Parsing -----------------------
+
+    private record Row(String name, String author, int copies) {
+    }
+
+    private interface RowParser {
+        // True if the line was a header and should not be imported
+        default boolean consumeHeader(String line) {
+            return false;
+        }
+
+        Row parse(String line);
+    }
+
+    private static int parseCopies(String value) {
+        if (value == null || value.isBlank()) {
+            return 1;
+        }
+        try {
+            return Integer.parseInt(value.trim());
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("copies is not a number: " + value);
+        }
+    }
+
+    private static class NdjsonRowParser implements RowParser {
+        @Override
+        public Row parse(String line) {
+            JsonElement element;
+            try {
+                element = JsonParser.parseString(line);
+            } catch (JsonParseException e) {
+                throw new IllegalArgumentException("invalid JSON: " + e.getMessage());
+            }
+            if (!element.isJsonObject()) {
+                throw new IllegalArgumentException("expected a JSON object");
+            }
+            JsonObject object = element.getAsJsonObject();
+            return new Row(stringField(object, "name"), stringField(object, "author"),
+                    parseCopies(stringField(object, "copies")));
+        }
+
+        private static String stringField(JsonObject object, String field) {
+            JsonElement value = object.get(field);
+            if (value == null || value.isJsonNull()) {
+                return null;
+            }
+            if (!value.isJsonPrimitive()) {
+                throw new IllegalArgumentException(field + " must be a string or number");
+            }
+            return value.getAsString();
+        }
+    }
+
+    private static class CsvRowParser implements RowParser {
+        private int nameColumn = -1;
+        private int authorColumn = -1;
+        private int copiesColumn = -1;
+
+        @Override
+        public boolean consumeHeader(String line) {
+            if (nameColumn >= 0) {
+                return false;
+            }
+            List<String> columns = split(line);
+            for (int i = 0; i < columns.size(); i++) {
+                switch (columns.get(i).trim().toLowerCase(Locale.ROOT)) {
+                    case "name" -> nameColumn = i;
+                    case "author" -> authorColumn = i;
+                    case "copies" -> copiesColumn = i;
+                    default -> {
+                    }
+                }
+            }
+            if (nameColumn < 0 || authorColumn < 0) {
+                throw new IllegalArgumentException("CSV header must contain name and author columns.");
+            }
+            return true;
+        }
+
+        @Override
+        public Row parse(String line) {
+            List<String> fields = split(line);
+            return new Row(field(fields, nameColumn), field(fields, authorColumn),
+                    parseCopies(copiesColumn < 0 ? null : field(fields, copiesColumn)));
+        }
+
+        private static String field(List<String> fields, int column) {
+            return column < fields.size() ? fields.get(column).trim() : null;
+        }
+
+        // Splits one record; fields may be quoted, with "" for a literal quote
+        private static List<String> split(String line) {
+            List<String> fields = new ArrayList<>();
+            StringBuilder current = new StringBuilder();
+            boolean quoted = false;
+            for (int i = 0; i < line.length(); i++) {
+                char c = line.charAt(i);
+                if (quoted) {
+                    if (c == '"' && i + 1 < line.length() && line.charAt(i + 1) == '"') {
+                        current.append('"');
+                        i++;
+                    } else if (c == '"') {
+                        quoted = false;
+                    } else {
+                        current.append(c);
+                    }
+                } else if (c == '"') {
+                    quoted = true;
+                } else if (c == ',') {
+                    fields.add(current.toString());
+                    current.setLength(0);
+                } else {
+                    current.append(c);
+                }
+            }
+            if (quoted) {
+                throw new IllegalArgumentException("unterminated quoted field");
+            }
+            fields.add(current.toString());
+            return fields;
+        }
+    }
+}
@@ -0,0 +1,225 @@
+package com.example.bureaucratic_system_backend.service;
+
+import com.example.bureaucratic_system_backend.store.ChangeSet;
+import com.example.bureaucratic_system_backend.store.StoredDocument;
+import com.google.cloud.Timestamp;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.context.annotation.DependsOn;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * In-process index of the book catalog, keyed by (name, author).
+ *
+ * The index is filled by the first snapshot of a Firestore listener on {@code books} and kept
+ * current by the changes that follow, so the loan and return paths can resolve a title to its
+ * copies without querying Firestore. Until the first snapshot arrives {@link #isReady()} is false
+ * and callers fall back to Firestore queries.
+ */
+@Component
+@DependsOn("documentStore")
+public class CatalogIndex {
+
+    private static final Logger logger = LoggerFactory.getLogger(CatalogIndex.class);
+
+    public record TitleKey(String name, String author) {
+    }
+
+    /**
+     * One copy as last seen by the index. {@code version} is the document's update time, usable
+     * as the precondition of {@link FirebaseService#commitLoan}; it is null after a local change
+     * until the listener delivers the committed document.
+     */
+    public record Copy(String bookId, String name, String author, boolean available, Timestamp version) {
+
+        static Copy from(StoredDocument document) {
+            return new Copy(document.id(), document.getString("name"), document.getString("author"),
+                    Boolean.TRUE.equals(document.getBoolean("available")), document.updateTime());
+        }
+
+        TitleKey titleKey() {
+            return new TitleKey(name, author);
+        }
+
+        Copy withAvailable(boolean available) {
+            return new Copy(bookId, name, author, available, null);
+        }
+    }
+
+    private final Map<String, Copy> copies = new ConcurrentHashMap<>();
+    private final Map<TitleKey, Set<String>> copiesByTitle = new ConcurrentHashMap<>();
+    private final Map<TitleKey, Set<String>> availableByTitle = new ConcurrentHashMap<>();
+
+    // Bumped after every change applied to the index, local or from the listener
+    private final AtomicLong version = new AtomicLong();
+
+    private volatile boolean ready = false;
+    private volatile long lastSnapshotMillis = 0;
+    private volatile long lastSnapshotLagMillis = 0;
+
+    public CatalogIndex() {
+        FirebaseService.listenToBookChanges(this::applySnapshot);
+    }
+
+    // ----------------------- Lookups -----------------------
+
+    public boolean isReady() {
+        return ready;
+    }
+
+    /**
+     * Returns an available copy of the title that is not in {@code exclude}, or null.
+     */
+    public Copy findAvailableCopy(String name, String author, Set<String> exclude) {
+        Set<String> available = availableByTitle.get(new TitleKey(name, author));
+        if (available == null) {
+            return null;
+        }
+        for (String bookId : available) {
+            Copy copy = copies.get(bookId);
+            if (copy != null && copy.available() && !exclude.contains(bookId)) {
+                return copy;
+            }
+        }
+        return null;
+    }
+
+    // IDs of every copy of the title, loaned or not
+    public Set<String> getCopyIds(String name, String author) {
+        Set<String> ids = copiesByTitle.get(new TitleKey(name, author));
+        return ids == null ? Collections.emptySet() : Collections.unmodifiableSet(ids);
+    }
+
+    /**
+     * Available copies per title, in the shape of
+     * {@link FirebaseService#getAllBooksGroupedByAuthorAndName()}. The per-title sets are updated
+     * by every loan, return, insert and delete, so this costs O(titles) and no Firestore reads.
+     */
+    public List<Map<String, Object>> getAvailableTitles() {
+        List<Map<String, Object>> titles = new ArrayList<>(availableByTitle.size());
+        availableByTitle.forEach((key, ids) -> {
+            long totalPieces = ids.size();
+            if (totalPieces > 0) {
+                titles.add(Map.of(
+                        "name", key.name(),
+                        "author", key.author(),
+                        "totalPieces", totalPieces
+                ));
+            }
+        });
+        return titles;
+    }
+
+    /**
+     * Changes whenever {@link #getAvailableTitles()} may have changed. It is bumped after a change
+     * is applied, so a reader that takes it before the titles never pairs a new version with old
+     * titles. Only meaningful within this process.
+     */
+    public long getVersion() {
+        return version.get();
+    }
+
+    // ----------------------- Local updates -----------------------
+    // Applied right after our own commits so this instance does not offer a copy it just loaned
+    // while the listener catches up.
+
+    public void markLoaned(String bookId) {
+        setAvailable(bookId, false);
+    }
+
+    public void markReturned(String bookId) {
+        setAvailable(bookId, true);
+    }
+
+    private void setAvailable(String bookId, boolean available) {
+        Copy current = copies.get(bookId);
+        if (current != null) {
+            apply(bookId, current.withAvailable(available));
+        }
+    }
+
+    // ----------------------- Freshness -----------------------
+
+    public int size() {
+        return copies.size();
+    }
+
+    public int titleCount() {
+        return copiesByTitle.size();
+    }
+
+    // Delay between Firestore committing the latest observed change and this index applying it
+    public long getLastSnapshotLagMillis() {
+        return lastSnapshotLagMillis;
+    }
+
+    public long getMillisSinceLastSnapshot() {
+        return lastSnapshotMillis == 0 ? -1 : System.currentTimeMillis() - lastSnapshotMillis;
+    }
+
+    // ----------------------- Listener -----------------------
+
+    private void applySnapshot(ChangeSet changeSet) {
+        for (ChangeSet.Change change : changeSet.changes()) {
+            StoredDocument document = change.document();
+            if (change.type() == ChangeSet.Type.REMOVED) {
+                apply(document.id(), null);
+            } else {
+                apply(document.id(), Copy.from(document));
+            }
+        }
+
+        long now = System.currentTimeMillis();
+        Timestamp readTime = changeSet.readTime();
+        if (readTime != null) {
+            lastSnapshotLagMillis = Math.max(0, now - readTime.toDate().getTime());
+        }
+        lastSnapshotMillis = now;
+        if (!ready) {
+            ready = true;
+            logger.info("Catalog index loaded: {} copies of {} titles.", copies.size(), copiesByTitle.size());
+        }
+    }
+
+    private void apply(String bookId, Copy updated) {
+        copies.compute(bookId, (id, previous) -> {
+            if (previous != null && (updated == null || !previous.titleKey().equals(updated.titleKey()))) {
+                removeFrom(copiesByTitle, previous.titleKey(), id);
+                removeFrom(availableByTitle, previous.titleKey(), id);
+            }
+            if (updated != null) {
+                addTo(copiesByTitle, updated.titleKey(), id);
+                if (updated.available()) {
+                    addTo(availableByTitle, updated.titleKey(), id);
+                } else {
+                    removeFrom(availableByTitle, updated.titleKey(), id);
+                }
+            }
+            return updated;
+        });
+        version.incrementAndGet();
+    }
+
+    private static void addTo(Map<TitleKey, Set<String>> index, TitleKey key, String bookId) {
+        index.compute(key, (k, ids) -> {
+            Set<String> result = (ids != null) ? ids : ConcurrentHashMap.newKeySet();
+            result.add(bookId);
+            return result;
+        });
+    }
+
+    private static void removeFrom(Map<TitleKey, Set<String>> index, TitleKey key, String bookId) {
+        index.computeIfPresent(key, (k, ids) -> {
+            ids.remove(bookId);
+            return ids.isEmpty() ? null : ids;
+        });
+    }
+}
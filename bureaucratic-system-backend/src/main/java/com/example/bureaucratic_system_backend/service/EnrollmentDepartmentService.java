@@ -11,21 +11,26 @@ import java.time.LocalDate;
 public class EnrollmentDepartmentService {
 
     private final FirebaseService firebaseService;
+    private final MembershipCache membershipCache;
+    private final IdAllocator idAllocator;
 
     @Autowired
-    public EnrollmentDepartmentService(FirebaseService firebaseService) {
+    public EnrollmentDepartmentService(FirebaseService firebaseService, MembershipCache membershipCache,
+                                       IdAllocator idAllocator) {
         this.firebaseService = firebaseService;
+        this.membershipCache = membershipCache;
+        this.idAllocator = idAllocator;
     }
 
     public boolean isCitizenEnrolled(Citizen citizen) {
-        String existingMembership = FirebaseService.getMembershipIdById(citizen.getId());
+        String existingMembership = membershipCache.getMembershipId(citizen.getId());
         return existingMembership != null;
     }
 
     public boolean addCitizen(Citizen citizen) {
         try {
             System.out.println("Enrolling citizen: " + citizen.getName());
-            Membership newMembership = new Membership("M" + System.currentTimeMillis(),
+            Membership newMembership = new Membership(idAllocator.nextMembershipId(),
                     LocalDate.now().toString(), citizen.getId());
             firebaseService.addMembership(newMembership);
             System.out.println("Citizen " + citizen.getName() + " enrolled with membership ID: " + newMembership.getMembershipNumber());
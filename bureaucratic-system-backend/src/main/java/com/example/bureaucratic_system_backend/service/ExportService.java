@@ -0,0 +1,88 @@
+package com.example.bureaucratic_system_backend.service;
+
+import com.example.bureaucratic_system_backend.store.DocumentMapper;
+import com.example.bureaucratic_system_backend.store.Query;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.util.Map;
+
+/**
+ * Writes a collection as a JSON array straight to the response while it is read page by page
+ * ({@link FirebaseService#scan}), so an export holds at most two pages in memory however large the
+ * collection. Every element is the stored document with its {@code id}; fees are written in the
+ * current cents format, also those still stored as dollar strings.
+ */
+@Service
+public class ExportService {
+
+    // Collections that can be exported, and whether they can be filtered by membership
+    private static final Map<String, Boolean> EXPORTABLE = Map.of(
+            "books", false,
+            "citizen", false,
+            "memberships", false,
+            "borrows", true,
+            "fees", true
+    );
+
+    private final ObjectMapper objectMapper;
+
+    public ExportService(ObjectMapper objectMapper) {
+        this.objectMapper = objectMapper;
+    }
+
+    /**
+     * Checks the request before anything is written, since a failure after the first page can
+     * only cut the response short.
+     *
+     * @throws IllegalArgumentException for an unknown collection or a filter it does not support
+     */
+    public void validate(String collectionName, String membershipId) {
+        Boolean filterable = EXPORTABLE.get(collectionName);
+        if (filterable == null) {
+            throw new IllegalArgumentException("Collection " + collectionName + " cannot be exported; use one of "
+                    + EXPORTABLE.keySet() + ".");
+        }
+        if (membershipId != null && !filterable) {
+            throw new IllegalArgumentException("Collection " + collectionName + " cannot be filtered by membership.");
+        }
+    }
+
+    // Returns the number of documents written
+    public long export(String collectionName, String membershipId, OutputStream out) throws IOException {
+        validate(collectionName, membershipId);
+        Query query = Query.of(collectionName);
+        if (membershipId != null) {
+            query = query.whereEqualTo("membershipId", membershipId);
+        }
+
+        try (JsonGenerator generator = objectMapper.getFactory().createGenerator(out)) {
+            generator.writeStartArray();
+            long exported = FirebaseService.scan(query, FirebaseService.SCAN_PAGE_SIZE, document -> {
+                Map<String, Object> data = collectionName.equals("fees")
+                        ? DocumentMapper.toData(FirebaseService.toFee(document))
+                        : document.data();
+                try {
+                    generator.writeStartObject();
+                    generator.writeStringField("id", document.id());
+                    for (Map.Entry<String, Object> field : data.entrySet()) {
+                        if (!field.getKey().equals("id")) {
+                            generator.writeObjectField(field.getKey(), field.getValue());
+                        }
+                    }
+                    generator.writeEndObject();
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e); // Client went away
+                }
+            });
+            generator.writeEndArray();
+            return exported;
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+    }
+}
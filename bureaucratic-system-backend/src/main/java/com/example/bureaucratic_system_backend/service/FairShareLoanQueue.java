@@ -0,0 +1,182 @@
+package com.example.bureaucratic_system_backend.service;
+
+import com.example.bureaucratic_system_backend.model.LoanRequest;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Loan queue that shares the counters fairly between citizens instead of serving requests in
+ * arrival order.
+ *
+ * Every citizen with pending requests has their own FIFO, and the counters visit those FIFOs in
+ * turn with deficit round robin: each turn grants a citizen {@code quantum} requests, so a
+ * citizen who submits a burst waits behind their own requests, not in front of everyone else's.
+ * All requests cost the same (one {@code tryToBorrowBook}), so the deficit is simply a count.
+ *
+ * A request identical to one still waiting (same citizen, title and author) is not queued again
+ * and shares the waiting request's ticket: it would only be rejected as "already borrowed" after
+ * the first one is served. Once a request has been
+ * handed to a counter, the same request can be queued again.
+ */
+public class FairShareLoanQueue implements LoanDispatcher {
+
+    private static final Logger logger = LoggerFactory.getLogger(FairShareLoanQueue.class);
+
+    private record Pending(String bookTitle, String bookAuthor, String key, String ticketId, long enqueuedAtNanos) {
+    }
+
+    private static final class CitizenQueue {
+        final String citizenId;
+        final ArrayDeque<Pending> requests = new ArrayDeque<>();
+        int deficit; // Requests this citizen may still be served in the current turn
+
+        CitizenQueue(String citizenId) {
+            this.citizenId = citizenId;
+        }
+    }
+
+    private final int capacity;
+    private final int maxPerCitizen;
+    private final int quantum;
+
+    // Guarded by lock
+    private final Map<String, CitizenQueue> queuesByCitizen = new HashMap<>();
+    private final ArrayDeque<CitizenQueue> activeCitizens = new ArrayDeque<>(); // Round-robin order
+    private final Map<String, String> pendingTickets = new HashMap<>(); // Request key -> ticket
+    private int size;
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition notEmpty = lock.newCondition();
+    private final LongAdder suppressedDuplicates = new LongAdder();
+
+    public FairShareLoanQueue(int capacity, int maxPerCitizen, int quantum) {
+        if (capacity < 1 || maxPerCitizen < 1 || quantum < 1) {
+            throw new IllegalArgumentException("Loan queue capacity, per-citizen limit and quantum must be positive.");
+        }
+        this.capacity = capacity;
+        this.maxPerCitizen = Math.min(maxPerCitizen, capacity);
+        this.quantum = quantum;
+        logger.info("Fair-share loan queue created with capacity {}, {} requests per citizen and a quantum of {}.",
+                capacity, this.maxPerCitizen, quantum);
+    }
+
+    // ----------------------- Producers -----------------------
+
+    /**
+     * Queues a request behind the citizen's own pending requests. A duplicate of a pending
+     * request is not queued again; the pending request's ticket is returned instead.
+     *
+     * @return null if the queue, or the citizen's share of it, is full
+     */
+    @Override
+    public String offer(String bookTitle, String bookAuthor, String citizenId, String ticketId) {
+        String key = citizenId + '\n' + bookTitle + '\n' + bookAuthor;
+        lock.lock();
+        try {
+            String pendingTicket = pendingTickets.get(key);
+            if (pendingTicket != null) {
+                suppressedDuplicates.increment();
+                logger.debug("Citizen ID {} already has a pending request for '{}' by '{}'.", citizenId, bookTitle, bookAuthor);
+                return pendingTicket;
+            }
+            CitizenQueue queue = queuesByCitizen.get(citizenId);
+            if (size >= capacity || (queue != null && queue.requests.size() >= maxPerCitizen)) {
+                return null;
+            }
+            if (queue == null) {
+                queue = new CitizenQueue(citizenId);
+                queuesByCitizen.put(citizenId, queue);
+                activeCitizens.addLast(queue);
+            }
+            queue.requests.addLast(new Pending(bookTitle, bookAuthor, key, ticketId, System.nanoTime()));
+            pendingTickets.put(key, ticketId);
+            size++;
+            notEmpty.signal();
+            return ticketId;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // ----------------------- Consumers -----------------------
+
+    @Override
+    public boolean poll(LoanRequest target) {
+        lock.lock();
+        try {
+            return dequeue(target);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public void take(LoanRequest target) throws InterruptedException {
+        lock.lockInterruptibly();
+        try {
+            while (!dequeue(target)) {
+                notEmpty.await();
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // Serves the citizen at the head of the round; they go to the back once their turn is used up
+    private boolean dequeue(LoanRequest target) {
+        CitizenQueue queue = activeCitizens.peekFirst();
+        if (queue == null) {
+            return false;
+        }
+        if (queue.deficit == 0) {
+            queue.deficit = quantum; // Start of this citizen's turn
+        }
+        Pending request = queue.requests.pollFirst();
+        queue.deficit--;
+        pendingTickets.remove(request.key());
+        size--;
+
+        if (queue.requests.isEmpty()) {
+            // An idle citizen keeps no credit, so they cannot save up turns
+            activeCitizens.pollFirst();
+            queuesByCitizen.remove(queue.citizenId);
+        } else if (queue.deficit == 0) {
+            activeCitizens.addLast(activeCitizens.pollFirst());
+        }
+
+        target.setBookTitle(request.bookTitle());
+        target.setBookAuthor(request.bookAuthor());
+        target.setCitizenId(queue.citizenId);
+        target.setTicketId(request.ticketId());
+        target.setEnqueuedAtNanos(request.enqueuedAtNanos());
+        return true;
+    }
+
+    // ----------------------- Introspection -----------------------
+
+    @Override
+    public int size() {
+        lock.lock();
+        try {
+            return size;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public int capacity() {
+        return capacity;
+    }
+
+    public long getSuppressedDuplicates() {
+        return suppressedDuplicates.sum();
+    }
+}
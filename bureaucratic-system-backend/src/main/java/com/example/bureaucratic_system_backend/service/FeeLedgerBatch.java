@@ -0,0 +1,99 @@
+package com.example.bureaucratic_system_backend.service;
+
+import com.example.bureaucratic_system_backend.model.Fees;
+import com.example.bureaucratic_system_backend.store.DocumentMapper;
+import com.example.bureaucratic_system_backend.store.StoredDocument;
+import com.example.bureaucratic_system_backend.store.Write;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Fee writes that go in one commit, together with the increments they make to the balances in
+ * {@code feeBalances/{membershipId}}. Increments are summed per membership, so a commit holds at
+ * most one balance write per member however many of their fees it touches. That write also bumps
+ * the balance's {@code version}, which therefore changes with every change to the member's fees.
+ *
+ * Changes and deletions are conditioned on the fee being unchanged since it was read, so the
+ * amount taken off a balance is always the amount that was added to it. A fee still in the old
+ * string format was never counted, so it takes nothing off; once written it is counted. The same
+ * deltas go to the fee statistics ({@link StatsDelta}).
+ */
+final class FeeLedgerBatch {
+
+    static final String BALANCES = "feeBalances";
+    static final String VERSION = "version";
+
+    private final List<Write> feeWrites = new ArrayList<>();
+    // Membership ID -> {outstanding, lifetime} deltas in cents
+    private final Map<String, long[]> balanceDeltas = new LinkedHashMap<>();
+    private final StatsDelta stats = new StatsDelta();
+
+    // Adds a fee; the commit fails if one with the same ID exists
+    void add(Fees fee) {
+        feeWrites.add(Write.create("fees", fee.getId(), fee));
+        count(fee, 1);
+    }
+
+    // Replaces a stored fee with its new state; the dollar string of the old format is dropped
+    void change(StoredDocument before, Fees after) {
+        List<String> removedFields = FirebaseService.isLegacyFee(before) ? List.of("amount") : List.of();
+        feeWrites.add(Write.update("fees", before.id(), DocumentMapper.toData(after), removedFields, before.updateTime()));
+        uncount(before);
+        count(after, 1);
+    }
+
+    void delete(StoredDocument before) {
+        feeWrites.add(Write.delete("fees", before.id(), before.updateTime()));
+        uncount(before);
+    }
+
+    boolean isEmpty() {
+        return feeWrites.isEmpty();
+    }
+
+    // Writes the commit will hold: fees, balances and statistics
+    int size() {
+        return writes().size();
+    }
+
+    List<Write> writes() {
+        List<Write> writes = new ArrayList<>(feeWrites);
+        // Written even when the totals stay the same, for the version
+        balanceDeltas.forEach((membershipId, delta) -> writes.add(Write.increment(BALANCES, membershipId,
+                Map.of("outstandingCents", delta[0], "lifetimeCents", delta[1], VERSION, 1L))));
+        writes.addAll(stats.writes());
+        return writes;
+    }
+
+    private void uncount(StoredDocument before) {
+        Fees fee = FirebaseService.toFee(before);
+        if (FirebaseService.isLegacyFee(before)) {
+            touch(fee.getMembershipId()); // Nothing to take off, but the member's fees change
+        } else {
+            count(fee, -1);
+        }
+    }
+
+    private void count(Fees fee, int sign) {
+        long[] delta = touch(fee.getMembershipId());
+        if (delta == null) {
+            return;
+        }
+        delta[0] += sign * outstandingCents(fee);
+        delta[1] += sign * fee.getAmountCents();
+        stats.fee(fee, sign);
+    }
+
+    // What the fee still owes: its amount less the part already paid
+    static long outstandingCents(Fees fee) {
+        return fee.isPaid() ? 0 : Math.max(0, fee.getAmountCents() - fee.getPaidCents());
+    }
+
+    // Balance deltas of the member, registered so the commit bumps their version; null without a member
+    private long[] touch(String membershipId) {
+        return (membershipId == null) ? null : balanceDeltas.computeIfAbsent(membershipId, id -> new long[2]);
+    }
+}
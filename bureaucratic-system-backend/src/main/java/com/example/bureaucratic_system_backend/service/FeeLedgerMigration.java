@@ -0,0 +1,90 @@
+package com.example.bureaucratic_system_backend.service;
+
+import com.example.bureaucratic_system_backend.store.StoredDocument;
+import com.example.bureaucratic_system_backend.store.WriteConflictException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Component;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Converts fees stored in the old format (a dollar string {@code amount} and a "Yes"/"No"
+ * {@code paid}) to cents and a boolean, and counts them into their members' balances. The old
+ * {@code amount} field is removed, so nothing is left to read it from.
+ *
+ * Fees are read in pages ordered by document ID, and each page's conversions are committed in
+ * one batch together with the balance increments. A converted fee is skipped on the next pass,
+ * so the migration can be stopped and run again at any time; until it has run, balances do not
+ * include old fees that were never written since. Conversions are conditioned on the fee being
+ * unchanged, and a page that lost a race is read again.
+ */
+@Component
+public class FeeLedgerMigration {
+
+    private static final Logger logger = LoggerFactory.getLogger(FeeLedgerMigration.class);
+
+    private static final int MAX_PAGE_ATTEMPTS = 3;
+
+    // Each fee may need its own balance write, next to the statistics
+    private final int pageSize = (FirebaseService.getMaxBatchWrites() - StatsDelta.MAX_WRITES) / 2;
+    private final AtomicBoolean running = new AtomicBoolean();
+
+    /**
+     * @return how many fees were scanned and converted
+     * @throws IllegalStateException if a migration is already in progress on this instance
+     */
+    public Map<String, Object> run() {
+        if (!running.compareAndSet(false, true)) {
+            throw new IllegalStateException("Fee ledger migration is already running.");
+        }
+        try {
+            long started = System.currentTimeMillis();
+            String cursor = null;
+            long scanned = 0;
+            long migrated = 0;
+            while (true) {
+                List<StoredDocument> page = FirebaseService.await(FirebaseService.getFeesPageAsync(cursor, pageSize));
+                if (page.isEmpty()) {
+                    break;
+                }
+                migrated += migratePage(cursor, page);
+                scanned += page.size();
+                cursor = page.get(page.size() - 1).id();
+            }
+            logger.info("Fee ledger migration done: {} fees scanned, {} converted in {} ms.",
+                    scanned, migrated, System.currentTimeMillis() - started);
+            return Map.of("scanned", scanned, "migrated", migrated);
+        } finally {
+            running.set(false);
+        }
+    }
+
+    private int migratePage(String startAfter, List<StoredDocument> page) {
+        for (int attempt = 1; ; attempt++) {
+            FeeLedgerBatch batch = new FeeLedgerBatch();
+            int converted = 0;
+            for (StoredDocument fee : page) {
+                if (FirebaseService.isLegacyFee(fee)) {
+                    batch.change(fee, FirebaseService.toFee(fee));
+                    converted++;
+                }
+            }
+            if (batch.isEmpty()) {
+                return 0;
+            }
+            try {
+                FirebaseService.commitFees(batch);
+                return converted;
+            } catch (WriteConflictException e) {
+                if (attempt == MAX_PAGE_ATTEMPTS) {
+                    throw new IllegalStateException("Fees after ID " + startAfter + " kept changing during migration.", e);
+                }
+                logger.info("A fee changed while its page was migrated (attempt {}). Retrying the page.", attempt);
+                page = FirebaseService.await(FirebaseService.getFeesPageAsync(startAfter, page.size()));
+            }
+        }
+    }
+}
@@ -1,54 +1,71 @@
 package com.example.bureaucratic_system_backend.service;
 
 import com.example.bureaucratic_system_backend.model.Borrows;
+import com.example.bureaucratic_system_backend.model.FeeBalance;
 import com.example.bureaucratic_system_backend.model.Fees;
+import com.example.bureaucratic_system_backend.store.StoredDocument;
+import com.example.bureaucratic_system_backend.store.WriteConflictException;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.stereotype.Service;
 
 import java.time.LocalDate;
 import java.time.temporal.ChronoUnit;
-import java.util.Map;
-import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.locks.Lock;
-import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.BiConsumer;
 @Service
 public class FeeService {
 
     private static final Logger logger = LoggerFactory.getLogger(FeeService.class);
 
+    static final long OVERDUE_CENTS_PER_DAY = 100;
+    private static final int MAX_COMMIT_ATTEMPTS = 3;
+
     // Locks for thread-safe fee management
-    private final Map<String, Lock> feeLocks = new ConcurrentHashMap<>();
+    private final KeyedLockRegistry keyedLocks;
     private final FirebaseService firebaseService;
 
-    public FeeService(FirebaseService firebaseService) {
+    public FeeService(FirebaseService firebaseService, KeyedLockRegistry keyedLocks) {
         this.firebaseService = firebaseService;
+        this.keyedLocks = keyedLocks;
     }
 
     // ----------------------- Fee Management -----------------------
 
     // Manually add a custom fee
     public void addFee(Fees fee) {
-        feeLocks.putIfAbsent(fee.getId(), new ReentrantLock());
-        Lock lock = feeLocks.get(fee.getId());
+        Lock lock = keyedLocks.get("fee:" + fee.getId());
 
         lock.lock();
         try {
+            if (fee.getAmountCents() < 0) {
+                throw new IllegalArgumentException("Fee amount must not be negative.");
+            }
+
+            // The three existence checks are independent, so issue them together
+            CompletableFuture<Boolean> feeExists = firebaseService.documentExistsAsync("fees", fee.getId());
+            CompletableFuture<Boolean> membershipExists = firebaseService.documentExistsAsync("memberships", fee.getMembershipId());
+            CompletableFuture<Boolean> borrowExists = firebaseService.documentExistsAsync("borrows", fee.getBorrowId());
+
             // Check if fee ID already exists (uniqueness check)
-            if (firebaseService.documentExists("fees", fee.getId())) {
+            if (FirebaseService.await(feeExists)) {
                 throw new IllegalArgumentException("Fee with ID " + fee.getId() + " already exists.");
             }
 
             // Validate foreign keys (e.g., membershipId, borrowId)
-            if (!firebaseService.documentExists("memberships", fee.getMembershipId())) {
+            if (!FirebaseService.await(membershipExists)) {
                 throw new IllegalArgumentException("Membership with ID " + fee.getMembershipId() + " does not exist.");
             }
-            if (!firebaseService.documentExists("borrows", fee.getBorrowId())) {
+            if (!FirebaseService.await(borrowExists)) {
                 throw new IllegalArgumentException("Borrow record with ID " + fee.getBorrowId() + " does not exist.");
             }
 
-            firebaseService.addFee(fee);
-            logger.info("Fee added successfully: {}", fee);
+            // The fee and the member's balance are written together; a fee created meanwhile fails the commit
+            FeeLedgerBatch batch = new FeeLedgerBatch();
+            batch.add(fee);
+            FirebaseService.commitFees(batch);
+            logger.info("Fee added successfully: {}", fee.getId());
         } catch (Exception e) {
             logger.error("Error adding fee: {}", e.getMessage());
             throw new RuntimeException(e.getMessage(), e);
@@ -57,15 +74,33 @@ public class FeeService {
         }
     }
 
-    // Automatically generate overdue fee based on borrow data
+    // Overdue fees are $1 per day late
+    static long overdueAmountCents(long overdueDays) {
+        return overdueDays * OVERDUE_CENTS_PER_DAY;
+    }
+
+    // Brings a fee to a new amount; what was paid stays paid, and the fee is paid if that covers it
+    static void reassess(Fees fee, long amountCents) {
+        fee.setAmountCents(amountCents);
+        fee.setPaid(fee.getPaidCents() >= amountCents);
+    }
+
+    /**
+     * Generates or settles the overdue fee of a returned borrow. The fee may already exist, accrued
+     * by {@link OverdueFeeAccrualJob} while the book was out; it is then brought to its final
+     * amount, and what was already paid of it stays paid.
+     */
     public void generateOverdueFee(String borrowId) {
-        feeLocks.putIfAbsent(borrowId, new ReentrantLock());
-        Lock lock = feeLocks.get(borrowId);
+        Lock lock = keyedLocks.get("fee:" + borrowId);
 
         lock.lock();
         try {
+            // The fee reuses the borrow ID, so it can be looked up alongside the borrow
+            CompletableFuture<Borrows> borrowLookup = firebaseService.getBorrowByIdAsync(borrowId);
+            CompletableFuture<StoredDocument> feeLookup = FirebaseService.getStoredDocumentAsync("fees", borrowId);
+
             // Validate that the borrow ID exists
-            Borrows borrow = firebaseService.getBorrowById(borrowId);
+            Borrows borrow = FirebaseService.await(borrowLookup);
             if (borrow == null) {
                 throw new IllegalArgumentException("Borrow record not found for borrow ID: " + borrowId);
             }
@@ -81,16 +116,21 @@ public class FeeService {
             long overdueDays = ChronoUnit.DAYS.between(dueDate, returnDate);
 
             if (overdueDays > 0) {
-                String amount = String.valueOf(overdueDays * 1); // Example: $1 per day
-                Fees fee = new Fees(borrowId, borrow.getMembershipId(), amount, borrowId, "No");
-
-                // Check if fee ID already exists (reuse borrowId as fee ID)
-                if (firebaseService.documentExists("fees", fee.getId())) {
-                    throw new IllegalArgumentException("Overdue fee for borrow ID " + borrowId + " already exists.");
-                }
-
-                firebaseService.addFee(fee);
-                logger.info("Overdue fee generated: $ {} for borrow ID: {}", amount, borrowId);
+                long amountCents = overdueAmountCents(overdueDays);
+                commitWithRetry(borrowId, feeLookup, (existing, batch) -> {
+                    if (existing == null) {
+                        batch.add(new Fees(borrowId, borrow.getMembershipId(), amountCents, borrowId, false));
+                    } else {
+                        Fees settled = FirebaseService.toFee(existing);
+                        boolean amountChanged = settled.getAmountCents() != amountCents;
+                        // A legacy fee is rewritten in cents even if its amount is right
+                        if (amountChanged || FirebaseService.isLegacyFee(existing)) {
+                            reassess(settled, amountCents);
+                            batch.change(existing, settled);
+                        }
+                    }
+                });
+                logger.info("Overdue fee of {} cents settled for borrow ID: {}", amountCents, borrowId);
             } else {
                 logger.info("No overdue fee generated. Book returned on time for borrow ID: {}", borrowId);
             }
@@ -112,25 +152,21 @@ public class FeeService {
             throw new IllegalArgumentException("Fee not found for borrow ID: " + borrowId);
         }
 
-        feeLocks.putIfAbsent(fee.getId(), new ReentrantLock());
-        Lock lock = feeLocks.get(fee.getId());
-
-        logger.debug("Acquired lock for fee ID: {}", fee.getId());
+        Lock lock = keyedLocks.get("fee:" + fee.getId());
 
         lock.lock();
         try {
-            // Fetch fee details from Firebase
-            Fees fetchedFee = firebaseService.getFeeById(fee.getId());
-            if (fetchedFee == null) {
-                logger.error("Fee record not found in Firebase for fee ID: {}", fee.getId());
-                throw new IllegalArgumentException("Fee record not found for fee ID: " + fee.getId());
-            }
-
-            logger.debug("Fetched fee details: {}", fetchedFee);
-
-            // Update fee to mark as paid
-            fetchedFee.setPaid("Yes");
-            firebaseService.updateFee(fee.getId(), fetchedFee);
+            commitWithRetry(fee.getId(), null, (existing, batch) -> {
+                if (existing == null) {
+                    throw new IllegalArgumentException("Fee record not found for fee ID: " + fee.getId());
+                }
+                Fees current = FirebaseService.toFee(existing);
+                if (!current.isPaid() || FirebaseService.isLegacyFee(existing)) {
+                    current.setPaid(true);
+                    current.setPaidCents(current.getAmountCents());
+                    batch.change(existing, current);
+                }
+            });
 
             logger.info("Fee successfully marked as paid. Fee ID: {}, Borrow ID: {}", fee.getId(), borrowId);
         } catch (Exception e) {
@@ -138,24 +174,23 @@ public class FeeService {
             throw new RuntimeException("Failed to mark fee as paid: " + e.getMessage(), e);
         } finally {
             lock.unlock();
-            logger.debug("Released lock for fee ID: {}", fee.getId());
         }
     }
 
 
     // Delete a fee
     public void deleteFee(String feeId) {
-        feeLocks.putIfAbsent(feeId, new ReentrantLock());
-        Lock lock = feeLocks.get(feeId);
+        Lock lock = keyedLocks.get("fee:" + feeId);
 
         lock.lock();
         try {
-            // Validate that the fee exists
-            if (!firebaseService.documentExists("fees", feeId)) {
-                throw new IllegalArgumentException("Fee not found for fee ID: " + feeId);
-            }
-
-            firebaseService.deleteFee(feeId);
+            commitWithRetry(feeId, null, (existing, batch) -> {
+                // Validate that the fee exists
+                if (existing == null) {
+                    throw new IllegalArgumentException("Fee not found for fee ID: " + feeId);
+                }
+                batch.delete(existing);
+            });
             logger.info("Fee deleted successfully for fee ID: {}", feeId);
         } catch (Exception e) {
             logger.error("Error deleting fee for fee ID: {}: {}", feeId, e.getMessage());
@@ -165,6 +200,44 @@ public class FeeService {
         }
     }
 
+    /**
+     * Reads the fee (null if absent), lets {@code change} fill a batch from it and commits the
+     * batch. The fee lock keeps out this instance's other fee operations, but the accrual job
+     * and other instances write without it, so the commit is conditioned on the fee being
+     * unchanged and repeated from a fresh read if it was not.
+     *
+     * @param firstRead the fee's read if already issued, or null
+     */
+    private void commitWithRetry(String feeId, CompletableFuture<StoredDocument> firstRead,
+                                 BiConsumer<StoredDocument, FeeLedgerBatch> change) {
+        for (int attempt = 1; ; attempt++) {
+            StoredDocument existing = FirebaseService.await((attempt == 1 && firstRead != null)
+                    ? firstRead
+                    : FirebaseService.getStoredDocumentAsync("fees", feeId));
+            FeeLedgerBatch batch = new FeeLedgerBatch();
+            change.accept(existing, batch);
+            if (batch.isEmpty()) {
+                return;
+            }
+            try {
+                FirebaseService.commitFees(batch);
+                return;
+            } catch (WriteConflictException e) {
+                if (attempt == MAX_COMMIT_ATTEMPTS) {
+                    throw e;
+                }
+                logger.debug("Fee {} changed while being written (attempt {}). Retrying.", feeId, attempt);
+            }
+        }
+    }
+
+    // ----------------------- Lookup -----------------------
+
+    // Outstanding and lifetime totals of a membership, read from its balance document
+    public FeeBalance getBalance(String membershipId) {
+        return FirebaseService.await(firebaseService.getFeeBalanceAsync(membershipId));
+    }
+
     // Retrieve a fee by borrow ID
     public Fees getFeeByBorrowId(String borrowId) {
         try {
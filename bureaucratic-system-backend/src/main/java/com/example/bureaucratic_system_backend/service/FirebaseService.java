@@ -1,171 +1,230 @@
 package com.example.bureaucratic_system_backend.service;
 
 import com.example.bureaucratic_system_backend.model.*;
-import com.google.api.core.ApiFuture;
-import com.google.cloud.firestore.*;
+import com.example.bureaucratic_system_backend.store.ChangeSet;
+import com.example.bureaucratic_system_backend.store.DocumentStore;
+import com.example.bureaucratic_system_backend.store.Query;
+import com.example.bureaucratic_system_backend.store.StoredDocument;
+import com.example.bureaucratic_system_backend.store.Write;
+import com.example.bureaucratic_system_backend.store.WriteConflictException;
+import com.google.cloud.Timestamp;
 import com.google.firebase.auth.FirebaseAuth;
-import com.google.firebase.auth.FirebaseToken;
-import com.google.firebase.cloud.FirestoreClient;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.context.annotation.DependsOn;
 import org.springframework.stereotype.Service;
 
+import java.math.BigDecimal;
+import java.math.RoundingMode;
 import java.time.LocalDate;
+import java.time.temporal.ChronoUnit;
 import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.stream.Collectors;
-
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.LongSupplier;
+
+/**
+ * All document reads and writes of the backend. They go through the {@link DocumentStore}
+ * selected by {@code storage.backend}: Cloud Firestore, or the embedded store for offline,
+ * single-node deployments.
+ */
 @Service
+@DependsOn("documentStore")
 public class FirebaseService {
     private static final Logger logger = LoggerFactory.getLogger(FirebaseService.class);
 
-    private static Firestore getFirestore() {
-        return FirestoreClient.getFirestore();
+    // Largest commit either store accepts (Firestore's batched write limit)
+    private static final int MAX_BATCH_WRITES = 500;
+
+    // Documents per read when a whole collection is scanned
+    static final int SCAN_PAGE_SIZE = 500;
+
+    // Optimistic retries of a sequence reservation that lost a race with another instance
+    private static final int MAX_SEQUENCE_ATTEMPTS = 10;
+
+    // Per-membership document whose borrows field counts the writes to the member's borrows
+    static final String MEMBER_VERSIONS = "memberVersions";
+
+    // Loan requests waiting for a copy to be returned, one document per reservation
+    static final String WAITLIST = "waitlist";
+
+    private static volatile DocumentStore documentStore;
+
+    // Bumped after every change to the counters collection this instance commits or observes
+    private static final AtomicLong countersVersion = new AtomicLong();
+
+    private final MembershipCache membershipCache;
+
+    public FirebaseService(MembershipCache membershipCache) {
+        this.membershipCache = membershipCache;
+    }
+
+    // Called once by StorageConfig before any bean touches the store
+    public static void useDocumentStore(DocumentStore store) {
+        documentStore = store;
     }
+
+    private static DocumentStore store() {
+        DocumentStore store = documentStore;
+        if (store == null) {
+            throw new IllegalStateException("No document store configured yet.");
+        }
+        return store;
+    }
+
     public void assignRole(String userId, String role) throws Exception {
         FirebaseAuth.getInstance().setCustomUserClaims(userId, Map.of("role", role));
     }
     public Map<String, Object> getUserByEmail(String email) {
-        System.out.println("Querying Firestore for email: " + email);
+        logger.info("Querying Firestore for email: {}", email);
         try {
-            ApiFuture<QuerySnapshot> query = getFirestore()
-                    .collection("users")
-                    .whereEqualTo("email", email)
-                    .get();
-            List<QueryDocumentSnapshot> documents = query.get().getDocuments();
+            List<StoredDocument> documents = await(store().query(Query.of("users").whereEqualTo("email", email)));
             if (documents.isEmpty()) {
-                System.out.println("No user found for email: " + email);
+                logger.warn("No user found for email: {}", email);
                 return null;
             }
-            return documents.get(0).getData();
+            return new HashMap<>(documents.get(0).data());
         } catch (Exception e) {
-            System.err.println("Error fetching user by email: " + e.getMessage());
+            logger.error("Error fetching user by email: {}", e.getMessage());
             return null;
         }
     }
     public static void saveCounterToFirestore(Counter counter) {
         try {
-            Firestore firestore = getFirestore();
-            firestore.collection("counters").document(String.valueOf(counter.getCounterId()))
-                    .set(Map.of(
-                            "counterId", counter.getCounterId(),
-                            "isPaused", counter.isPaused()
-                    )).get();
+            await(store().commit(List.of(Write.set("counters", String.valueOf(counter.getCounterId()), counterData(counter)))));
+            countersVersion.incrementAndGet();
             logger.info("Counter {} initialized in Firestore.", counter.getCounterId());
         } catch (Exception e) {
             logger.error("Error saving counter to Firestore: {}", e.getMessage());
         }
     }
+    private static Map<String, Object> counterData(Counter counter) {
+        return Map.of(
+                "counterId", counter.getCounterId(),
+                "isPaused", counter.isPaused()
+        );
+    }
     public static Map<String, Object> getCounterById(int counterId) {
         try {
-            Firestore firestore = FirestoreClient.getFirestore();
-            ApiFuture<QuerySnapshot> query = firestore.collection("counters")
-                    .whereEqualTo("counterId", counterId)
-                    .get();
-            List<QueryDocumentSnapshot> documents = query.get().getDocuments();
+            List<StoredDocument> documents = await(store().query(Query.of("counters").whereEqualTo("counterId", counterId)));
 
             if (!documents.isEmpty()) {
-                return documents.get(0).getData(); // Return the first matching counter
+                return new HashMap<>(documents.get(0).data()); // Return the first matching counter
             } else {
-                System.err.println("Counter not found for ID: " + counterId);
+                logger.warn("Counter not found for ID: {}", counterId);
                 return null;
             }
         } catch (Exception e) {
-            System.err.println("Error fetching counter by ID: " + e.getMessage());
+            logger.error("Error fetching counter by ID: {}", e.getMessage());
             return null;
         }
     }
-    public static void listenToCounterChanges(Map<Integer, Object> counterLocks, Map<Integer, Boolean> counterPauseStatus) {
-        Firestore firestore = getFirestore();
-        firestore.collection("counters").addSnapshotListener((snapshots, e) -> {
-            if (e != null) {
-                System.err.println("Error listening to counters: " + e.getMessage());
-                return;
+    public static void saveCountersToFirestore(List<Counter> counters) {
+        try {
+            List<Write> writes = new ArrayList<>(counters.size());
+            for (Counter counter : counters) {
+                writes.add(Write.set("counters", String.valueOf(counter.getCounterId()), counterData(counter)));
             }
-
-            if (snapshots != null) {
-                for (DocumentChange dc : snapshots.getDocumentChanges()) {
-                    Map<String, Object> counterData = dc.getDocument().getData();
-                    Integer counterId = (counterData.containsKey("counterId"))
-                            ? ((Long) counterData.get("counterId")).intValue()
-                            : null;
-                    Boolean isPaused = (Boolean) counterData.get("isPaused");
-
-                    if (counterId != null) {
-                        counterPauseStatus.put(counterId, isPaused);
-
-                        // Notify the thread if the counter is no longer paused
-                        if (!isPaused) {
-                            synchronized (counterLocks.get(counterId)) {
-                                counterLocks.get(counterId).notifyAll();
-                            }
-                            System.out.printf("Counter %d resumed from Firestore changes.%n", counterId);
-                        }
-                    }
+            commitInBatches(writes);
+            countersVersion.incrementAndGet();
+            logger.info("{} counters initialized in Firestore.", counters.size());
+        } catch (Exception e) {
+            logger.error("Error saving counters to Firestore: {}", e.getMessage());
+        }
+    }
+    public static void listenToCounterChanges(BiConsumer<Integer, Boolean> onCounterStateChange) {
+        store().listen("counters", changeSet -> {
+            // Other instances' changes arrive here too
+            countersVersion.incrementAndGet();
+            for (ChangeSet.Change change : changeSet.changes()) {
+                if (change.type() == ChangeSet.Type.REMOVED) {
+                    continue;
+                }
+                Map<String, Object> counterData = change.document().data();
+                if (!(counterData.get("counterId") instanceof Number)) {
+                    continue;
                 }
+                int counterId = ((Number) counterData.get("counterId")).intValue();
+                // A missing or malformed flag is treated as paused, matching the previous per-poll check
+                boolean isPaused = !Boolean.FALSE.equals(counterData.get("isPaused"));
+
+                onCounterStateChange.accept(counterId, isPaused);
+                logger.debug("Counter {} is now {} (Firestore change).", counterId, isPaused ? "paused" : "active");
             }
         });
     }
     public static void updateCounterState(int counterId, boolean isPaused) {
         try {
-            Firestore firestore = getFirestore();
-            firestore.collection("counters").document(String.valueOf(counterId))
-                    .update("isPaused", isPaused).get();
+            await(store().commit(List.of(Write.update("counters", String.valueOf(counterId), Map.of("isPaused", isPaused)))));
+            countersVersion.incrementAndGet();
             logger.info("Counter {} state updated to {}.", counterId, isPaused ? "Paused" : "Active");
         } catch (Exception e) {
             logger.error("Error updating counter state in Firestore: {}", e.getMessage());
         }
     }
+    // A failed read throws rather than returning no counters, so it is never cached as an empty list
     public static List<Counter> getAllCounters() {
         List<Counter> counters = new ArrayList<>();
-        try {
-            Firestore firestore = getFirestore();
-            ApiFuture<QuerySnapshot> query = firestore.collection("counters").get();
-            List<QueryDocumentSnapshot> documents = query.get().getDocuments();
+        List<StoredDocument> documents = await(store().query(Query.of("counters")));
 
-            for (QueryDocumentSnapshot document : documents) {
-                int counterId = document.getLong("counterId").intValue();
-                boolean isPaused = document.getBoolean("isPaused");
-                counters.add(new Counter(counterId, isPaused));
-            }
-        } catch (Exception e) {
-            logger.error("Error fetching counters from Firestore: {}", e.getMessage());
+        for (StoredDocument document : documents) {
+            int counterId = document.getLong("counterId").intValue();
+            boolean isPaused = document.getBoolean("isPaused");
+            counters.add(new Counter(counterId, isPaused));
         }
         return counters;
     }
     public static void clearCountersCollection() {
-        Firestore firestore = getFirestore();
-
         try {
-            ApiFuture<QuerySnapshot> query = firestore.collection("counters").get();
-            List<QueryDocumentSnapshot> documents = query.get().getDocuments();
+            List<StoredDocument> documents = await(store().query(Query.of("counters")));
 
-            for (QueryDocumentSnapshot document : documents) {
-                firestore.collection("counters").document(document.getId()).delete();
-                logger.info("Deleted counter document: {}", document.getId());
+            List<Write> deletes = new ArrayList<>(documents.size());
+            for (StoredDocument document : documents) {
+                deletes.add(Write.delete("counters", document.id()));
             }
+            commitInBatches(deletes);
+            countersVersion.incrementAndGet();
 
-            logger.info("All counters cleared from Firestore.");
+            logger.info("All counters cleared from Firestore ({} deleted).", documents.size());
         } catch (Exception e) {
             logger.error("Error clearing counters collection: {}", e.getMessage());
         }
     }
+
+    /**
+     * Changes whenever the counters collection may have changed: after this instance's own writes
+     * (bumped once they are committed, so a reader that sees the new version also sees the data)
+     * and on every change the listener delivers. Only meaningful within this process.
+     */
+    public static long getCountersVersion() {
+        return countersVersion.get();
+    }
+
     // ----------------------- Memberships -----------------------
 
     public static String getMembershipIdById(String citizenId) {
         try {
-            ApiFuture<QuerySnapshot> query = getFirestore().collection("memberships")
-                    .whereEqualTo("citizenId", citizenId).get();
-            List<QueryDocumentSnapshot> documents = query.get().getDocuments();
-            return documents.isEmpty() ? null : documents.get(0).getId();
+            List<StoredDocument> documents = await(store().query(Query.of("memberships").whereEqualTo("citizenId", citizenId)));
+            return documents.isEmpty() ? null : documents.get(0).id();
         } catch (Exception e) {
             e.printStackTrace();
             return null;
         }
     }
 
+    public static void listenToMembershipChanges(Consumer<ChangeSet> onChanges) {
+        store().listen("memberships", onChanges);
+    }
+
     public void addMembership(Membership newMembership) {
         Map<String, Object> membershipData = new HashMap<>();
         membershipData.put("id", newMembership.getMembershipNumber());
@@ -173,23 +232,26 @@ public class FirebaseService {
         membershipData.put("citizenId", newMembership.getCitizenId());
 
         try {
-            getFirestore().collection("memberships").document(newMembership.getMembershipNumber()).set(membershipData).get();
-            System.out.println("Membership added successfully: " + newMembership.getMembershipNumber());
+            await(store().commit(List.of(Write.set("memberships", newMembership.getMembershipNumber(), membershipData))));
+            membershipCache.put(newMembership.getCitizenId(), newMembership.getMembershipNumber());
+            logger.info("Membership added successfully: {}", newMembership.getMembershipNumber());
         } catch (Exception e) {
-            System.err.println("Error adding membership: " + e.getMessage());
+            logger.error("Error adding membership: {}", e.getMessage());
         }
     }
 
     public void updateMembershipField(String membershipId, String fieldName, Object value) {
         updateField("memberships", membershipId, fieldName, value);
+        membershipCache.invalidateMembership(membershipId);
     }
 
     public void deleteMembership(String membershipId) {
         try {
-            getFirestore().collection("memberships").document(membershipId).delete().get();
-            System.out.println("Membership deleted successfully: " + membershipId);
+            await(store().commit(List.of(Write.delete("memberships", membershipId))));
+            membershipCache.invalidateMembership(membershipId);
+            logger.info("Membership deleted successfully: {}", membershipId);
         } catch (Exception e) {
-            System.err.println("Error deleting membership: " + e.getMessage());
+            logger.error("Error deleting membership: {}", e.getMessage());
         }
     }
 
@@ -197,40 +259,37 @@ public class FirebaseService {
 
     public static Book getBookByTitleAndAuthor(String title, String author) {
         try {
-            ApiFuture<QuerySnapshot> query = getFirestore().collection("books")
-                    .whereEqualTo("name", title)
-                    .whereEqualTo("author", author)
-                    .whereEqualTo("available", true).get();
-            List<QueryDocumentSnapshot> documents = query.get().getDocuments();
-            return documents.isEmpty() ? null : documents.get(0).toObject(Book.class);
+            return await(getBookByTitleAndAuthorAsync(title, author));
         } catch (Exception e) {
-            System.err.println("Error fetching book: " + e.getMessage());
+            logger.error("Error fetching book: {}", e.getMessage());
             return null;
         }
     }
 
-    public void addBook(Book book) {
-        try {
-            getFirestore().collection("books").document(book.getId()).set(book).get();
-            System.out.println("Book added successfully: " + book.getName());
-        } catch (Exception e) {
-            System.err.println("Error adding book: " + e.getMessage());
-        }
+    // Same query as getBookByTitleAndAuthorAsync, but keeps the document so its update time can
+    // be used as the precondition of commitLoan
+    public static CompletableFuture<StoredDocument> findAvailableCopyAsync(String title, String author) {
+        return store().query(Query.of("books")
+                        .whereEqualTo("name", title)
+                        .whereEqualTo("author", author)
+                        .whereEqualTo("available", true)
+                        .limit(1))
+                .thenApply(documents -> documents.isEmpty() ? null : documents.get(0));
+    }
+
+    public static void listenToBookChanges(Consumer<ChangeSet> onChanges) {
+        store().listen("books", onChanges);
     }
-    public List<String> getAllDocumentIds(String collectionName) {
-        Firestore firestore = FirestoreClient.getFirestore();
 
+    public void addBook(Book book) {
         try {
-            return firestore.collection(collectionName)
-                    .get()
-                    .get()
-                    .getDocuments()
-                    .stream()
-                    .map(QueryDocumentSnapshot::getId) // Extract the document IDs
-                    .collect(Collectors.toList());
+            List<Write> writes = new ArrayList<>();
+            writes.add(Write.create("books", book.getId(), book));
+            writes.addAll(bookStats(List.of(book), 1).writes());
+            await(store().commit(writes));
+            logger.info("Book added successfully: {}", book.getName());
         } catch (Exception e) {
-            logger.error("Error fetching document IDs from collection {}: {}", collectionName, e.getMessage());
-            throw new RuntimeException("Failed to fetch document IDs: " + e.getMessage(), e);
+            logger.error("Error adding book: {}", e.getMessage());
         }
     }
 
@@ -240,36 +299,33 @@ public class FirebaseService {
 
     public void deleteBook(String bookId) {
         try {
-            getFirestore().collection("books").document(bookId).delete().get();
-            System.out.println("Book deleted successfully: " + bookId);
+            StoredDocument book = await(store().get("books", bookId));
+            if (book != null) {
+                // Conditioned on the book being unchanged, so its title is taken off the count it was added to
+                List<Write> writes = new ArrayList<>();
+                writes.add(Write.delete("books", bookId, book.updateTime()));
+                writes.addAll(bookStats(List.of(book.toObject(Book.class)), -1).writes());
+                await(store().commit(writes));
+            }
+            logger.info("Book deleted successfully: {}", bookId);
         } catch (Exception e) {
-            System.err.println("Error deleting book: " + e.getMessage());
+            logger.error("Error deleting book: {}", e.getMessage());
         }
     }
 
-    public List<Book> getAllBooksFromFirestore() {
-        List<Book> books = new ArrayList<>();
-        try {
-            ApiFuture<QuerySnapshot> query = getFirestore().collection("books").get();
-            List<QueryDocumentSnapshot> documents = query.get().getDocuments();
-
-            for (QueryDocumentSnapshot document : documents) {
-                books.add(document.toObject(Book.class));
-            }
-        } catch (Exception e) {
-            System.err.println("Error retrieving books: " + e.getMessage());
-        }
-        return books;
+    // Page of the whole catalog, one document per copy
+    public CompletableFuture<Page<Book>> getBooksPageAsync(String cursor, int pageSize) {
+        return page(Query.of("books"), cursor, pageSize, document -> document.toObject(Book.class));
     }
 
     // ----------------------- Citizens -----------------------
 
     public void addCitizen(Citizen citizen) {
         try {
-            getFirestore().collection("citizen").document(citizen.getId()).set(citizen).get();
-            System.out.println("Citizen added successfully: " + citizen.getName());
+            await(store().commit(List.of(Write.set("citizen", citizen.getId(), citizen))));
+            logger.info("Citizen added successfully: {}", citizen.getName());
         } catch (Exception e) {
-            System.err.println("Error adding citizen: " + e.getMessage());
+            logger.error("Error adding citizen: {}", e.getMessage());
         }
     }
 
@@ -279,10 +335,10 @@ public class FirebaseService {
 
     public void deleteCitizen(String citizenId) {
         try {
-            getFirestore().collection("citizen").document(citizenId).delete().get();
-            System.out.println("Citizen deleted successfully: " + citizenId);
+            await(store().commit(List.of(Write.delete("citizen", citizenId))));
+            logger.info("Citizen deleted successfully: {}", citizenId);
         } catch (Exception e) {
-            System.err.println("Error deleting citizen: " + e.getMessage());
+            logger.error("Error deleting citizen: {}", e.getMessage());
         }
     }
 
@@ -290,70 +346,52 @@ public class FirebaseService {
 
     public void addFee(Fees fee) {
         try {
-            getFirestore().collection("fees").document(fee.getId()).set(fee).get();
-            System.out.println("Fee added successfully: " + fee.getId());
+            FeeLedgerBatch batch = new FeeLedgerBatch();
+            batch.add(fee);
+            commitFees(batch);
+            logger.info("Fee added successfully: {}", fee.getId());
         } catch (Exception e) {
-            System.err.println("Error adding fee: " + e.getMessage());
+            logger.error("Error adding fee: {}", e.getMessage());
         }
     }
 
-    public void updateFee(String feeId, Fees updatedFee) {
-        try {
-            getFirestore().collection("fees").document(feeId).set(updatedFee).get();
-            System.out.println("Fee updated successfully: " + feeId);
-        } catch (Exception e) {
-            System.err.println("Error updating fee: " + e.getMessage());
-        }
+    // Commits fee writes with their balance increments; throws WriteConflictException if a fee changed since it was read
+    static void commitFees(FeeLedgerBatch batch) {
+        await(store().commit(batch.writes()));
     }
 
     public Fees getFeeByBorrowId(String borrowId) {
         try {
-            ApiFuture<QuerySnapshot> query = getFirestore().collection("fees")
-                    .whereEqualTo("borrowId", borrowId).get();
-            List<QueryDocumentSnapshot> documents = query.get().getDocuments();
-            return documents.isEmpty() ? null : documents.get(0).toObject(Fees.class);
+            return await(getFeeByBorrowIdAsync(borrowId));
         } catch (Exception e) {
-            System.err.println("Error fetching fee: " + e.getMessage());
+            logger.error("Error fetching fee: {}", e.getMessage());
             return null;
         }
     }
 
     public Fees getFeeById(String feeId) {
         try {
-            ApiFuture<QuerySnapshot> query = getFirestore().collection("fees")
-                    .whereEqualTo("id", feeId).get(); // Match the "id" field with feeId
-            List<QueryDocumentSnapshot> documents = query.get().getDocuments();
-            return documents.isEmpty() ? null : documents.get(0).toObject(Fees.class);
+            return await(getFeeByIdAsync(feeId));
         } catch (Exception e) {
-            System.err.println("Error fetching fee by ID: " + e.getMessage());
+            logger.error("Error fetching fee by ID: {}", e.getMessage());
             return null;
         }
     }
 
-    // Fetch all fees by membership ID
-    public List<Fees> getFeesByMembershipId(String membershipId) {
-        try {
-            ApiFuture<QuerySnapshot> query = getFirestore().collection("fees")
-                    .whereEqualTo("membershipId", membershipId).get();
-            List<QueryDocumentSnapshot> documents = query.get().getDocuments();
-            List<Fees> feesList = new ArrayList<>();
-            for (QueryDocumentSnapshot document : documents) {
-                feesList.add(document.toObject(Fees.class));
-            }
-            return feesList;
-        } catch (Exception e) {
-            System.err.println("Error fetching fees by membership ID: " + e.getMessage());
-            return new ArrayList<>();
-        }
-    }
 
 
     public void deleteFee(String feeId) {
         try {
-            getFirestore().collection("fees").document(feeId).delete().get();
-            System.out.println("Fee deleted successfully: " + feeId);
+            StoredDocument fee = await(store().get("fees", feeId));
+            if (fee == null) {
+                return;
+            }
+            FeeLedgerBatch batch = new FeeLedgerBatch();
+            batch.delete(fee);
+            commitFees(batch);
+            logger.info("Fee deleted successfully: {}", feeId);
         } catch (Exception e) {
-            System.err.println("Error deleting fee: " + e.getMessage());
+            logger.error("Error deleting fee: {}", e.getMessage());
         }
     }
 
@@ -361,154 +399,611 @@ public class FirebaseService {
 
     public void addBorrow(Borrows borrow) {
         try {
-            getFirestore().collection("borrows").document(borrow.getId()).set(borrow).get();
-            System.out.println("Borrow record added successfully: " + borrow.getId());
+            await(addBorrowAsync(borrow));
+            logger.info("Borrow record added successfully: {}", borrow.getId());
         } catch (Exception e) {
-            System.err.println("Error adding borrow record: " + e.getMessage());
-        }
-    }
-    // Fetch all borrows by membership ID
-    public List<Borrows> getBorrowsByMembershipId(String membershipId) {
-        try {
-            ApiFuture<QuerySnapshot> query = getFirestore().collection("borrows")
-                    .whereEqualTo("membershipId", membershipId).get();
-            List<QueryDocumentSnapshot> documents = query.get().getDocuments();
-            List<Borrows> borrowsList = new ArrayList<>();
-            for (QueryDocumentSnapshot document : documents) {
-                borrowsList.add(document.toObject(Borrows.class));
-            }
-            return borrowsList;
-        } catch (Exception e) {
-            System.err.println("Error fetching borrows by membership ID: " + e.getMessage());
-            return new ArrayList<>();
+            logger.error("Error adding borrow record: {}", e.getMessage());
         }
     }
     public Borrows getBorrowById(String borrowId) {
         try {
-            DocumentSnapshot snapshot = getFirestore().collection("borrows").document(borrowId).get().get();
-            return snapshot.exists() ? snapshot.toObject(Borrows.class) : null;
+            return await(getBorrowByIdAsync(borrowId));
         } catch (Exception e) {
-            System.err.println("Error retrieving borrow record: " + e.getMessage());
+            logger.error("Error retrieving borrow record: {}", e.getMessage());
             return null;
         }
     }
 
     public void updateBorrow(String borrowId, Borrows updatedBorrow) {
         try {
-            getFirestore().collection("borrows").document(borrowId).set(updatedBorrow).get();
-            System.out.println("Borrow record updated successfully: " + borrowId);
+            await(updateBorrowAsync(borrowId, updatedBorrow));
+            logger.info("Borrow record updated successfully: {}", borrowId);
         } catch (Exception e) {
-            System.err.println("Error updating borrow record: " + e.getMessage());
+            logger.error("Error updating borrow record: {}", e.getMessage());
         }
     }
 
     public void deleteBorrow(String borrowId) {
         try {
-            getFirestore().collection("borrows").document(borrowId).delete().get();
-            System.out.println("Borrow record deleted successfully: " + borrowId);
+            StoredDocument borrow = await(store().get("borrows", borrowId));
+            List<Write> writes = new ArrayList<>();
+            writes.add(Write.delete("borrows", borrowId));
+            if (borrow != null && borrow.getString("membershipId") != null) {
+                writes.add(borrowsVersionBump(borrow.getString("membershipId")));
+            }
+            await(store().commit(writes));
+            logger.info("Borrow record deleted successfully: {}", borrowId);
         } catch (Exception e) {
-            System.err.println("Error deleting borrow record: " + e.getMessage());
+            logger.error("Error deleting borrow record: {}", e.getMessage());
         }
     }
     public static Borrows getBorrowByMembershipAndBook(String membershipId, String bookTitle, String bookAuthor) {
         try {
             // Step 1: Fetch the Book ID from the Books collection
-            ApiFuture<QuerySnapshot> bookQuery = getFirestore().collection("books")
+            List<StoredDocument> bookDocuments = await(store().query(Query.of("books")
                     .whereEqualTo("name", bookTitle)
-                    .whereEqualTo("author", bookAuthor)
-                    .get();
-
-            List<QueryDocumentSnapshot> bookDocuments = bookQuery.get().getDocuments();
+                    .whereEqualTo("author", bookAuthor)));
             if (bookDocuments.isEmpty()) {
-                System.err.println("Book not found for title: " + bookTitle + ", author: " + bookAuthor);
+                logger.warn("Book not found for title: {}, author: {}", bookTitle, bookAuthor);
                 return null;
             }
 
-            String bookId = bookDocuments.get(0).getId(); // Assuming book ID is the document ID
+            String bookId = bookDocuments.get(0).id(); // Assuming book ID is the document ID
 
             // Step 2: Fetch the Borrow record using membershipId and bookId
-            ApiFuture<QuerySnapshot> borrowQuery = getFirestore().collection("borrows")
+            List<StoredDocument> borrowDocuments = await(store().query(Query.of("borrows")
                     .whereEqualTo("membershipId", membershipId)
                     .whereEqualTo("bookId", bookId)
-                    .whereEqualTo("returnDate", null) // Ensure the book hasn't been returned yet
-                    .get();
-
-            List<QueryDocumentSnapshot> borrowDocuments = borrowQuery.get().getDocuments();
+                    .whereEqualTo("returnDate", null))); // Ensure the book hasn't been returned yet
             if (borrowDocuments.isEmpty()) {
-                System.err.println("No active borrow found for membershipId: " + membershipId + ", bookId: " + bookId);
+                logger.warn("No active borrow found for membershipId: {}, bookId: {}", membershipId, bookId);
                 return null;
             }
 
             return borrowDocuments.get(0).toObject(Borrows.class);
         } catch (Exception e) {
-            System.err.println("Error fetching borrow record: " + e.getMessage());
+            logger.error("Error fetching borrow record: {}", e.getMessage());
             return null;
         }
     }
 
+    // Keeps the active borrow index in step with every instance's borrow writes
+    public static void listenToBorrowChanges(Consumer<ChangeSet> onChanges) {
+        store().listen("borrows", onChanges);
+    }
+
+    // One page of open borrows in document ID order, after the given ID (null for the first page)
+    public static CompletableFuture<List<StoredDocument>> getOpenBorrowsPageAsync(String startAfter, int pageSize) {
+        return store().query(Query.of("borrows")
+                .whereEqualTo("returnDate", null)
+                .startAfter(startAfter)
+                .limit(pageSize));
+    }
+
+    // Open borrow of the member for any of the given copies, or null. Used when the catalog
+    // index already knows every copy of the title, so no books query is needed.
+    public static Borrows getActiveBorrowForCopies(String membershipId, Set<String> bookIds) {
+        if (bookIds.isEmpty()) {
+            return null;
+        }
+        try {
+            List<StoredDocument> borrowDocuments = await(store().query(Query.of("borrows")
+                    .whereEqualTo("membershipId", membershipId)
+                    .whereEqualTo("returnDate", null)));
+            for (StoredDocument document : borrowDocuments) {
+                if (bookIds.contains(document.getString("bookId"))) {
+                    return document.toObject(Borrows.class);
+                }
+            }
+            return null;
+        } catch (Exception e) {
+            logger.error("Error fetching borrow record: {}", e.getMessage());
+            return null;
+        }
+    }
+
+    // ----------------------- Loans -----------------------
+
+    /**
+     * Marks a copy as loaned and creates its borrow record in one atomic commit (one round trip,
+     * all or nothing). The book update only applies if the document still has the update time it
+     * was read at, so a copy taken by another counter or backend instance in the meantime makes
+     * the whole commit fail instead of double-loaning it.
+     *
+     * @param bookVersion update time the copy was read at, or null to read it here first
+     * @return false if the copy changed since {@code bookVersion} or the borrow ID already exists
+     */
+    public static boolean commitLoan(String bookId, Timestamp bookVersion, Borrows borrow, CatalogIndex.TitleKey title) {
+        try {
+            if (bookVersion == null) {
+                // No read version to condition on: read the copy now and condition on that
+                StoredDocument book = await(store().get("books", bookId));
+                if (book == null || !Boolean.TRUE.equals(book.getBoolean("available"))) {
+                    return false;
+                }
+                bookVersion = book.updateTime();
+            }
+
+            List<Write> writes = new ArrayList<>();
+            writes.add(Write.update("books", bookId, Map.of("available", false), bookVersion));
+            writes.add(Write.create("borrows", borrow.getId(), borrow));
+            writes.add(borrowsVersionBump(borrow.getMembershipId()));
+            writes.addAll(new StatsDelta().loan(title.name(), title.author(), borrow.getMembershipId()).writes());
+            await(store().commit(writes));
+            return true;
+        } catch (WriteConflictException e) {
+            return false;
+        } catch (RuntimeException e) {
+            throw new RuntimeException("Error committing loan for book " + bookId + ": " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Closes a borrow and, in the same commit, either marks its copy available again or loans it
+     * to {@code handOff}, so a returned copy is never seen as available while someone waits for it.
+     * The borrow update is conditioned on the borrow being unchanged since it was read here, so
+     * concurrent returns of the same borrow cannot both hand the copy off.
+     *
+     * The waitlist reservation the copy is handed to is deleted in the same commit, conditioned on
+     * it being unchanged, so two instances cannot both hand a copy to it.
+     *
+     * @param handOff borrow of the same copy for the next member, or null to release the copy
+     * @param reservation the waitlist reservation {@code handOff} serves, or null
+     * @return false if the borrow is missing, already returned or was changed concurrently, or if
+     *         the reservation is gone
+     */
+    public static boolean commitReturn(String borrowId, String returnDate, String bookId, Borrows handOff,
+                                       CatalogIndex.TitleKey title, LoanWaitlist.Reservation reservation) {
+        try {
+            StoredDocument borrow = await(store().get("borrows", borrowId));
+            if (borrow == null || borrow.getString("returnDate") != null) {
+                return false;
+            }
+            Timestamp reservationVersion = null;
+            if (reservation != null) {
+                reservationVersion = reservation.version();
+                if (reservationVersion == null) {
+                    // Added locally and not seen by the listener yet: condition on the stored version
+                    StoredDocument stored = await(store().get(WAITLIST, reservation.id()));
+                    if (stored == null) {
+                        return false;
+                    }
+                    reservationVersion = stored.updateTime();
+                }
+            }
+
+            List<Write> writes = new ArrayList<>();
+            writes.add(Write.update("borrows", borrowId, Map.of("returnDate", returnDate), borrow.updateTime()));
+            writes.add(borrowsVersionBump(borrow.getString("membershipId")));
+            StatsDelta stats = new StatsDelta().returned(title.name(), title.author(),
+                    loanDays(borrow.getString("borrowDate"), returnDate));
+            if (reservation != null) {
+                writes.add(Write.delete(WAITLIST, reservation.id(), reservationVersion));
+            }
+            if (handOff != null) {
+                writes.add(Write.create("borrows", handOff.getId(), handOff));
+                writes.add(borrowsVersionBump(handOff.getMembershipId()));
+                stats.loan(title.name(), title.author(), handOff.getMembershipId());
+            } else if (bookId != null) {
+                writes.add(Write.update("books", bookId, Map.of("available", true)));
+            }
+            writes.addAll(stats.writes());
+            await(store().commit(writes));
+            return true;
+        } catch (WriteConflictException e) {
+            return false;
+        } catch (RuntimeException e) {
+            throw new RuntimeException("Error committing return of borrow " + borrowId + ": " + e.getMessage(), e);
+        }
+    }
+
+    static long loanDays(String borrowDate, String returnDate) {
+        try {
+            return Math.max(0, ChronoUnit.DAYS.between(LocalDate.parse(borrowDate), LocalDate.parse(returnDate)));
+        } catch (RuntimeException e) {
+            return 0; // Borrow without a readable borrow date
+        }
+    }
+
+    // ----------------------- Waitlist -----------------------
+
+    // Keeps every instance's waitlist in step with the reservations made or handed off anywhere
+    public static void listenToWaitlistChanges(Consumer<ChangeSet> onChanges) {
+        store().listen(WAITLIST, onChanges);
+    }
+
+    public static List<StoredDocument> getWaitlist(String bookTitle, String bookAuthor) {
+        return await(store().query(Query.of(WAITLIST)
+                .whereEqualTo("bookTitle", bookTitle)
+                .whereEqualTo("bookAuthor", bookAuthor)));
+    }
+
+    public static StoredDocument getWaitlistReservation(String reservationId) {
+        return await(store().get(WAITLIST, reservationId));
+    }
+
+    public static void addWaitlistReservation(String reservationId, Map<String, Object> reservation) {
+        await(store().commit(List.of(Write.create(WAITLIST, reservationId, reservation))));
+    }
+
+    public static void deleteWaitlistReservation(String reservationId) {
+        await(store().commit(List.of(Write.delete(WAITLIST, reservationId))));
+    }
+
+    // ----------------------- Statistics -----------------------
+
+    private static StatsDelta bookStats(List<Book> books, int sign) {
+        StatsDelta stats = new StatsDelta().total("books", sign * (long) books.size());
+        for (Book book : books) {
+            if (book.getName() != null && book.getAuthor() != null) {
+                stats.title(book.getName(), book.getAuthor(), "books", sign);
+            }
+        }
+        return stats;
+    }
+
+    // Every shard of the statistics aggregates, in one query
+    public static CompletableFuture<List<StoredDocument>> getStatsShardsAsync() {
+        return store().query(Query.of(StatsDelta.COLLECTION));
+    }
+
+
+    // ----------------------- Paging -----------------------
+
+    // One document past the page is read to tell whether another page follows
+    private static <T> CompletableFuture<Page<T>> page(Query query, String cursor, int pageSize,
+                                                       Function<StoredDocument, T> mapper) {
+        return store().query(query.startAfter(cursor).limit(pageSize + 1)).thenApply(documents -> {
+            boolean hasMore = documents.size() > pageSize;
+            List<StoredDocument> pageDocuments = hasMore ? documents.subList(0, pageSize) : documents;
+            List<T> items = new ArrayList<>(pageDocuments.size());
+            for (StoredDocument document : pageDocuments) {
+                items.add(mapper.apply(document));
+            }
+            return new Page<>(items, hasMore ? pageDocuments.get(pageSize - 1).id() : null);
+        });
+    }
+
+    /**
+     * Hands every document matching the query to {@code consumer}, reading {@code pageSize} at a
+     * time in document ID order; the next page is fetched while the current one is consumed, so at
+     * most two pages are held. Runs on the calling thread.
+     *
+     * @return how many documents were scanned
+     */
+    public static long scan(Query query, int pageSize, Consumer<StoredDocument> consumer) {
+        long scanned = 0;
+        CompletableFuture<List<StoredDocument>> nextPage = store().query(query.limit(pageSize));
+        while (true) {
+            List<StoredDocument> page = await(nextPage);
+            if (page.size() == pageSize) {
+                nextPage = store().query(query.startAfter(page.get(page.size() - 1).id()).limit(pageSize));
+            }
+            page.forEach(consumer);
+            scanned += page.size();
+            if (page.size() < pageSize) {
+                return scanned;
+            }
+        }
+    }
+
+    // ----------------------- Sequences -----------------------
+
+    /**
+     * Atomically reserves {@code blockSize} consecutive values of a numeric sequence stored in
+     * {@code sequences/{name}} and returns the first one. If the sequence document does not
+     * exist yet it is created starting at {@code initialValue}, which is only evaluated then.
+     */
+    public static long reserveSequenceBlock(String name, int blockSize, LongSupplier initialValue) {
+        for (int attempt = 1; ; attempt++) {
+            try {
+                StoredDocument sequence = await(store().get("sequences", name));
+                Long next = (sequence != null) ? sequence.getLong("next") : null;
+                long start = (next != null) ? next : initialValue.getAsLong();
+                Map<String, Object> reserved = Map.of("next", start + blockSize);
+                // Conditional on what we read, so two instances never get the same block
+                Write write = (sequence == null)
+                        ? Write.create("sequences", name, reserved)
+                        : Write.update("sequences", name, reserved, sequence.updateTime());
+                await(store().commit(List.of(write)));
+                return start;
+            } catch (WriteConflictException e) {
+                if (attempt == MAX_SEQUENCE_ATTEMPTS) {
+                    throw new RuntimeException("Failed to reserve IDs from sequence " + name + " after "
+                            + attempt + " attempts.", e);
+                }
+            } catch (RuntimeException e) {
+                throw new RuntimeException("Failed to reserve IDs from sequence " + name + ": " + e.getMessage(), e);
+            }
+        }
+    }
+
     // ----------------------- General -----------------------
 
     public static void updateField(String collectionName, String documentId, String fieldName, Object value) {
-        Map<String, Object> updates = new HashMap<>();
-        updates.put(fieldName, value);
-
         try {
-            getFirestore().collection(collectionName).document(documentId).update(updates).get();
-            System.out.println(collectionName + " field '" + fieldName + "' updated successfully for ID: " + documentId);
+            await(updateFieldAsync(collectionName, documentId, fieldName, value));
+            logger.info("{} field '{}' updated successfully for ID: {}", collectionName, fieldName, documentId);
         } catch (Exception e) {
-            System.err.println("Error updating " + collectionName + " field '" + fieldName + "': " + e.getMessage());
+            logger.error("Error updating {} field '{}': {}", collectionName, fieldName, e.getMessage());
         }
     }
 
     public boolean documentExists(String collectionName, String documentId) {
         try {
-            DocumentSnapshot snapshot = getFirestore()
-                    .collection(collectionName)
-                    .document(documentId)
-                    .get()
-                    .get();
-            return snapshot.exists();
+            return await(documentExistsAsync(collectionName, documentId));
         } catch (Exception e) {
-            System.err.println("Error checking existence of document in " + collectionName + " with ID: " + documentId);
+            logger.error("Error checking existence of document in {} with ID: {}", collectionName, documentId);
             return false;
         }
     }
 
     public Map<String, Object> getDocumentById(String collectionName, String documentId) {
         try {
-            DocumentSnapshot snapshot = getFirestore()
-                    .collection(collectionName)
-                    .document(documentId)
-                    .get()
-                    .get();
-            return snapshot.exists() ? snapshot.getData() : null;
+            return await(getDocumentByIdAsync(collectionName, documentId));
         } catch (Exception e) {
-            System.err.println("Error retrieving document in " + collectionName + " with ID: " + documentId);
+            logger.error("Error retrieving document in {} with ID: {}", collectionName, documentId);
             return null;
         }
     }
+
+    // Raw document with its update time, for callers that write back with a precondition
+    public static CompletableFuture<StoredDocument> getStoredDocumentAsync(String collectionName, String documentId) {
+        return store().get(collectionName, documentId);
+    }
+
+    // Applies all writes in one commit or none; throws WriteConflictException if a precondition failed
+    public static void commitAtomically(List<Write> writes) {
+        await(store().commit(writes));
+    }
+
+    // Writes a plain map as the whole document
+    public static void setDocument(String collectionName, String documentId, Map<String, Object> data) {
+        await(store().commit(List.of(Write.set(collectionName, documentId, data))));
+    }
+
     public List<Map<String, Object>> getAllBooksGroupedByAuthorAndName() {
-        // Fetch all books from Firestore
-        List<Book> books = getAllBooksFromFirestore();
-
-        // Group books by name and author, and calculate total available pieces
-        return books.stream()
-                .filter(Book::isAvailable) // Only include available books
-                .collect(Collectors.groupingBy(
-                        book -> Map.of("name", (Object) book.getName(), "author", (Object) book.getAuthor()), // Cast to Object
-                        Collectors.counting() // Count available books in each group
+        // Count available pieces per title while paging through the books, so only the counts are held
+        Map<CatalogIndex.TitleKey, Long> availableByTitle = new LinkedHashMap<>();
+        try {
+            scan(Query.of("books"), SCAN_PAGE_SIZE, document -> {
+                Book book = document.toObject(Book.class);
+                if (book.isAvailable()) {
+                    availableByTitle.merge(new CatalogIndex.TitleKey(book.getName(), book.getAuthor()), 1L, Long::sum);
+                }
+            });
+        } catch (Exception e) {
+            logger.error("Error retrieving books: {}", e.getMessage());
+        }
+        return availableByTitle.entrySet().stream()
+                .map(entry -> Map.<String, Object>of(
+                        "name", entry.getKey().name(),
+                        "author", entry.getKey().author(),
+                        "totalPieces", entry.getValue()
                 ))
-                .entrySet()
-                .stream()
-                .map(entry -> {
-                    Map<String, Object> key = entry.getKey();
-                    long totalPieces = entry.getValue();
-                    return Map.of(
-                            "name", key.get("name"),
-                            "author", key.get("author"),
-                            "totalPieces", totalPieces
-                    );
-                })
                 .toList();
     }
+
+    // Commits writes in chunks of the largest batch the store accepts, all chunks in parallel
+    private static void commitInBatches(List<Write> writes) {
+        List<CompletableFuture<Void>> commits = new ArrayList<>();
+        for (int from = 0; from < writes.size(); from += MAX_BATCH_WRITES) {
+            commits.add(store().commit(writes.subList(from, Math.min(from + MAX_BATCH_WRITES, writes.size()))));
+        }
+        await(CompletableFuture.allOf(commits.toArray(new CompletableFuture<?>[0])));
+    }
+
+    // ----------------------- Async -----------------------
+    // Non-blocking variants of the lookups and writes above. They never block on the store
+    // and never swallow errors: a failed call completes the returned future exceptionally,
+    // so callers can start independent reads together and join once.
+
+    public static CompletableFuture<String> getMembershipIdByIdAsync(String citizenId) {
+        return store().query(Query.of("memberships").whereEqualTo("citizenId", citizenId))
+                .thenApply(documents -> documents.isEmpty() ? null : documents.get(0).id());
+    }
+
+    public static CompletableFuture<Book> getBookByTitleAndAuthorAsync(String title, String author) {
+        return store().query(Query.of("books")
+                        .whereEqualTo("name", title)
+                        .whereEqualTo("author", author)
+                        .whereEqualTo("available", true))
+                .thenApply(documents -> documents.isEmpty() ? null : documents.get(0).toObject(Book.class));
+    }
+
+    public static CompletableFuture<Borrows> getBorrowByMembershipAndBookAsync(String membershipId, String bookTitle, String bookAuthor) {
+        return store().query(Query.of("books")
+                        .whereEqualTo("name", bookTitle)
+                        .whereEqualTo("author", bookAuthor))
+                .thenCompose(bookDocuments -> {
+                    if (bookDocuments.isEmpty()) {
+                        return CompletableFuture.completedFuture(null);
+                    }
+                    String bookId = bookDocuments.get(0).id();
+                    return store().query(Query.of("borrows")
+                                    .whereEqualTo("membershipId", membershipId)
+                                    .whereEqualTo("bookId", bookId)
+                                    .whereEqualTo("returnDate", null))
+                            .thenApply(borrowDocuments -> borrowDocuments.isEmpty()
+                                    ? null
+                                    : borrowDocuments.get(0).toObject(Borrows.class));
+                });
+    }
+
+    public CompletableFuture<Borrows> getBorrowByIdAsync(String borrowId) {
+        return store().get("borrows", borrowId)
+                .thenApply(document -> document != null ? document.toObject(Borrows.class) : null);
+    }
+
+    /**
+     * Number of writes to the member's borrows so far, committed together with them; a reader that
+     * gets this before listing the borrows never sees a version newer than the listing.
+     */
+    public CompletableFuture<Long> getBorrowsVersionAsync(String membershipId) {
+        return store().get(MEMBER_VERSIONS, membershipId).thenApply(document -> versionOf(document, "borrows"));
+    }
+
+    private static Write borrowsVersionBump(String membershipId) {
+        return Write.increment(MEMBER_VERSIONS, membershipId, Map.of("borrows", 1L));
+    }
+
+    private static long versionOf(StoredDocument document, String field) {
+        Long version = (document != null) ? document.getLong(field) : null;
+        return version != null ? version : 0;
+    }
+
+    // Page of the member's borrows, oldest borrow ID first
+    public CompletableFuture<Page<Borrows>> getBorrowsPageByMembershipIdAsync(String membershipId, String cursor, int pageSize) {
+        return page(Query.of("borrows").whereEqualTo("membershipId", membershipId), cursor, pageSize,
+                document -> document.toObject(Borrows.class));
+    }
+
+    // Every borrow of the member, read page by page; the unpaged form of the listing
+    public List<Borrows> getBorrowsByMembershipId(String membershipId) {
+        List<Borrows> borrows = new ArrayList<>();
+        scan(Query.of("borrows").whereEqualTo("membershipId", membershipId), SCAN_PAGE_SIZE,
+                document -> borrows.add(document.toObject(Borrows.class)));
+        return borrows;
+    }
+
+    public CompletableFuture<Fees> getFeeByBorrowIdAsync(String borrowId) {
+        return store().query(Query.of("fees").whereEqualTo("borrowId", borrowId))
+                .thenApply(documents -> documents.isEmpty() ? null : toFee(documents.get(0)));
+    }
+
+    public CompletableFuture<Fees> getFeeByIdAsync(String feeId) {
+        return store().get("fees", feeId) // Fees are stored under their own ID
+                .thenApply(document -> document != null ? toFee(document) : null);
+    }
+
+    public CompletableFuture<Page<Fees>> getFeesPageByMembershipIdAsync(String membershipId, String cursor, int pageSize) {
+        return page(Query.of("fees").whereEqualTo("membershipId", membershipId), cursor, pageSize, FirebaseService::toFee);
+    }
+
+    public List<Fees> getFeesByMembershipId(String membershipId) {
+        List<Fees> fees = new ArrayList<>();
+        scan(Query.of("fees").whereEqualTo("membershipId", membershipId), SCAN_PAGE_SIZE,
+                document -> fees.add(toFee(document)));
+        return fees;
+    }
+
+    // One page of fees in document ID order, after the given ID (null for the first page)
+    public static CompletableFuture<List<StoredDocument>> getFeesPageAsync(String startAfter, int pageSize) {
+        return store().query(Query.of("fees").startAfter(startAfter).limit(pageSize));
+    }
+
+    // Single document read; a membership that was never charged has a zero balance
+    public CompletableFuture<FeeBalance> getFeeBalanceAsync(String membershipId) {
+        return store().get(FeeLedgerBatch.BALANCES, membershipId)
+                .thenApply(document -> new FeeBalance(membershipId,
+                        document != null && document.getLong("outstandingCents") != null ? document.getLong("outstandingCents") : 0,
+                        document != null && document.getLong("lifetimeCents") != null ? document.getLong("lifetimeCents") : 0));
+    }
+
+    // Number of fee ledger commits that touched the member's fees, kept in their balance document
+    public CompletableFuture<Long> getFeesVersionAsync(String membershipId) {
+        return store().get(FeeLedgerBatch.BALANCES, membershipId)
+                .thenApply(document -> versionOf(document, FeeLedgerBatch.VERSION));
+    }
+
+    // Fees written before amounts were kept in cents have a dollar string "amount" and "Yes"/"No" "paid"
+    static boolean isLegacyFee(StoredDocument document) {
+        return document.get("amountCents") == null;
+    }
+
+    public static Fees toFee(StoredDocument document) {
+        if (!isLegacyFee(document)) {
+            Fees fee = document.toObject(Fees.class);
+            // Fees paid before paidCents was kept, or marked paid by hand, are paid in full
+            if (fee.isPaid() && fee.getPaidCents() < fee.getAmountCents()) {
+                fee.setPaidCents(fee.getAmountCents());
+            }
+            return fee;
+        }
+        long amountCents = 0;
+        String amount = document.getString("amount");
+        if (amount != null) {
+            try {
+                amountCents = new BigDecimal(amount.trim()).movePointRight(2).setScale(0, RoundingMode.HALF_UP).longValueExact();
+            } catch (ArithmeticException | NumberFormatException e) {
+                logger.warn("Fee {} has an unreadable amount '{}'; treating it as 0.", document.id(), amount);
+            }
+        }
+        return new Fees(document.id(), document.getString("membershipId"), amountCents,
+                document.getString("borrowId"), "Yes".equalsIgnoreCase(document.getString("paid")));
+    }
+
+    public CompletableFuture<Boolean> documentExistsAsync(String collectionName, String documentId) {
+        return store().get(collectionName, documentId)
+                .thenApply(document -> document != null);
+    }
+
+    public CompletableFuture<Map<String, Object>> getDocumentByIdAsync(String collectionName, String documentId) {
+        return store().get(collectionName, documentId)
+                .thenApply(document -> document != null ? new HashMap<>(document.data()) : null);
+    }
+
+    public CompletableFuture<Void> addBorrowAsync(Borrows borrow) {
+        return store().commit(List.of(
+                Write.set("borrows", borrow.getId(), borrow),
+                borrowsVersionBump(borrow.getMembershipId())));
+    }
+
+    // A borrow moved to another member changes both members' listings
+    public CompletableFuture<Void> updateBorrowAsync(String borrowId, Borrows updatedBorrow) {
+        return store().get("borrows", borrowId).thenCompose(previous -> {
+            List<Write> writes = new ArrayList<>();
+            writes.add(Write.set("borrows", borrowId, updatedBorrow));
+            writes.add(borrowsVersionBump(updatedBorrow.getMembershipId()));
+            String previousMembershipId = (previous != null) ? previous.getString("membershipId") : null;
+            if (previousMembershipId != null && !previousMembershipId.equals(updatedBorrow.getMembershipId())) {
+                writes.add(borrowsVersionBump(previousMembershipId));
+            }
+            return store().commit(writes);
+        });
+    }
+
+    // Writes up to getMaxBooksPerBatch() books in one commit, with their statistics; all or none are stored
+    public static CompletableFuture<Void> addBooksAsync(List<Book> books) {
+        if (books.size() > getMaxBooksPerBatch()) {
+            throw new IllegalArgumentException("At most " + getMaxBooksPerBatch() + " books per batch.");
+        }
+        List<Write> writes = new ArrayList<>(books.size() + StatsDelta.MAX_WRITES);
+        for (Book book : books) {
+            writes.add(Write.create("books", book.getId(), book));
+        }
+        writes.addAll(bookStats(books, 1).writes());
+        return store().commit(writes);
+    }
+
+    public static int getMaxBatchWrites() {
+        return MAX_BATCH_WRITES;
+    }
+
+    // Batched writes leave room for the statistics increments
+    public static int getMaxBooksPerBatch() {
+        return MAX_BATCH_WRITES - StatsDelta.MAX_WRITES;
+    }
+
+    public static CompletableFuture<Void> updateFieldAsync(String collectionName, String documentId, String fieldName, Object value) {
+        Map<String, Object> updates = new HashMap<>();
+        updates.put(fieldName, value);
+        return store().commit(List.of(Write.update(collectionName, documentId, updates)));
+    }
+
+    /**
+     * Waits for an async result on the calling thread, rethrowing the original failure
+     * (instead of the CompletionException wrapper) so existing error handling keeps working.
+     */
+    public static <T> T await(CompletableFuture<T> future) {
+        try {
+            return future.join();
+        } catch (CompletionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException runtimeException) {
+                throw runtimeException;
+            }
+            throw new RuntimeException(cause.getMessage(), cause);
+        }
+    }
 }
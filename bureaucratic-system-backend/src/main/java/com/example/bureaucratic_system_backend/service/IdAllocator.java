@@ -0,0 +1,125 @@
+package com.example.bureaucratic_system_backend.service;
+
+import com.example.bureaucratic_system_backend.store.Query;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Hands out document IDs without scanning collections.
+ *
+ * Book IDs stay numeric: blocks of {@code id.allocator.block-size} values are reserved from the
+ * {@code sequences/books} document in one transaction and then handed out from memory, so
+ * instances never overlap and only one Firestore round trip is paid per block. Values left in a
+ * block at shutdown are skipped, not reused.
+ *
+ * Membership and borrow IDs are time-ordered: a monotonic (millis, sequence) counter followed by
+ * this instance's node ID, both in fixed-width base 36 so the IDs also sort by creation time.
+ */
+@Component
+public class IdAllocator {
+
+    private static final Logger logger = LoggerFactory.getLogger(IdAllocator.class);
+
+    private static final int SEQUENCE_BITS = 12; // Up to 4096 IDs per millisecond before borrowing the next one
+    private static final int TIME_WIDTH = 11;    // Base 36 digits of (millis << 12), enough until the 25th century
+    private static final int NODE_WIDTH = 2;
+    private static final int MAX_NODE_ID = 36 * 36 - 1;
+
+    private final FirebaseService firebaseService;
+    private final int blockSize;
+    private final String nodeSuffix;
+
+    private final ReentrantLock bookBlockLock = new ReentrantLock();
+    private long nextBookId = 0;
+    private long bookBlockEnd = 0; // Exclusive; nextBookId == bookBlockEnd means a new block is needed
+
+    private final AtomicLong lastTimeOrdered = new AtomicLong();
+
+    public IdAllocator(FirebaseService firebaseService,
+                       @Value("${id.allocator.block-size:100}") int blockSize,
+                       @Value("${id.allocator.node-id:-1}") int nodeId) {
+        if (blockSize < 1) {
+            throw new IllegalArgumentException("id.allocator.block-size must be positive.");
+        }
+        if (nodeId > MAX_NODE_ID) {
+            throw new IllegalArgumentException("id.allocator.node-id must be at most " + MAX_NODE_ID + ".");
+        }
+        this.firebaseService = firebaseService;
+        this.blockSize = blockSize;
+        if (nodeId < 0) {
+            // Unset: pick one at random. Set it explicitly when running several instances.
+            nodeId = ThreadLocalRandom.current().nextInt(MAX_NODE_ID + 1);
+            logger.info("No id.allocator.node-id configured, using random node ID {}.", nodeId);
+        }
+        this.nodeSuffix = pad(Long.toString(nodeId, 36), NODE_WIDTH);
+    }
+
+    // ----------------------- Numeric IDs -----------------------
+
+    public String nextBookId() {
+        bookBlockLock.lock();
+        try {
+            if (nextBookId == bookBlockEnd) {
+                nextBookId = FirebaseService.reserveSequenceBlock("books", blockSize, this::firstUnusedBookId);
+                bookBlockEnd = nextBookId + blockSize;
+                logger.debug("Reserved book IDs {} to {}.", nextBookId, bookBlockEnd - 1);
+            }
+            return String.valueOf(nextBookId++);
+        } finally {
+            bookBlockLock.unlock();
+        }
+    }
+
+    /**
+     * Reserves {@code count} consecutive book IDs for a bulk insert in one transaction and
+     * returns the first. The range is taken straight from the sequence, not from the current block.
+     */
+    public long reserveBookIds(int count) {
+        return FirebaseService.reserveSequenceBlock("books", count, this::firstUnusedBookId);
+    }
+
+    // Seeds the sequence the first time it is used; the only place that still reads every book ID,
+    // a page at a time
+    private long firstUnusedBookId() {
+        long[] maxId = {0};
+        FirebaseService.scan(Query.of("books"), FirebaseService.SCAN_PAGE_SIZE, document -> {
+            try {
+                maxId[0] = Math.max(maxId[0], Long.parseLong(document.id()));
+            } catch (NumberFormatException e) {
+                logger.warn("Non-numeric ID found: {}. Ignoring it for ID generation.", document.id());
+            }
+        });
+        logger.info("Book ID sequence seeded at {}.", maxId[0] + 1);
+        return maxId[0] + 1;
+    }
+
+    // ----------------------- Time-ordered IDs -----------------------
+
+    public String nextMembershipId() {
+        return "M" + nextTimeOrdered();
+    }
+
+    public String nextBorrowId() {
+        return "B" + nextTimeOrdered();
+    }
+
+    private String nextTimeOrdered() {
+        long now = System.currentTimeMillis() << SEQUENCE_BITS;
+        // Strictly increasing even if the clock stalls or steps back
+        long value = lastTimeOrdered.accumulateAndGet(now, (last, candidate) -> Math.max(last + 1, candidate));
+        return pad(Long.toString(value, 36), TIME_WIDTH) + nodeSuffix;
+    }
+
+    private static String pad(String digits, int width) {
+        if (digits.length() >= width) {
+            return digits;
+        }
+        return "0".repeat(width - digits.length()) + digits;
+    }
+}
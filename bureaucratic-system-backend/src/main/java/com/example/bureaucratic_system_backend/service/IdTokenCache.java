@@ -0,0 +1,135 @@
+package com.example.bureaucratic_system_backend.service;
+
+import com.google.firebase.auth.FirebaseAuth;
+import com.google.firebase.auth.FirebaseAuthException;
+import com.google.firebase.auth.FirebaseToken;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Base64;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Bounded LRU cache of verified Firebase ID tokens, keyed by the SHA-256 of the token so raw
+ * tokens are never kept in memory.
+ *
+ * A token's claims are reused until its {@code exp}, so repeated requests with the same token
+ * (an admin doing bulk edits) pay for signature verification only once. Verification never
+ * checked revocation, so this returns exactly what {@code verifyIdToken} would have.
+ *
+ * The Admin SDK fetches Google's signing keys lazily, on the first verification after its cached
+ * keys expire. A background task re-verifies the most recent token periodically so that fetch
+ * usually happens off the request path.
+ */
+@Component
+public class IdTokenCache {
+
+    private static final Logger logger = LoggerFactory.getLogger(IdTokenCache.class);
+
+    private record Entry(Map<String, Object> claims, long expiresAtMillis) {
+    }
+
+    private final Map<String, Entry> verified;
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+
+    // Most recent token that verified; used to keep the SDK's signing keys warm
+    private volatile String lastVerifiedToken;
+
+    public IdTokenCache(@Value("${auth.token-cache.max-entries:10000}") int maxEntries,
+                        @Value("${auth.token-cache.key-refresh-minutes:15}") long keyRefreshMinutes) {
+        this.verified = Collections.synchronizedMap(new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest) {
+                return size() > maxEntries;
+            }
+        });
+        if (keyRefreshMinutes > 0) {
+            ScheduledExecutorService keyRefresher = Executors.newSingleThreadScheduledExecutor(runnable -> {
+                Thread thread = new Thread(runnable, "id-token-key-refresh");
+                thread.setDaemon(true);
+                return thread;
+            });
+            keyRefresher.scheduleWithFixedDelay(this::refreshSigningKeys, keyRefreshMinutes, keyRefreshMinutes, TimeUnit.MINUTES);
+        }
+    }
+
+    /**
+     * Returns the claims of a valid ID token, accepting an {@code Authorization} header value
+     * with or without the {@code Bearer } prefix.
+     *
+     * @throws FirebaseAuthException if the token is invalid or expired
+     */
+    public Map<String, Object> verify(String authorization) throws FirebaseAuthException {
+        String token = authorization.replace("Bearer ", "");
+        String key = hash(token);
+        long now = System.currentTimeMillis();
+
+        Entry entry = verified.get(key);
+        if (entry != null) {
+            if (entry.expiresAtMillis() > now) {
+                hits.incrementAndGet();
+                return entry.claims();
+            }
+            verified.remove(key);
+        }
+
+        misses.incrementAndGet();
+        FirebaseToken decodedToken = FirebaseAuth.getInstance().verifyIdToken(token);
+        Map<String, Object> claims = decodedToken.getClaims();
+        Object exp = claims.get("exp");
+        if (exp instanceof Number expSeconds) {
+            verified.put(key, new Entry(claims, TimeUnit.SECONDS.toMillis(expSeconds.longValue())));
+        }
+        lastVerifiedToken = token;
+        return claims;
+    }
+
+    // Role custom claim of a valid ID token, or null if it has none
+    public String getRole(String authorization) throws FirebaseAuthException {
+        return (String) verify(authorization).get("role");
+    }
+
+    public Map<String, Object> getStats() {
+        return Map.of(
+                "entries", verified.size(),
+                "hits", hits.get(),
+                "misses", misses.get()
+        );
+    }
+
+    private void refreshSigningKeys() {
+        String token = lastVerifiedToken;
+        if (token == null) {
+            return;
+        }
+        try {
+            FirebaseAuth.getInstance().verifyIdToken(token);
+        } catch (FirebaseAuthException e) {
+            // Most likely expired; wait for the next request to supply a fresh one
+            lastVerifiedToken = null;
+        } catch (RuntimeException e) {
+            logger.warn("Could not refresh Firebase signing keys: {}", e.getMessage());
+        }
+    }
+
+    private static String hash(String token) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(token.getBytes(StandardCharsets.UTF_8));
+            return Base64.getEncoder().encodeToString(digest);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not available.", e);
+        }
+    }
+}
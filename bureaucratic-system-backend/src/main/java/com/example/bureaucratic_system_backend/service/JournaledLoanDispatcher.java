@@ -0,0 +1,116 @@
+package com.example.bureaucratic_system_backend.service;
+
+import com.example.bureaucratic_system_backend.model.LoanRequest;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A dispatcher whose requests are recorded in a {@link LoanJournal} before they are queued and
+ * acknowledged once a counter is done with them, so they survive a restart.
+ *
+ * On construction the requests still pending in the journal are queued again, in their original
+ * order, before the dispatcher is handed to anyone. A request that was being served when the
+ * process died is served again: delivery is at least once, and a loan that did go through is
+ * found by the borrower check. Requests without a ticket are queued without being journaled.
+ */
+public class JournaledLoanDispatcher implements LoanDispatcher, AutoCloseable {
+
+    private static final Logger logger = LoggerFactory.getLogger(JournaledLoanDispatcher.class);
+
+    private final LoanDispatcher delegate;
+    private final LoanJournal journal;
+    private final List<LoanJournal.Entry> recovered;
+
+    public JournaledLoanDispatcher(LoanDispatcher delegate, LoanJournal journal) {
+        this.delegate = delegate;
+        this.journal = journal;
+        this.recovered = requeue(journal.recovered());
+    }
+
+    private List<LoanJournal.Entry> requeue(List<LoanJournal.Entry> entries) {
+        List<LoanJournal.Entry> requeued = new ArrayList<>(entries.size());
+        for (LoanJournal.Entry entry : entries) {
+            String queued = delegate.offer(entry.bookTitle(), entry.bookAuthor(), entry.citizenId(), entry.ticketId());
+            if (entry.ticketId().equals(queued)) {
+                requeued.add(entry);
+            } else {
+                journal.completed(entry.ticketId()); // Rejected as full, or a duplicate of an earlier entry
+                if (queued == null) {
+                    logger.warn("Loan queue full while replaying the journal; dropped request {} of citizen ID {}.",
+                            entry.ticketId(), entry.citizenId());
+                }
+            }
+        }
+        if (!entries.isEmpty()) {
+            logger.info("Requeued {} of {} loan requests recovered from the journal.", requeued.size(), entries.size());
+        }
+        return List.copyOf(requeued);
+    }
+
+    /**
+     * @throws IllegalStateException if the request cannot be journaled
+     */
+    @Override
+    public String offer(String bookTitle, String bookAuthor, String citizenId, String ticketId) {
+        if (ticketId == null) {
+            return delegate.offer(bookTitle, bookAuthor, citizenId, null);
+        }
+        // Journaled first: once a counter can take the request, its record must exist
+        journal.enqueued(new LoanJournal.Entry(ticketId, citizenId, bookTitle, bookAuthor, System.currentTimeMillis()));
+        String queued = delegate.offer(bookTitle, bookAuthor, citizenId, ticketId);
+        if (!ticketId.equals(queued)) {
+            journal.completed(ticketId);
+        }
+        return queued;
+    }
+
+    @Override
+    public boolean poll(LoanRequest target) {
+        return delegate.poll(target);
+    }
+
+    @Override
+    public void take(LoanRequest target) throws InterruptedException {
+        delegate.take(target);
+    }
+
+    @Override
+    public void complete(String ticketId) {
+        if (ticketId == null) {
+            return;
+        }
+        try {
+            journal.completed(ticketId);
+        } catch (IllegalStateException e) {
+            // Replayed after the restart; the counter must carry on either way
+            logger.warn("Could not acknowledge loan request {} in the journal: {}", ticketId, e.getMessage());
+        }
+    }
+
+    @Override
+    public List<LoanJournal.Entry> recovered() {
+        return recovered;
+    }
+
+    @Override
+    public int size() {
+        return delegate.size();
+    }
+
+    @Override
+    public int capacity() {
+        return delegate.capacity();
+    }
+
+    public int getJournaledRequests() {
+        return journal.pendingCount();
+    }
+
+    @Override
+    public void close() {
+        journal.close();
+    }
+}
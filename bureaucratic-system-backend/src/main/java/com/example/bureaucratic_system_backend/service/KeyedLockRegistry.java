@@ -0,0 +1,154 @@
+package com.example.bureaucratic_system_backend.service;
+
+import org.springframework.stereotype.Component;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Per-key mutual exclusion shared by the services, replacing their own lock maps.
+ *
+ * Entries are reference counted: one is created when the first thread locks a key and removed
+ * when the last holder or waiter unlocks it, so the registry only holds keys that are in use
+ * right now, however many distinct keys pass through it. Keys share one namespace, so callers
+ * prefix them by kind ({@code "book:"}, {@code "fee:"}, ...).
+ */
+@Component
+public class KeyedLockRegistry {
+
+    private static final class Entry {
+        final ReentrantLock lock = new ReentrantLock();
+        int references; // Holders plus waiters; only changed inside ConcurrentHashMap.compute
+    }
+
+    private final Map<String, Entry> entries = new ConcurrentHashMap<>();
+
+    private final AtomicLong acquisitions = new AtomicLong();
+    private final AtomicLong contendedAcquisitions = new AtomicLong();
+    private final AtomicLong waitNanos = new AtomicLong();
+
+    /**
+     * Returns a lock for the key. The returned object holds no state of its own, so it can be
+     * fetched once and used with the usual {@code lock(); try { ... } finally { unlock(); }}.
+     */
+    public Lock get(String key) {
+        return new KeyedLock(key);
+    }
+
+    // ----------------------- Contention -----------------------
+
+    public int activeKeys() {
+        return entries.size();
+    }
+
+    public Map<String, Object> getStats() {
+        long total = acquisitions.get();
+        long contended = contendedAcquisitions.get();
+        return Map.of(
+                "activeKeys", entries.size(),
+                "acquisitions", total,
+                "contendedAcquisitions", contended,
+                "contendedRatio", total == 0 ? 0.0 : (double) contended / total,
+                "totalWaitMillis", TimeUnit.NANOSECONDS.toMillis(waitNanos.get())
+        );
+    }
+
+    // ----------------------- Reference counting -----------------------
+
+    private Entry retain(String key) {
+        return entries.compute(key, (k, entry) -> {
+            Entry result = (entry != null) ? entry : new Entry();
+            result.references++;
+            return result;
+        });
+    }
+
+    private void release(String key) {
+        entries.computeIfPresent(key, (k, entry) -> --entry.references == 0 ? null : entry);
+    }
+
+    private Entry held(String key) {
+        Entry entry = entries.get(key);
+        if (entry == null || !entry.lock.isHeldByCurrentThread()) {
+            throw new IllegalMonitorStateException("Lock for key " + key + " is not held by this thread.");
+        }
+        return entry;
+    }
+
+    private final class KeyedLock implements Lock {
+        private final String key;
+
+        KeyedLock(String key) {
+            this.key = key;
+        }
+
+        @Override
+        public void lock() {
+            Entry entry = retain(key);
+            acquisitions.incrementAndGet();
+            if (!entry.lock.tryLock()) {
+                contendedAcquisitions.incrementAndGet();
+                long start = System.nanoTime();
+                entry.lock.lock();
+                waitNanos.addAndGet(System.nanoTime() - start);
+            }
+        }
+
+        @Override
+        public void lockInterruptibly() throws InterruptedException {
+            if (!tryLock(Long.MAX_VALUE, TimeUnit.NANOSECONDS)) {
+                throw new IllegalStateException("Lock for key " + key + " was not acquired.");
+            }
+        }
+
+        @Override
+        public boolean tryLock() {
+            Entry entry = retain(key);
+            if (entry.lock.tryLock()) {
+                acquisitions.incrementAndGet();
+                return true;
+            }
+            release(key);
+            return false;
+        }
+
+        @Override
+        public boolean tryLock(long time, TimeUnit unit) throws InterruptedException {
+            Entry entry = retain(key);
+            boolean acquired = false;
+            try {
+                acquisitions.incrementAndGet();
+                if (entry.lock.tryLock()) {
+                    acquired = true;
+                    return true;
+                }
+                contendedAcquisitions.incrementAndGet();
+                long start = System.nanoTime();
+                acquired = entry.lock.tryLock(time, unit);
+                waitNanos.addAndGet(System.nanoTime() - start);
+                return acquired;
+            } finally {
+                if (!acquired) {
+                    release(key);
+                }
+            }
+        }
+
+        @Override
+        public void unlock() {
+            held(key).lock.unlock();
+            release(key);
+        }
+
+        @Override
+        public Condition newCondition() {
+            // A condition would outlive the entry once it is released and removed
+            throw new UnsupportedOperationException("Keyed locks do not support conditions.");
+        }
+    }
+}
@@ -0,0 +1,209 @@
+package com.example.bureaucratic_system_backend.service;
+
+import com.example.bureaucratic_system_backend.model.LoanRequest;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.LockSupport;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Bounded multi-producer/multi-consumer ring buffer that hands loan requests from the
+ * HTTP threads to the counter threads.
+ *
+ * Slots are allocated once and reused: producers copy the request fields into a slot and
+ * consumers copy them out into a caller-owned {@link LoanRequest}, so dispatching a request
+ * allocates nothing. Each slot carries a sequence number that tells producers and consumers
+ * whether it is free or filled for their turn (the classic bounded MPMC queue design), so
+ * neither side needs a shared monitor.
+ */
+public class LoanDispatchQueue implements LoanDispatcher {
+
+    private static final Logger logger = LoggerFactory.getLogger(LoanDispatchQueue.class);
+
+    /**
+     * How an idle counter waits for the next request.
+     * BLOCKING sleeps on a condition and is woken by exactly one producer signal,
+     * SPINNING busy-waits (lowest latency, burns a core per idle counter),
+     * PARKING sleeps for short fixed intervals without any producer-side signalling.
+     */
+    public enum WaitStrategy {
+        BLOCKING, SPINNING, PARKING
+    }
+
+    private static final long PARK_NANOS = TimeUnit.MICROSECONDS.toNanos(50);
+
+    private static final class Slot {
+        volatile long sequence;
+        String bookTitle;
+        String bookAuthor;
+        String citizenId;
+        String ticketId;
+        long enqueuedAtNanos;
+
+        Slot(long sequence) {
+            this.sequence = sequence;
+        }
+    }
+
+    private final Slot[] slots;
+    private final int mask;
+    private final AtomicLong tail = new AtomicLong(); // next position to write
+    private final AtomicLong head = new AtomicLong(); // next position to read
+    private final WaitStrategy waitStrategy;
+
+    // Only used by the BLOCKING strategy
+    private final ReentrantLock waitLock = new ReentrantLock();
+    private final Condition notEmpty = waitLock.newCondition();
+    private final AtomicInteger waitingConsumers = new AtomicInteger();
+
+    public LoanDispatchQueue(int capacity, WaitStrategy waitStrategy) {
+        if (capacity < 2) {
+            throw new IllegalArgumentException("Loan dispatch capacity must be at least 2.");
+        }
+        int size = Integer.highestOneBit(capacity - 1) << 1; // Round up to a power of two
+        this.slots = new Slot[size];
+        for (int i = 0; i < size; i++) {
+            slots[i] = new Slot(i);
+        }
+        this.mask = size - 1;
+        this.waitStrategy = waitStrategy;
+        logger.info("Loan dispatch queue created with {} slots and {} wait strategy.", size, waitStrategy);
+    }
+
+    // ----------------------- Producers -----------------------
+
+    @Override
+    public String offer(String bookTitle, String bookAuthor, String citizenId, String ticketId) {
+        Slot slot;
+        long pos = tail.get();
+        while (true) {
+            slot = slots[(int) (pos & mask)];
+            long diff = slot.sequence - pos;
+            if (diff == 0) {
+                if (tail.compareAndSet(pos, pos + 1)) {
+                    break;
+                }
+                pos = tail.get();
+            } else if (diff < 0) {
+                return null; // The consumer one lap behind has not freed this slot yet
+            } else {
+                pos = tail.get();
+            }
+        }
+
+        slot.bookTitle = bookTitle;
+        slot.bookAuthor = bookAuthor;
+        slot.citizenId = citizenId;
+        slot.ticketId = ticketId;
+        slot.enqueuedAtNanos = System.nanoTime();
+        slot.sequence = pos + 1; // Volatile write publishes the fields above
+
+        if (waitStrategy == WaitStrategy.BLOCKING && waitingConsumers.get() > 0) {
+            waitLock.lock();
+            try {
+                notEmpty.signal(); // Wake a single counter, not all of them
+            } finally {
+                waitLock.unlock();
+            }
+        }
+        return ticketId;
+    }
+
+    // ----------------------- Consumers -----------------------
+
+    // Copies the oldest request into target
+    @Override
+    public boolean poll(LoanRequest target) {
+        Slot slot;
+        long pos = head.get();
+        while (true) {
+            slot = slots[(int) (pos & mask)];
+            long diff = slot.sequence - (pos + 1);
+            if (diff == 0) {
+                if (head.compareAndSet(pos, pos + 1)) {
+                    break;
+                }
+                pos = head.get();
+            } else if (diff < 0) {
+                return false; // Nothing published at this position yet
+            } else {
+                pos = head.get();
+            }
+        }
+
+        target.setBookTitle(slot.bookTitle);
+        target.setBookAuthor(slot.bookAuthor);
+        target.setCitizenId(slot.citizenId);
+        target.setTicketId(slot.ticketId);
+        target.setEnqueuedAtNanos(slot.enqueuedAtNanos);
+        slot.bookTitle = null;
+        slot.bookAuthor = null;
+        slot.citizenId = null;
+        slot.ticketId = null;
+        slot.sequence = pos + mask + 1; // Hand the slot to the producer of the next lap
+        return true;
+    }
+
+    @Override
+    public void take(LoanRequest target) throws InterruptedException {
+        if (poll(target)) {
+            return;
+        }
+        switch (waitStrategy) {
+            case BLOCKING -> takeBlocking(target);
+            case SPINNING -> {
+                while (!poll(target)) {
+                    if (Thread.interrupted()) {
+                        throw new InterruptedException();
+                    }
+                    Thread.onSpinWait();
+                }
+            }
+            case PARKING -> {
+                while (!poll(target)) {
+                    LockSupport.parkNanos(this, PARK_NANOS);
+                    if (Thread.interrupted()) {
+                        throw new InterruptedException();
+                    }
+                }
+            }
+        }
+    }
+
+    private void takeBlocking(LoanRequest target) throws InterruptedException {
+        // Registering as a waiter before re-checking the queue guarantees that a producer
+        // publishing concurrently either sees the waiter and signals, or is seen by the poll.
+        waitingConsumers.incrementAndGet();
+        waitLock.lock();
+        try {
+            while (!poll(target)) {
+                notEmpty.await();
+            }
+        } finally {
+            waitLock.unlock();
+            waitingConsumers.decrementAndGet();
+        }
+    }
+
+    // ----------------------- Introspection -----------------------
+
+    @Override
+    public int size() {
+        long depth = tail.get() - head.get();
+        return (int) Math.max(0, Math.min(depth, slots.length));
+    }
+
+    @Override
+    public int capacity() {
+        return slots.length;
+    }
+
+    public WaitStrategy getWaitStrategy() {
+        return waitStrategy;
+    }
+}
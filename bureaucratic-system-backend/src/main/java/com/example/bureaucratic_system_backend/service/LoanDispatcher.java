@@ -0,0 +1,46 @@
+package com.example.bureaucratic_system_backend.service;
+
+import com.example.bureaucratic_system_backend.model.LoanRequest;
+
+import java.util.List;
+
+/**
+ * Hands loan requests from the HTTP threads to the counter threads.
+ *
+ * {@link LoanDispatchQueue} serves requests strictly in arrival order; {@link FairShareLoanQueue}
+ * round-robins between citizens. Which one is used is set by {@code loan.dispatch.scheduling};
+ * either can be wrapped in a {@link JournaledLoanDispatcher} so queued requests survive a restart.
+ */
+public interface LoanDispatcher {
+
+    /**
+     * Queues a request under {@code ticketId} without blocking.
+     *
+     * @return the ticket the request is queued under, which is an earlier ticket if an identical
+     * request was already pending; null if the request was rejected because the queue is full
+     */
+    String offer(String bookTitle, String bookAuthor, String citizenId, String ticketId);
+
+    /**
+     * Copies the next request into {@code target} without blocking.
+     *
+     * @return false if there is no request waiting
+     */
+    boolean poll(LoanRequest target);
+
+    // Copies the next request into target, waiting while there is none
+    void take(LoanRequest target) throws InterruptedException;
+
+    // Called once a counter is done with a request it took, whatever the outcome
+    default void complete(String ticketId) {
+    }
+
+    // Requests recovered from a previous run and queued again before this dispatcher was handed out
+    default List<LoanJournal.Entry> recovered() {
+        return List.of();
+    }
+
+    int size();
+
+    int capacity();
+}
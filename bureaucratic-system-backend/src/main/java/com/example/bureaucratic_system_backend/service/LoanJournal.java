@@ -0,0 +1,469 @@
+package com.example.bureaucratic_system_backend.service;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.LockSupport;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+
+/**
+ * Append-only journal of the loan requests in the dispatch queue, so a restart or a crash does
+ * not drop the citizens waiting in it.
+ *
+ * Every queued request is recorded ({@link #enqueued}) and every request a counter is done with
+ * is acknowledged ({@link #completed}); requests without an acknowledgement are the ones still
+ * waiting or being served. Records go to fixed-size segment files ({@code segment-n.log}) mapped
+ * into memory, each one length-prefixed and checksummed, so an append is a copy into the page
+ * cache and survives the process dying right after it.
+ *
+ * Getting the pages to disk is batched: a flusher thread forces the active segment every
+ * {@code flushInterval}, covering every record appended since the last flush with one fsync. With
+ * {@code durableAppends} a request is not reported queued until a flush covers it; appenders that
+ * arrive while a flush is running share the next one (group commit). An interval of 0 never forces
+ * and leaves write-back to the OS, which still survives a process crash but not a power loss.
+ *
+ * Segments are compacted as the queue drains: when the active segment is full, the records of the
+ * requests still pending are copied into the new segment, which is forced, and the older segments
+ * are deleted. On startup the segments are read in order up to the first torn or corrupt record,
+ * and the pending requests are written to a fresh segment before the old ones are removed.
+ */
+public class LoanJournal implements AutoCloseable {
+
+    private static final Logger logger = LoggerFactory.getLogger(LoanJournal.class);
+
+    private static final byte ENQUEUED = 1;
+    private static final byte COMPLETED = 2;
+    private static final int RECORD_HEADER_BYTES = Integer.BYTES * 2; // length + CRC32
+    private static final int MIN_SEGMENT_BYTES = 64 * 1024;
+    private static final String SEGMENT_PREFIX = "segment-";
+    private static final String SEGMENT_SUFFIX = ".log";
+
+    // A request as journaled when it was queued
+    public record Entry(String ticketId, String citizenId, String bookTitle, String bookAuthor, long enqueuedAtMillis) {
+    }
+
+    private record Segment(long index, Path path, FileChannel channel, MappedByteBuffer buffer) {
+    }
+
+    // Record of a pending request, kept so compaction can copy it without encoding it again
+    private record Pending(byte[] record, long segmentIndex) {
+    }
+
+    private final Path directory;
+    private final int segmentBytes;
+    private final long flushIntervalNanos;
+    private final boolean durableAppends;
+
+    private final ReentrantLock appendLock = new ReentrantLock();
+    private final Condition flushed = appendLock.newCondition();
+    // Guarded by appendLock
+    private final Deque<Segment> segments = new ArrayDeque<>();
+    private final Map<String, Pending> pending = new LinkedHashMap<>();
+    private long pendingBytes;
+    private long appendedRecords;
+    private long flushedRecords;
+
+    private final List<Entry> recovered;
+    private final Thread flusher;
+    private volatile boolean closed;
+
+    /**
+     * @param flushInterval how often appended records are forced to disk; 0 leaves it to the OS
+     * @param durableAppends whether {@link #enqueued} waits for the flush covering its record
+     */
+    public LoanJournal(Path directory, int segmentBytes, long flushInterval, TimeUnit unit,
+                       boolean durableAppends) throws IOException {
+        if (segmentBytes < MIN_SEGMENT_BYTES) {
+            throw new IllegalArgumentException("Loan journal segments must be at least " + MIN_SEGMENT_BYTES + " bytes.");
+        }
+        if (flushInterval < 0) {
+            throw new IllegalArgumentException("Loan journal flush interval must not be negative.");
+        }
+        this.directory = directory;
+        this.segmentBytes = segmentBytes;
+        this.flushIntervalNanos = unit.toNanos(flushInterval);
+        this.durableAppends = durableAppends && flushInterval > 0;
+        Files.createDirectories(directory);
+
+        long started = System.currentTimeMillis();
+        List<Path> previous = segmentFiles();
+        Map<String, byte[]> records = replay(previous);
+        long nextIndex = previous.isEmpty() ? 0 : segmentIndex(previous.get(previous.size() - 1)) + 1;
+
+        // The pending requests move to a fresh segment, and the old ones go
+        appendLock.lock();
+        try {
+            Segment segment = openSegment(nextIndex);
+            for (Map.Entry<String, byte[]> record : records.entrySet()) {
+                write(segment, record.getValue());
+                pending.put(record.getKey(), new Pending(record.getValue(), segment.index()));
+                pendingBytes += RECORD_HEADER_BYTES + record.getValue().length;
+            }
+            segment.buffer().force();
+        } finally {
+            appendLock.unlock();
+        }
+        for (Path path : previous) {
+            Files.delete(path);
+        }
+
+        List<Entry> entries = new ArrayList<>(records.size());
+        for (byte[] record : records.values()) {
+            entries.add(decodeEntry(record));
+        }
+        this.recovered = List.copyOf(entries);
+        logger.info("Loan journal opened in {}: {} pending requests recovered from {} segments in {} ms.",
+                directory, recovered.size(), previous.size(), System.currentTimeMillis() - started);
+
+        if (flushIntervalNanos > 0) {
+            flusher = new Thread(this::flushLoop, "loan-journal-flusher");
+            flusher.setDaemon(true);
+            flusher.start();
+        } else {
+            flusher = null;
+        }
+    }
+
+    // Requests that were pending when the journal was last closed or the process died, in queue order
+    public List<Entry> recovered() {
+        return recovered;
+    }
+
+    // ----------------------- Appends -----------------------
+
+    /**
+     * Records a queued request. Returns once the record is in the mapped segment or, with
+     * durable appends, once it has been forced to disk.
+     *
+     * @throws IllegalStateException if the journal is closed or the record cannot be written
+     */
+    public void enqueued(Entry entry) {
+        byte[] record = encodeEntry(entry);
+        if (RECORD_HEADER_BYTES + record.length > segmentBytes / 2) {
+            throw new IllegalArgumentException("Loan request too large for the journal.");
+        }
+        long sequence;
+        appendLock.lock();
+        try {
+            Segment segment = append(record);
+            Pending previous = pending.put(entry.ticketId(), new Pending(record, segment.index()));
+            if (previous != null) {
+                pendingBytes -= RECORD_HEADER_BYTES + previous.record().length;
+            }
+            pendingBytes += RECORD_HEADER_BYTES + record.length;
+            sequence = appendedRecords;
+        } finally {
+            appendLock.unlock();
+        }
+        if (durableAppends) {
+            awaitFlush(sequence);
+        }
+    }
+
+    /**
+     * Acknowledges a request a counter is done with, or one that never made it into the queue.
+     * Not waited on: if the acknowledgement is lost in a crash, the request is served again and
+     * finds its own loan ({@code already_borrowed}).
+     */
+    public void completed(String ticketId) {
+        appendLock.lock();
+        try {
+            Pending removed = pending.remove(ticketId);
+            if (removed == null) {
+                return; // Never journaled
+            }
+            pendingBytes -= RECORD_HEADER_BYTES + removed.record().length;
+            append(encodeCompleted(ticketId));
+        } finally {
+            appendLock.unlock();
+        }
+    }
+
+    public int pendingCount() {
+        appendLock.lock();
+        try {
+            return pending.size();
+        } finally {
+            appendLock.unlock();
+        }
+    }
+
+    // Caller holds appendLock
+    private Segment append(byte[] record) {
+        if (closed) {
+            throw new IllegalStateException("Loan journal is closed.");
+        }
+        try {
+            Segment segment = segments.peekLast();
+            if (segment.buffer().remaining() < RECORD_HEADER_BYTES + record.length) {
+                segment = roll();
+            }
+            write(segment, record);
+            appendedRecords++;
+            return segment;
+        } catch (IOException e) {
+            throw new IllegalStateException("Loan journal write failed: " + e.getMessage(), e);
+        }
+    }
+
+    private static void write(Segment segment, byte[] record) {
+        CRC32 crc = new CRC32();
+        crc.update(record);
+        MappedByteBuffer buffer = segment.buffer();
+        buffer.putInt(record.length);
+        buffer.putInt((int) crc.getValue());
+        buffer.put(record);
+    }
+
+    // ----------------------- Segments -----------------------
+
+    // Opens the next segment, carrying the pending requests over when they fit; caller holds appendLock
+    private Segment roll() throws IOException {
+        Segment full = segments.peekLast();
+        full.buffer().force(); // Everything before the new segment is on disk, whatever the flusher does
+        flushedRecords = appendedRecords;
+        flushed.signalAll();
+
+        Segment next = openSegment(full.index() + 1);
+        if (pendingBytes <= segmentBytes / 2) {
+            for (Map.Entry<String, Pending> entry : pending.entrySet()) {
+                write(next, entry.getValue().record());
+                entry.setValue(new Pending(entry.getValue().record(), next.index()));
+            }
+            next.buffer().force(); // Before the copies' originals are deleted
+        }
+
+        // Segments older than every pending request hold nothing needed; acknowledgements only
+        // follow their request, so dropping a prefix never loses one that is still needed
+        long oldestNeeded = next.index();
+        for (Pending entry : pending.values()) {
+            oldestNeeded = Math.min(oldestNeeded, entry.segmentIndex());
+        }
+        while (segments.peekFirst().index() < oldestNeeded) {
+            Segment obsolete = segments.pollFirst();
+            obsolete.channel().close();
+            Files.delete(obsolete.path());
+        }
+        logger.debug("Loan journal rolled to segment {} ({} segments, {} pending requests).",
+                next.index(), segments.size(), pending.size());
+        return next;
+    }
+
+    private Segment openSegment(long index) throws IOException {
+        Path path = directory.resolve(String.format("%s%019d%s", SEGMENT_PREFIX, index, SEGMENT_SUFFIX));
+        FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE_NEW, StandardOpenOption.READ,
+                StandardOpenOption.WRITE);
+        Segment segment = new Segment(index, path, channel, channel.map(FileChannel.MapMode.READ_WRITE, 0, segmentBytes));
+        segments.addLast(segment);
+        return segment;
+    }
+
+    private List<Path> segmentFiles() throws IOException {
+        try (Stream<Path> files = Files.list(directory)) {
+            return files.filter(path -> {
+                        String name = path.getFileName().toString();
+                        return name.startsWith(SEGMENT_PREFIX) && name.endsWith(SEGMENT_SUFFIX);
+                    })
+                    .sorted()
+                    .toList();
+        }
+    }
+
+    private static long segmentIndex(Path path) {
+        String name = path.getFileName().toString();
+        return Long.parseLong(name.substring(SEGMENT_PREFIX.length(), name.length() - SEGMENT_SUFFIX.length()));
+    }
+
+    // ----------------------- Recovery -----------------------
+
+    // Records of the requests without an acknowledgement, by ticket ID in queue order
+    private static Map<String, byte[]> replay(List<Path> segmentFiles) throws IOException {
+        Map<String, byte[]> records = new LinkedHashMap<>();
+        for (Path path : segmentFiles) {
+            try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+                ByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+                while (buffer.remaining() >= RECORD_HEADER_BYTES) {
+                    int length = buffer.getInt();
+                    int checksum = buffer.getInt();
+                    if (length <= 0 || length > buffer.remaining()) {
+                        break; // End of the written part, or a torn header
+                    }
+                    byte[] record = new byte[length];
+                    buffer.get(record);
+                    CRC32 crc = new CRC32();
+                    crc.update(record);
+                    if ((int) crc.getValue() != checksum) {
+                        logger.warn("Loan journal segment {} has a torn record at offset {}; ignoring the rest of it.",
+                                path.getFileName(), buffer.position() - length - RECORD_HEADER_BYTES);
+                        break;
+                    }
+                    String ticketId = ticketIdOf(record);
+                    if (record[0] == ENQUEUED) {
+                        records.putIfAbsent(ticketId, record); // Compacted copies keep their first position
+                    } else {
+                        records.remove(ticketId);
+                    }
+                }
+            }
+        }
+        return records;
+    }
+
+    // ----------------------- Flushing -----------------------
+
+    private void flushLoop() {
+        while (!closed) {
+            LockSupport.parkNanos(this, flushIntervalNanos);
+            try {
+                flush();
+            } catch (RuntimeException e) {
+                logger.error("Loan journal flush failed: {}", e.getMessage());
+            }
+        }
+    }
+
+    // One fsync for every record appended since the last one
+    private void flush() {
+        Segment segment;
+        long upTo;
+        appendLock.lock();
+        try {
+            if (flushedRecords == appendedRecords) {
+                return;
+            }
+            segment = segments.peekLast();
+            upTo = appendedRecords;
+        } finally {
+            appendLock.unlock();
+        }
+        segment.buffer().force(); // Outside the lock, so appends carry on meanwhile
+        appendLock.lock();
+        try {
+            flushedRecords = Math.max(flushedRecords, upTo);
+            flushed.signalAll();
+        } finally {
+            appendLock.unlock();
+        }
+    }
+
+    private void awaitFlush(long sequence) {
+        LockSupport.unpark(flusher); // Flush now rather than at the end of the interval
+        appendLock.lock();
+        try {
+            while (flushedRecords < sequence) {
+                if (closed) {
+                    throw new IllegalStateException("Loan journal is closed.");
+                }
+                flushed.awaitUninterruptibly();
+            }
+        } finally {
+            appendLock.unlock();
+        }
+    }
+
+    // ----------------------- Records -----------------------
+
+    private static byte[] encodeEntry(Entry entry) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(128);
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            out.writeByte(ENQUEUED);
+            out.writeUTF(entry.ticketId());
+            writeNullable(out, entry.citizenId());
+            writeNullable(out, entry.bookTitle());
+            writeNullable(out, entry.bookAuthor());
+            out.writeLong(entry.enqueuedAtMillis());
+        } catch (IOException e) {
+            throw new IllegalArgumentException("Loan request cannot be journaled: " + e.getMessage(), e);
+        }
+        return bytes.toByteArray();
+    }
+
+    private static byte[] encodeCompleted(String ticketId) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(48);
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            out.writeByte(COMPLETED);
+            out.writeUTF(ticketId);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return bytes.toByteArray();
+    }
+
+    private static Entry decodeEntry(byte[] record) {
+        try (DataInputStream in = new DataInputStream(new ByteArrayInputStream(record))) {
+            in.readByte();
+            return new Entry(in.readUTF(), readNullable(in), readNullable(in), readNullable(in), in.readLong());
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static String ticketIdOf(byte[] record) {
+        try (DataInputStream in = new DataInputStream(new ByteArrayInputStream(record))) {
+            in.readByte();
+            return in.readUTF();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static void writeNullable(DataOutputStream out, String value) throws IOException {
+        out.writeBoolean(value != null);
+        if (value != null) {
+            out.writeUTF(value);
+        }
+    }
+
+    private static String readNullable(DataInputStream in) throws IOException {
+        return in.readBoolean() ? in.readUTF() : null;
+    }
+
+    // ----------------------- Lifecycle -----------------------
+
+    @Override
+    public void close() {
+        appendLock.lock();
+        try {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            for (Segment segment : segments) {
+                segment.buffer().force();
+                segment.channel().close();
+            }
+            flushedRecords = appendedRecords;
+            flushed.signalAll();
+        } catch (IOException e) {
+            logger.error("Error closing loan journal: {}", e.getMessage());
+        } finally {
+            appendLock.unlock();
+        }
+        if (flusher != null) {
+            LockSupport.unpark(flusher);
+        }
+        logger.info("Loan journal closed.");
+    }
+}
@@ -0,0 +1,24 @@
+package com.example.bureaucratic_system_backend.service;
+
+/**
+ * How a loan request handled by a counter ended; counted per outcome in the
+ * {@code loan.outcomes} metric.
+ */
+public enum LoanOutcome {
+    LOANED,
+    NO_MEMBERSHIP,
+    ALREADY_BORROWED,
+    UNAVAILABLE,
+    // No copy was available; the request waits for one to be returned
+    WAITLISTED,
+    // The member was already waiting for the title under an earlier request
+    DUPLICATE,
+    // Every copy tried was taken concurrently by another counter or instance
+    CONFLICT,
+    // The request failed with an error
+    FAILED;
+
+    public String tag() {
+        return name().toLowerCase();
+    }
+}
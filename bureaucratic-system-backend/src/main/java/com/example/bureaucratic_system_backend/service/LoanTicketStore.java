@@ -0,0 +1,209 @@
+package com.example.bureaucratic_system_backend.service;
+
+import com.example.bureaucratic_system_backend.model.LoanTicket;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * In-memory tickets for queued loan requests, so clients can follow a request to its outcome
+ * instead of polling their borrows.
+ *
+ * Tickets are bounded ({@code loan.tickets.max-entries}, oldest dropped first) and expire
+ * {@code loan.tickets.ttl-minutes} after they were created. They are not persisted: after a
+ * restart only the tickets of requests replayed from the loan journal are known again
+ * ({@link #restore}), and on another instance a ticket is simply unknown.
+ *
+ * Subscribers are notified on a single background thread, in update order, so a slow client
+ * never holds up the counter that changed the ticket.
+ */
+@Component
+public class LoanTicketStore {
+
+    private static final Logger logger = LoggerFactory.getLogger(LoanTicketStore.class);
+
+    private record Entry(LoanTicket ticket, long expiresAtMillis) {
+    }
+
+    private final int maxEntries;
+    private final long ttlMillis;
+
+    // Insertion order is creation order, so expired tickets are always at the head
+    private final LinkedHashMap<String, Entry> tickets = new LinkedHashMap<>();
+    private final Map<String, List<Consumer<LoanTicket>>> subscribers = new ConcurrentHashMap<>();
+    private final ExecutorService notifier = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "loan-ticket-notifier");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    public LoanTicketStore(@Value("${loan.tickets.max-entries:100000}") int maxEntries,
+                           @Value("${loan.tickets.ttl-minutes:30}") long ttlMinutes) {
+        if (maxEntries < 1 || ttlMinutes < 1) {
+            throw new IllegalArgumentException("Loan ticket limit and TTL must be positive.");
+        }
+        this.maxEntries = maxEntries;
+        this.ttlMillis = TimeUnit.MINUTES.toMillis(ttlMinutes);
+    }
+
+    // ----------------------- Lifecycle -----------------------
+
+    public LoanTicket create(String citizenId, String bookTitle, String bookAuthor) {
+        long now = System.currentTimeMillis();
+        LoanTicket ticket = new LoanTicket(UUID.randomUUID().toString(), citizenId, bookTitle, bookAuthor,
+                LoanTicket.Status.QUEUED, null, null, now);
+        synchronized (tickets) {
+            evictExpired(now);
+            if (tickets.size() >= maxEntries) {
+                Iterator<String> eldest = tickets.keySet().iterator();
+                subscribers.remove(eldest.next());
+                eldest.remove();
+            }
+            tickets.put(ticket.getId(), new Entry(ticket, now + ttlMillis));
+        }
+        return ticket;
+    }
+
+    // Recreates the ticket of a queued request: one recovered from the loan journal, or one whose
+    // ticket expired while the request waited
+    public LoanTicket restore(String ticketId, String citizenId, String bookTitle, String bookAuthor) {
+        long now = System.currentTimeMillis();
+        LoanTicket ticket = new LoanTicket(ticketId, citizenId, bookTitle, bookAuthor,
+                LoanTicket.Status.QUEUED, null, null, now);
+        synchronized (tickets) {
+            evictExpired(now);
+            tickets.put(ticketId, new Entry(ticket, now + ttlMillis));
+        }
+        return ticket;
+    }
+
+    // Drops a ticket whose request was never queued
+    public void discard(String ticketId) {
+        synchronized (tickets) {
+            tickets.remove(ticketId);
+        }
+    }
+
+    public void processing(String ticketId) {
+        update(ticketId, LoanTicket.Status.PROCESSING, null, null);
+    }
+
+    public void waitlisted(String ticketId) {
+        update(ticketId, LoanTicket.Status.WAITLISTED, null, null);
+    }
+
+    public void loaned(String ticketId, String borrowId) {
+        update(ticketId, LoanTicket.Status.LOANED, borrowId, null);
+    }
+
+    public void rejected(String ticketId, String reason) {
+        update(ticketId, LoanTicket.Status.REJECTED, null, reason);
+    }
+
+    private void update(String ticketId, LoanTicket.Status status, String borrowId, String reason) {
+        if (ticketId == null) {
+            return; // Request queued without a ticket
+        }
+        LoanTicket updated;
+        synchronized (tickets) {
+            Entry entry = tickets.get(ticketId);
+            if (entry == null || entry.ticket().isFinished()) {
+                return; // Expired or evicted while queued, or already final
+            }
+            updated = entry.ticket().withStatus(status, borrowId, reason);
+            tickets.put(ticketId, new Entry(updated, entry.expiresAtMillis()));
+        }
+        List<Consumer<LoanTicket>> listeners = updated.isFinished()
+                ? subscribers.remove(ticketId)
+                : subscribers.get(ticketId);
+        if (listeners != null) {
+            notifier.execute(() -> listeners.forEach(listener -> notify(listener, updated)));
+        }
+    }
+
+    // ----------------------- Lookup -----------------------
+
+    public LoanTicket get(String ticketId) {
+        synchronized (tickets) {
+            Entry entry = tickets.get(ticketId);
+            if (entry == null) {
+                return null;
+            }
+            if (entry.expiresAtMillis() <= System.currentTimeMillis()) {
+                tickets.remove(ticketId);
+                return null;
+            }
+            return entry.ticket();
+        }
+    }
+
+    /**
+     * Calls {@code listener} with the ticket's current state and then on every change, until the
+     * ticket is finished (loaned or rejected) or the returned handle is run.
+     *
+     * @return a handle that unsubscribes the listener, or null if the ticket is unknown
+     */
+    public Runnable subscribe(String ticketId, Consumer<LoanTicket> listener) {
+        LoanTicket current = get(ticketId);
+        if (current == null) {
+            return null;
+        }
+        if (!current.isFinished()) {
+            subscribers.computeIfAbsent(ticketId, id -> new CopyOnWriteArrayList<>()).add(listener);
+        }
+        // Read again so an update racing with the subscription is not missed; listeners only
+        // care about the latest state, so a repeated one is harmless.
+        LoanTicket latest = get(ticketId);
+        if (latest == null || latest.isFinished()) {
+            subscribers.remove(ticketId); // The final update may have missed this subscription
+        }
+        notifier.execute(() -> notify(listener, latest != null ? latest : current));
+        return () -> {
+            List<Consumer<LoanTicket>> listeners = subscribers.get(ticketId);
+            if (listeners != null) {
+                listeners.remove(listener);
+            }
+        };
+    }
+
+    public int size() {
+        synchronized (tickets) {
+            return tickets.size();
+        }
+    }
+
+    // ----------------------- Helpers -----------------------
+
+    private void evictExpired(long now) {
+        Iterator<Map.Entry<String, Entry>> it = tickets.entrySet().iterator();
+        while (it.hasNext()) {
+            Map.Entry<String, Entry> eldest = it.next();
+            if (eldest.getValue().expiresAtMillis() > now) {
+                break;
+            }
+            subscribers.remove(eldest.getKey());
+            it.remove();
+        }
+    }
+
+    private static void notify(Consumer<LoanTicket> listener, LoanTicket ticket) {
+        try {
+            listener.accept(ticket);
+        } catch (RuntimeException e) {
+            logger.warn("Loan ticket subscriber failed for ticket {}: {}", ticket.getId(), e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,223 @@
+package com.example.bureaucratic_system_backend.service;
+
+import com.example.bureaucratic_system_backend.store.ChangeSet;
+import com.example.bureaucratic_system_backend.store.StoredDocument;
+import com.google.cloud.Timestamp;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.DependsOn;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+import java.util.UUID;
+import java.util.concurrent.locks.Lock;
+
+/**
+ * Per-title reservation queues for loan requests that found no available copy.
+ *
+ * Instead of being rejected, such a request waits here and {@link ReturnService} hands the next
+ * returned copy of the title straight to the head of the queue. The loan path checks for a copy
+ * and joins the queue while holding the title's lock ({@link #lockFor}), and the return path
+ * decides between hand-off and "available" under the same lock, so a copy can never be marked
+ * available while someone is waiting for it.
+ *
+ * Reservations are stored in the {@code waitlist} collection, so they survive a restart and a
+ * copy returned on any instance is handed to them. This instance keeps a copy of the waitlists,
+ * filled by the first snapshot of a listener on the collection and kept current by the changes
+ * that follow; until that snapshot arrives the waitlists are read from the store. A hand-off
+ * deletes the reservation in the same commit as the return, conditioned on it being unchanged, so
+ * two instances returning copies of the title cannot both serve it.
+ */
+@Component
+@DependsOn("documentStore")
+public class LoanWaitlist {
+
+    private static final Logger logger = LoggerFactory.getLogger(LoanWaitlist.class);
+
+    /**
+     * One waiting member, stored under {@code id} (the request's ticket ID when it has one).
+     * {@code version} is the document's update time, the precondition of the hand-off; it is null
+     * after a local add until the listener delivers the committed document.
+     */
+    public record Reservation(String id, String bookTitle, String bookAuthor, String citizenId, String membershipId,
+                              String ticketId, long joinedAtMillis, Timestamp version) {
+
+        public static Reservation of(String bookTitle, String bookAuthor, String citizenId, String membershipId,
+                                     String ticketId) {
+            String id = (ticketId != null) ? ticketId : UUID.randomUUID().toString();
+            return new Reservation(id, bookTitle, bookAuthor, citizenId, membershipId, ticketId,
+                    System.currentTimeMillis(), null);
+        }
+
+        static Reservation from(StoredDocument document) {
+            Long joinedAt = document.getLong("joinedAtMillis");
+            return new Reservation(document.id(), document.getString("bookTitle"), document.getString("bookAuthor"),
+                    document.getString("citizenId"), document.getString("membershipId"),
+                    document.getString("ticketId"), joinedAt == null ? 0 : joinedAt, document.updateTime());
+        }
+
+        Map<String, Object> toData() {
+            Map<String, Object> data = new HashMap<>();
+            data.put("bookTitle", bookTitle);
+            data.put("bookAuthor", bookAuthor);
+            data.put("citizenId", citizenId);
+            data.put("membershipId", membershipId);
+            data.put("ticketId", ticketId);
+            data.put("joinedAtMillis", joinedAtMillis);
+            return data;
+        }
+
+        TitleKey titleKey() {
+            return new TitleKey(bookTitle, bookAuthor);
+        }
+    }
+
+    private record TitleKey(String name, String author) {
+    }
+
+    // Queue order: first come, first served
+    private static final Comparator<Reservation> ORDER =
+            Comparator.comparingLong(Reservation::joinedAtMillis).thenComparing(Reservation::id);
+
+    private final KeyedLockRegistry keyedLocks;
+    private final int maxPerTitle;
+
+    // Guarded by byId
+    private final Map<String, Reservation> byId = new HashMap<>();
+    private final Map<TitleKey, TreeSet<Reservation>> byTitle = new HashMap<>();
+    private volatile boolean ready = false;
+
+    public LoanWaitlist(KeyedLockRegistry keyedLocks, MeterRegistry meterRegistry,
+                        @Value("${loan.waitlist.max-per-title:100}") int maxPerTitle) {
+        if (maxPerTitle < 0) {
+            throw new IllegalArgumentException("Waitlist length per title must not be negative.");
+        }
+        this.keyedLocks = keyedLocks;
+        this.maxPerTitle = maxPerTitle;
+        Gauge.builder("loan.waitlist.size", this, LoanWaitlist::size)
+                .description("Loan requests waiting for a copy to be returned")
+                .register(meterRegistry);
+        FirebaseService.listenToWaitlistChanges(this::applySnapshot);
+    }
+
+    public boolean isReady() {
+        return ready;
+    }
+
+    // Held while looking for a copy before joining, and while handing a returned copy off
+    public Lock lockFor(String bookTitle, String bookAuthor) {
+        return keyedLocks.get("title:" + bookAuthor + '\n' + bookTitle);
+    }
+
+    // ----------------------- Joining -----------------------
+
+    /**
+     * Stores a reservation at the end of its title's waitlist. A member already waiting for the
+     * title keeps their place, and the existing reservation is returned instead of the new one.
+     *
+     * @return the member's reservation in the waitlist, or null if the title's waitlist is full
+     */
+    public Reservation add(Reservation reservation) {
+        List<Reservation> queue = waitingFor(reservation.bookTitle(), reservation.bookAuthor());
+        for (Reservation existing : queue) {
+            if (existing.membershipId().equals(reservation.membershipId())) {
+                return existing;
+            }
+        }
+        if (queue.size() >= maxPerTitle) {
+            return null;
+        }
+        FirebaseService.addWaitlistReservation(reservation.id(), reservation.toData());
+        put(reservation); // Right away, so a return on this instance cannot miss it
+        return reservation;
+    }
+
+    // ----------------------- Hand-off -----------------------
+
+    // Head of the title's waitlist, or null; it stays waiting until handed a copy or cancelled
+    public Reservation peek(String bookTitle, String bookAuthor) {
+        List<Reservation> queue = waitingFor(bookTitle, bookAuthor);
+        return queue.isEmpty() ? null : queue.get(0);
+    }
+
+    // Whether the reservation is still stored, i.e. was not handed a copy by another instance
+    public boolean isWaiting(Reservation reservation) {
+        return FirebaseService.getWaitlistReservation(reservation.id()) != null;
+    }
+
+    // Drops a reservation whose hand-off was committed, here or by another instance
+    public void remove(Reservation reservation) {
+        synchronized (byId) {
+            Reservation removed = byId.remove(reservation.id());
+            if (removed != null) {
+                TreeSet<Reservation> queue = byTitle.get(removed.titleKey());
+                queue.remove(removed);
+                if (queue.isEmpty()) {
+                    byTitle.remove(removed.titleKey());
+                }
+            }
+        }
+    }
+
+    // Deletes a reservation that will never be served
+    public void cancel(Reservation reservation) {
+        FirebaseService.deleteWaitlistReservation(reservation.id());
+        remove(reservation);
+    }
+
+    public int size() {
+        synchronized (byId) {
+            return byId.size();
+        }
+    }
+
+    // ----------------------- Helpers -----------------------
+
+    // The title's waitlist in queue order, from the store until the listener has loaded it
+    private List<Reservation> waitingFor(String bookTitle, String bookAuthor) {
+        if (!ready) {
+            List<Reservation> queue = new ArrayList<>();
+            for (StoredDocument document : FirebaseService.getWaitlist(bookTitle, bookAuthor)) {
+                queue.add(Reservation.from(document));
+            }
+            queue.sort(ORDER);
+            return queue;
+        }
+        synchronized (byId) {
+            TreeSet<Reservation> queue = byTitle.get(new TitleKey(bookTitle, bookAuthor));
+            return queue == null ? List.of() : new ArrayList<>(queue);
+        }
+    }
+
+    private void put(Reservation reservation) {
+        synchronized (byId) {
+            remove(reservation);
+            byId.put(reservation.id(), reservation);
+            byTitle.computeIfAbsent(reservation.titleKey(), key -> new TreeSet<>(ORDER)).add(reservation);
+        }
+    }
+
+    // ----------------------- Listener -----------------------
+
+    private void applySnapshot(ChangeSet changeSet) {
+        for (ChangeSet.Change change : changeSet.changes()) {
+            if (change.type() == ChangeSet.Type.REMOVED) {
+                remove(Reservation.from(change.document()));
+            } else {
+                put(Reservation.from(change.document()));
+            }
+        }
+        if (!ready) {
+            ready = true;
+            logger.info("Loan waitlist loaded with {} reservations.", size());
+        }
+    }
+}
@@ -0,0 +1,103 @@
+package com.example.bureaucratic_system_backend.service;
+
+import com.example.bureaucratic_system_backend.store.ChangeSet;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.DependsOn;
+import org.springframework.stereotype.Component;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Bounded LRU cache of citizenId -> membershipId, including negative entries for citizens
+ * without a membership.
+ *
+ * Entries are dropped by {@link FirebaseService#addMembership}/{@link FirebaseService#deleteMembership}
+ * and by a listener on {@code memberships}, which also covers changes made by other instances
+ * or directly in the console.
+ */
+@Component
+@DependsOn("documentStore")
+public class MembershipCache {
+
+    private static final Logger logger = LoggerFactory.getLogger(MembershipCache.class);
+
+    private static final String NO_MEMBERSHIP = ""; // Cached "citizen has no membership"
+
+    private final Map<String, String> membershipByCitizen;
+    // Bumped on every invalidation so a lookup that raced with one does not cache a stale answer
+    private final AtomicLong invalidations = new AtomicLong();
+
+    public MembershipCache(@Value("${membership.cache.max-entries:10000}") int maxEntries) {
+        this.membershipByCitizen = Collections.synchronizedMap(new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, String> eldest) {
+                return size() > maxEntries;
+            }
+        });
+        FirebaseService.listenToMembershipChanges(this::applySnapshot);
+    }
+
+    /**
+     * Returns the citizen's membership ID, or null if the citizen has none. Lookup failures are
+     * thrown rather than cached as "no membership".
+     */
+    public String getMembershipId(String citizenId) {
+        String cached = membershipByCitizen.get(citizenId);
+        if (cached != null) {
+            return NO_MEMBERSHIP.equals(cached) ? null : cached;
+        }
+
+        long generation = invalidations.get();
+        String membershipId = FirebaseService.await(FirebaseService.getMembershipIdByIdAsync(citizenId));
+        synchronized (membershipByCitizen) {
+            if (invalidations.get() == generation) {
+                membershipByCitizen.put(citizenId, membershipId == null ? NO_MEMBERSHIP : membershipId);
+            }
+        }
+        return membershipId;
+    }
+
+    public boolean hasMembership(String citizenId) {
+        return getMembershipId(citizenId) != null;
+    }
+
+    public void put(String citizenId, String membershipId) {
+        synchronized (membershipByCitizen) {
+            invalidations.incrementAndGet();
+            membershipByCitizen.put(citizenId, membershipId);
+        }
+    }
+
+    public void invalidateCitizen(String citizenId) {
+        synchronized (membershipByCitizen) {
+            invalidations.incrementAndGet();
+            membershipByCitizen.remove(citizenId);
+        }
+    }
+
+    public void invalidateMembership(String membershipId) {
+        synchronized (membershipByCitizen) {
+            invalidations.incrementAndGet();
+            membershipByCitizen.values().removeIf(membershipId::equals);
+        }
+    }
+
+    private void applySnapshot(ChangeSet changeSet) {
+        for (ChangeSet.Change change : changeSet.changes()) {
+            String citizenId = change.document().getString("citizenId");
+            if (citizenId != null) {
+                invalidateCitizen(citizenId);
+            }
+            if (change.type() != ChangeSet.Type.ADDED) {
+                // The membership may have moved away from a citizen we still have cached
+                invalidateMembership(change.document().id());
+            }
+        }
+        logger.debug("Membership cache invalidated for {} changes.", changeSet.changes().size());
+    }
+}
@@ -0,0 +1,211 @@
+package com.example.bureaucratic_system_backend.service;
+
+import com.example.bureaucratic_system_backend.model.Fees;
+import com.example.bureaucratic_system_backend.store.StoredDocument;
+import com.example.bureaucratic_system_backend.store.Write;
+import com.example.bureaucratic_system_backend.store.WriteConflictException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.time.LocalDate;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Accrues overdue fees on borrows that are still out, so a book that never comes back still
+ * costs its $1 per day instead of nothing.
+ *
+ * Open borrows are read in pages ordered by document ID, so memory use is bounded by the page
+ * size however many borrows are open. For each page the existing fees are fetched together, and
+ * the created or updated fees are committed in one batch along with a checkpoint (the last borrow
+ * ID of the page) in {@code jobs/overdue-fee-accrual}; the members' balances move in the same batch. A run that stops midway resumes after the
+ * checkpoint on the same day; a day's run that completed is not repeated. Fees are set to the
+ * amount owed as of the run date, so re-running a page never charges twice. A fee paid while the
+ * book is still out keeps what was paid, and owes only what accrues after.
+ *
+ * Fees are written with preconditions (created only if absent, updated only if unchanged since
+ * read), so a fee settled by a return while its page is in flight fails the batch, and the page is
+ * read and computed again.
+ */
+@Component
+public class OverdueFeeAccrualJob {
+
+    private static final Logger logger = LoggerFactory.getLogger(OverdueFeeAccrualJob.class);
+
+    static final String CHECKPOINT_COLLECTION = "jobs";
+    static final String CHECKPOINT_ID = "overdue-fee-accrual";
+    private static final int MAX_PAGE_ATTEMPTS = 3;
+
+    private final boolean enabled;
+    private final int pageSize;
+    private final AtomicBoolean running = new AtomicBoolean();
+
+    public OverdueFeeAccrualJob(@Value("${fees.accrual.enabled:true}") boolean enabled,
+                                @Value("${fees.accrual.page-size:200}") int pageSize) {
+        if (pageSize < 1) {
+            throw new IllegalArgumentException("Fee accrual page size must be positive.");
+        }
+        this.enabled = enabled;
+        // A page's fees, up to one balance per fee, the statistics and the checkpoint go in one commit
+        this.pageSize = Math.min(pageSize, (FirebaseService.getMaxBatchWrites() - 1 - StatsDelta.MAX_WRITES) / 2);
+    }
+
+    @Scheduled(cron = "${fees.accrual.cron:0 30 2 * * *}")
+    public void scheduledRun() {
+        if (!enabled) {
+            return;
+        }
+        try {
+            run(LocalDate.now());
+        } catch (RuntimeException e) {
+            // The checkpoint is kept, so the next run picks up where this one stopped
+            logger.error("Overdue fee accrual failed: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * Accrues fees as of {@code runDate}, resuming from the checkpoint if a run for that date was
+     * interrupted.
+     *
+     * @return counts for the run
+     * @throws IllegalStateException if a run is already in progress on this instance
+     */
+    public Map<String, Object> run(LocalDate runDate) {
+        if (!running.compareAndSet(false, true)) {
+            throw new IllegalStateException("Overdue fee accrual is already running.");
+        }
+        try {
+            return accrue(runDate);
+        } finally {
+            running.set(false);
+        }
+    }
+
+    private Map<String, Object> accrue(LocalDate runDate) {
+        String date = runDate.toString();
+        String cursor = null;
+        long scanned = 0;
+        long accrued = 0;
+
+        StoredDocument checkpoint = FirebaseService.await(
+                FirebaseService.getStoredDocumentAsync(CHECKPOINT_COLLECTION, CHECKPOINT_ID));
+        if (checkpoint != null && date.equals(checkpoint.getString("runDate"))) {
+            scanned = valueOrZero(checkpoint.getLong("scanned"));
+            accrued = valueOrZero(checkpoint.getLong("accrued"));
+            if (Boolean.TRUE.equals(checkpoint.getBoolean("completed"))) {
+                logger.info("Overdue fees for {} already accrued.", date);
+                return result(date, scanned, accrued, true);
+            }
+            cursor = checkpoint.getString("lastBorrowId");
+            logger.info("Resuming overdue fee accrual for {} after borrow ID {}.", date, cursor);
+        }
+
+        long started = System.currentTimeMillis();
+        CompletableFuture<List<StoredDocument>> nextPage = FirebaseService.getOpenBorrowsPageAsync(cursor, pageSize);
+        while (true) {
+            List<StoredDocument> page = FirebaseService.await(nextPage);
+            if (page.isEmpty()) {
+                break;
+            }
+            cursor = page.get(page.size() - 1).id();
+            // Fetch the next page while this one is computed and written
+            nextPage = (page.size() < pageSize)
+                    ? CompletableFuture.completedFuture(List.of())
+                    : FirebaseService.getOpenBorrowsPageAsync(cursor, pageSize);
+
+            scanned += page.size();
+            accrued += accruePage(page, runDate, cursor, scanned, accrued);
+        }
+
+        FirebaseService.setDocument(CHECKPOINT_COLLECTION, CHECKPOINT_ID, checkpointData(date, cursor, scanned, accrued, true));
+        logger.info("Overdue fee accrual for {} done: {} open borrows scanned, {} fees written in {} ms.",
+                date, scanned, accrued, System.currentTimeMillis() - started);
+        return result(date, scanned, accrued, false);
+    }
+
+    // Writes the page's changed fees and the checkpoint; returns how many fees were written
+    private int accruePage(List<StoredDocument> page, LocalDate runDate, String lastBorrowId, long scanned,
+                           long accruedBefore) {
+        for (int attempt = 1; ; attempt++) {
+            // Overdue borrows of the page, with their existing fees looked up together
+            List<StoredDocument> overdue = new ArrayList<>();
+            List<CompletableFuture<StoredDocument>> existingFees = new ArrayList<>();
+            for (StoredDocument borrow : page) {
+                String dueDate = borrow.getString("dueDate");
+                // ISO dates compare correctly as strings
+                if (dueDate != null && dueDate.compareTo(runDate.toString()) < 0) {
+                    overdue.add(borrow);
+                    existingFees.add(FirebaseService.getStoredDocumentAsync("fees", borrow.id()));
+                }
+            }
+
+            FeeLedgerBatch batch = new FeeLedgerBatch();
+            int fees = 0;
+            for (int i = 0; i < overdue.size(); i++) {
+                StoredDocument borrow = overdue.get(i);
+                long overdueDays = ChronoUnit.DAYS.between(LocalDate.parse(borrow.getString("dueDate")), runDate);
+                long amountCents = FeeService.overdueAmountCents(overdueDays);
+                StoredDocument existing = FirebaseService.await(existingFees.get(i));
+                if (existing == null) {
+                    batch.add(new Fees(borrow.id(), borrow.getString("membershipId"), amountCents, borrow.id(), false));
+                    fees++;
+                } else {
+                    Fees accrued = FirebaseService.toFee(existing);
+                    boolean amountChanged = accrued.getAmountCents() != amountCents;
+                    if (amountChanged || FirebaseService.isLegacyFee(existing)) {
+                        FeeService.reassess(accrued, amountCents);
+                        batch.change(existing, accrued);
+                        fees++;
+                    }
+                }
+            }
+            List<Write> writes = batch.writes();
+            writes.add(Write.set(CHECKPOINT_COLLECTION, CHECKPOINT_ID,
+                    checkpointData(runDate.toString(), lastBorrowId, scanned, accruedBefore + fees, false)));
+
+            try {
+                FirebaseService.commitAtomically(writes);
+                return fees;
+            } catch (WriteConflictException e) {
+                if (attempt == MAX_PAGE_ATTEMPTS) {
+                    throw new IllegalStateException("Fees of the page ending at borrow ID " + lastBorrowId
+                            + " kept changing during accrual.", e);
+                }
+                logger.info("A fee changed while its page was accrued (attempt {}). Retrying the page.", attempt);
+            }
+        }
+    }
+
+    private static Map<String, Object> checkpointData(String runDate, String lastBorrowId, long scanned, long accrued,
+                                                      boolean completed) {
+        Map<String, Object> data = new LinkedHashMap<>();
+        data.put("runDate", runDate);
+        data.put("lastBorrowId", lastBorrowId);
+        data.put("scanned", scanned);
+        data.put("accrued", accrued);
+        data.put("completed", completed);
+        data.put("updatedAt", System.currentTimeMillis());
+        return data;
+    }
+
+    private static Map<String, Object> result(String runDate, long scanned, long accrued, boolean alreadyCompleted) {
+        return Map.of(
+                "runDate", runDate,
+                "scanned", scanned,
+                "accrued", accrued,
+                "alreadyCompleted", alreadyCompleted
+        );
+    }
+
+    private static long valueOrZero(Long value) {
+        return value == null ? 0 : value;
+    }
+}
@@ -6,6 +6,7 @@ import org.slf4j.LoggerFactory;
 import org.springframework.stereotype.Service;
 
 import java.time.LocalDate;
+import java.util.concurrent.locks.Lock;
 
 @Service
 public class ReturnService {
@@ -15,32 +16,70 @@ public class ReturnService {
     private final BorrowService borrowService;
     private final FeeService feeService;
     private final FirebaseService firebaseService;
+    private final CatalogIndex catalogIndex;
+    private final LoanWaitlist waitlist;
+    private final MembershipCache membershipCache;
+    private final IdAllocator idAllocator;
+    private final LoanTicketStore loanTickets;
 
-    public ReturnService(BorrowService borrowService, FeeService feeService, FirebaseService firebaseService) {
+    public ReturnService(BorrowService borrowService, FeeService feeService, FirebaseService firebaseService,
+                         CatalogIndex catalogIndex, LoanWaitlist waitlist, MembershipCache membershipCache,
+                         IdAllocator idAllocator, LoanTicketStore loanTickets) {
         this.borrowService = borrowService;
         this.feeService = feeService;
         this.firebaseService = firebaseService;
+        this.catalogIndex = catalogIndex;
+        this.waitlist = waitlist;
+        this.membershipCache = membershipCache;
+        this.idAllocator = idAllocator;
+        this.loanTickets = loanTickets;
     }
 
     public void processReturn(String membershipId, String bookTitle, String bookAuthor) {
         try {
             // Find the borrow record using membershipId, bookTitle, and bookAuthor
-            Borrows borrow = firebaseService.getBorrowByMembershipAndBook(membershipId, bookTitle, bookAuthor);
+            Borrows borrow = borrowService.findActiveBorrow(membershipId, bookTitle, bookAuthor);
             if (borrow == null) {
                 throw new IllegalArgumentException("No active borrow record found for the provided details.");
             }
 
-            // Update the return date
             String returnDate = LocalDate.now().toString();
-            borrowService.updateReturnDate(borrow.getId(), returnDate);
+            String bookId = borrow.getBookId();
+
+            // The copy goes to the head of the title's waitlist, or back on the shelf, in the same
+            // commit as the return date. The title lock keeps new loan requests from missing it.
+            Lock titleLock = waitlist.lockFor(bookTitle, bookAuthor);
+            titleLock.lock();
+            try {
+                while (true) {
+                    LoanWaitlist.Reservation reservation = (bookId != null) ? nextEligibleReservation(bookTitle, bookAuthor) : null;
+                    Borrows handOff = (reservation != null)
+                            ? borrowService.newBorrow(idAllocator.nextBorrowId(), bookId, reservation.membershipId())
+                            : null;
+
+                    if (borrowService.commitReturn(borrow, returnDate, handOff,
+                            new CatalogIndex.TitleKey(bookTitle, bookAuthor), reservation)) {
+                        if (handOff != null) {
+                            waitlist.remove(reservation);
+                            loanTickets.loaned(reservation.ticketId(), handOff.getId());
+                            logger.info("Returned copy of '{}' by '{}' handed to citizen ID {}.", bookTitle, bookAuthor, reservation.citizenId());
+                        } else if (bookId != null) {
+                            catalogIndex.markReturned(bookId);
+                        }
+                        break;
+                    }
+                    if (reservation == null || waitlist.isWaiting(reservation)) {
+                        throw new IllegalArgumentException("The borrow record was already returned.");
+                    }
+                    // Handed a copy returned on another instance meanwhile; this one goes to the next in line
+                    waitlist.remove(reservation);
+                }
+            } finally {
+                titleLock.unlock();
+            }
 
             // Generate overdue fee if necessary
             feeService.generateOverdueFee(borrow.getId());
-            // Update the book's availability
-            String bookId = borrow.getBookId();
-            if (bookId != null) {
-                FirebaseService.updateBookField(bookId, "available", true); // Set available to true
-            }
 
             logger.info("Book return processed successfully for membership ID: {}, book: '{}', author: '{}'",
                     membershipId, bookTitle, bookAuthor);
@@ -49,4 +88,21 @@ public class ReturnService {
             throw new RuntimeException(e.getMessage(), e);
         }
     }
+
+    // Cancels (and rejects) waiting members who lost their membership or got the title meanwhile
+    private LoanWaitlist.Reservation nextEligibleReservation(String bookTitle, String bookAuthor) {
+        LoanWaitlist.Reservation reservation;
+        while ((reservation = waitlist.peek(bookTitle, bookAuthor)) != null) {
+            if (membershipCache.getMembershipId(reservation.citizenId()) == null) {
+                waitlist.cancel(reservation);
+                loanTickets.rejected(reservation.ticketId(), LoanOutcome.NO_MEMBERSHIP.tag());
+            } else if (borrowService.findActiveBorrow(reservation.membershipId(), bookTitle, bookAuthor) != null) {
+                waitlist.cancel(reservation);
+                loanTickets.rejected(reservation.ticketId(), LoanOutcome.ALREADY_BORROWED.tag());
+            } else {
+                return reservation;
+            }
+        }
+        return null;
+    }
 }
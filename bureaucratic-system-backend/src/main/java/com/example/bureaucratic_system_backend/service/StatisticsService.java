@@ -0,0 +1,219 @@
+package com.example.bureaucratic_system_backend.service;
+
+import com.example.bureaucratic_system_backend.model.Fees;
+import com.example.bureaucratic_system_backend.store.Query;
+import com.example.bureaucratic_system_backend.store.StoredDocument;
+import com.example.bureaucratic_system_backend.store.Write;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Library statistics for the admin dashboard, read from the aggregates that the write paths keep
+ * in the {@code stats} collection ({@link StatsDelta}). A summary is one query over the
+ * {@code 3 * StatsDelta.SHARDS} shard documents, however many books, borrows and fees there are.
+ *
+ * {@link #rebuild()} recomputes the aggregates from the collections, for a first deployment or
+ * after writes that bypass them (admin edits of borrows). Changes committed while it scans are
+ * overwritten, so it should run when the library is quiet.
+ */
+@Service
+public class StatisticsService {
+
+    private static final Logger logger = LoggerFactory.getLogger(StatisticsService.class);
+
+    private final AtomicBoolean rebuilding = new AtomicBoolean();
+
+    // ----------------------- Summary -----------------------
+
+    /**
+     * @param top how many titles and members to list in each ranking
+     */
+    public Map<String, Object> getSummary(int top) {
+        if (top < 1) {
+            throw new IllegalArgumentException("top must be positive.");
+        }
+        Map<String, Long> totals = new HashMap<>();
+        Map<String, Map<String, Long>> titles = new HashMap<>();
+        Map<String, Map<String, Long>> members = new HashMap<>();
+        for (StoredDocument shard : FirebaseService.await(FirebaseService.getStatsShardsAsync())) {
+            if (shard.id().startsWith(StatsDelta.TOTALS + "-")) {
+                addFields(totals, shard.data());
+            } else if (shard.id().startsWith(StatsDelta.TITLES + "-")) {
+                addEntries(titles, shard.data());
+            } else if (shard.id().startsWith(StatsDelta.MEMBERS + "-")) {
+                addEntries(members, shard.data());
+            }
+        }
+
+        long books = totals.getOrDefault("books", 0L);
+        long activeBorrows = totals.getOrDefault("activeBorrows", 0L);
+        long returnedBorrows = totals.getOrDefault("returnedBorrows", 0L);
+        long outstandingCents = totals.getOrDefault("outstandingCents", 0L);
+        long lifetimeCents = totals.getOrDefault("lifetimeCents", 0L);
+
+        Map<String, Object> summary = new LinkedHashMap<>();
+        summary.put("books", Map.of(
+                "total", books,
+                "onLoan", activeBorrows,
+                "available", Math.max(0, books - activeBorrows)));
+        summary.put("borrows", Map.of(
+                "total", totals.getOrDefault("borrows", 0L),
+                "active", activeBorrows,
+                "returned", returnedBorrows,
+                "averageLoanDays", average(totals.getOrDefault("loanDays", 0L), returnedBorrows)));
+        summary.put("fees", Map.of(
+                "count", totals.getOrDefault("fees", 0L),
+                "paidCents", lifetimeCents - outstandingCents,
+                "unpaidCents", outstandingCents,
+                "totalCents", lifetimeCents));
+        summary.put("members", Map.of(
+                "withBorrows", members.values().stream().filter(m -> m.getOrDefault("borrows", 0L) > 0).count(),
+                "withFees", members.values().stream().filter(m -> m.getOrDefault("feeCents", 0L) > 0).count()));
+        summary.put("topTitles", topTitles(titles, top));
+        summary.put("topBorrowers", topMembers(members, "borrows", top));
+        summary.put("topFeePayers", topMembers(members, "feeCents", top));
+        return summary;
+    }
+
+    private static List<Map<String, Object>> topTitles(Map<String, Map<String, Long>> titles, int top) {
+        List<Map<String, Object>> result = new ArrayList<>();
+        titles.entrySet().stream()
+                .filter(e -> e.getValue().getOrDefault("loans", 0L) > 0)
+                .sorted(Comparator.comparingLong((Map.Entry<String, Map<String, Long>> e) -> e.getValue().getOrDefault("loans", 0L))
+                        .reversed()
+                        .thenComparing(Map.Entry::getKey))
+                .limit(top)
+                .forEach(e -> {
+                    String[] authorAndName = e.getKey().split("\n", 2);
+                    Map<String, Long> fields = e.getValue();
+                    Map<String, Object> title = new LinkedHashMap<>();
+                    title.put("name", authorAndName.length > 1 ? authorAndName[1] : "");
+                    title.put("author", authorAndName[0]);
+                    title.put("copies", fields.getOrDefault("books", 0L));
+                    title.put("loans", fields.getOrDefault("loans", 0L));
+                    title.put("averageLoanDays", average(fields.getOrDefault("loanDays", 0L), fields.getOrDefault("returns", 0L)));
+                    result.add(title);
+                });
+        return result;
+    }
+
+    private static List<Map<String, Object>> topMembers(Map<String, Map<String, Long>> members, String field, int top) {
+        List<Map<String, Object>> result = new ArrayList<>();
+        members.entrySet().stream()
+                .filter(e -> e.getValue().getOrDefault(field, 0L) > 0)
+                .sorted(Comparator.comparingLong((Map.Entry<String, Map<String, Long>> e) -> e.getValue().get(field))
+                        .reversed()
+                        .thenComparing(Map.Entry::getKey))
+                .limit(top)
+                .forEach(e -> result.add(Map.of("membershipId", e.getKey(), field, e.getValue().get(field))));
+        return result;
+    }
+
+    private static double average(long sum, long count) {
+        return count == 0 ? 0 : Math.round(100.0 * sum / count) / 100.0;
+    }
+
+    private static void addFields(Map<String, Long> sums, Map<String, Object> fields) {
+        fields.forEach((field, value) -> {
+            if (value instanceof Number number) {
+                sums.merge(field, number.longValue(), Long::sum);
+            }
+        });
+    }
+
+    @SuppressWarnings("unchecked")
+    private static void addEntries(Map<String, Map<String, Long>> sums, Map<String, Object> entries) {
+        entries.forEach((key, fields) -> {
+            if (fields instanceof Map<?, ?> map) {
+                addFields(sums.computeIfAbsent(key, k -> new HashMap<>()), (Map<String, Object>) map);
+            }
+        });
+    }
+
+    // ----------------------- Rebuild -----------------------
+
+    /**
+     * Recomputes every aggregate from the books, borrows and fees collections and replaces the
+     * shard documents in one commit.
+     *
+     * @return counts of the scanned documents
+     * @throws IllegalStateException if a rebuild is already in progress on this instance
+     */
+    public Map<String, Object> rebuild() {
+        if (!rebuilding.compareAndSet(false, true)) {
+            throw new IllegalStateException("Statistics rebuild is already running.");
+        }
+        try {
+            long started = System.currentTimeMillis();
+            StatsDelta stats = new StatsDelta();
+            // Borrows only know their book ID, so titles are looked up from the books scan
+            Map<String, CatalogIndex.TitleKey> titleByBookId = new HashMap<>();
+            long[] counts = new long[3];
+
+            counts[0] = FirebaseService.scan(Query.of("books"), FirebaseService.SCAN_PAGE_SIZE, book -> {
+                String name = book.getString("name");
+                String author = book.getString("author");
+                stats.total("books", 1);
+                if (name != null && author != null) {
+                    stats.title(name, author, "books", 1);
+                    titleByBookId.put(book.id(), new CatalogIndex.TitleKey(name, author));
+                }
+            });
+            counts[1] = FirebaseService.scan(Query.of("borrows"), FirebaseService.SCAN_PAGE_SIZE, borrow -> {
+                CatalogIndex.TitleKey title = titleByBookId.get(borrow.getString("bookId"));
+                String name = title != null ? title.name() : null;
+                String author = title != null ? title.author() : null;
+                stats.loan(name, author, borrow.getString("membershipId"));
+                String returnDate = borrow.getString("returnDate");
+                if (returnDate != null) {
+                    stats.returned(name, author, FirebaseService.loanDays(borrow.getString("borrowDate"), returnDate));
+                }
+            });
+            // Counted like the ledger counts them: fees in the old format, or without a member, are not
+            counts[2] = FirebaseService.scan(Query.of("fees"), FirebaseService.SCAN_PAGE_SIZE, document -> {
+                if (!FirebaseService.isLegacyFee(document)) {
+                    Fees fee = FirebaseService.toFee(document);
+                    if (fee.getMembershipId() != null) {
+                        stats.fee(fee, 1);
+                    }
+                }
+            });
+
+            FirebaseService.commitAtomically(snapshot(stats));
+            logger.info("Statistics rebuilt from {} books, {} borrows and {} fees in {} ms.",
+                    counts[0], counts[1], counts[2], System.currentTimeMillis() - started);
+            return Map.of("books", counts[0], "borrows", counts[1], "fees", counts[2]);
+        } finally {
+            rebuilding.set(false);
+        }
+    }
+
+    // The increments of a delta built from zero, written over every shard: totals go to the first
+    // totals shard and the other shards are cleared
+    private static List<Write> snapshot(StatsDelta stats) {
+        Map<String, Map<String, Object>> shards = new LinkedHashMap<>();
+        for (String kind : List.of(StatsDelta.TOTALS, StatsDelta.TITLES, StatsDelta.MEMBERS)) {
+            for (int shard = 0; shard < StatsDelta.SHARDS; shard++) {
+                shards.put(StatsDelta.shardId(kind, shard), new LinkedHashMap<>());
+            }
+        }
+        for (Write write : stats.writes()) {
+            String documentId = write.id().startsWith(StatsDelta.TOTALS + "-")
+                    ? StatsDelta.shardId(StatsDelta.TOTALS, 0)
+                    : write.id();
+            shards.get(documentId).putAll(write.data());
+        }
+        List<Write> writes = new ArrayList<>();
+        shards.forEach((documentId, data) -> writes.add(Write.set(StatsDelta.COLLECTION, documentId, data)));
+        return writes;
+    }
+}
@@ -0,0 +1,127 @@
+package com.example.bureaucratic_system_backend.service;
+
+import com.example.bureaucratic_system_backend.model.Fees;
+import com.example.bureaucratic_system_backend.store.Write;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Changes to the statistics aggregates caused by one commit, turned into increments of the
+ * {@code stats} documents so they are committed together with the writes they describe.
+ *
+ * The aggregates are spread over {@link #SHARDS} documents per kind, since every loan, return and
+ * fee touches them and Firestore sustains only about one write per second to a single document:
+ * library-wide totals go to a random {@code totals-n}, and the entry of a title or a member always
+ * to the same {@code titles-n} or {@code members-n}, chosen by hash. Readers sum the shards
+ * ({@link StatisticsService}). A delta holds at most one write per document, {@link #MAX_WRITES}
+ * in all. Title and member entries share their shard document's 1 MiB limit, which bounds the
+ * catalog and membership sizes {@link #SHARDS} suits.
+ */
+final class StatsDelta {
+
+    static final String COLLECTION = "stats";
+    static final int SHARDS = 8;
+    static final int MAX_WRITES = 1 + 2 * SHARDS;
+
+    static final String TOTALS = "totals";
+    static final String TITLES = "titles";
+    static final String MEMBERS = "members";
+
+    private final Map<String, Long> totals = new LinkedHashMap<>();
+    // Shard document ID -> entry key -> field -> delta
+    private final Map<String, Map<String, Map<String, Long>>> entries = new LinkedHashMap<>();
+
+    StatsDelta total(String field, long delta) {
+        totals.merge(field, delta, Long::sum);
+        return this;
+    }
+
+    StatsDelta title(String name, String author, String field, long delta) {
+        return entry(TITLES, titleKey(name, author), field, delta);
+    }
+
+    StatsDelta member(String membershipId, String field, long delta) {
+        return entry(MEMBERS, membershipId, field, delta);
+    }
+
+    // A new borrow of a copy of the title; name and author may be null if unknown
+    StatsDelta loan(String name, String author, String membershipId) {
+        total("borrows", 1).total("activeBorrows", 1);
+        if (name != null && author != null) {
+            title(name, author, "loans", 1);
+        }
+        return member(membershipId, "borrows", 1);
+    }
+
+    StatsDelta returned(String name, String author, long loanDays) {
+        total("activeBorrows", -1).total("returnedBorrows", 1).total("loanDays", loanDays);
+        if (name != null && author != null) {
+            title(name, author, "returns", 1).title(name, author, "loanDays", loanDays);
+        }
+        return this;
+    }
+
+    // A fee counted in (sign 1) or taken out of (sign -1) the revenue and its member's entry
+    StatsDelta fee(Fees fee, int sign) {
+        long lifetime = sign * fee.getAmountCents();
+        return total("fees", sign)
+                .total("outstandingCents", sign * FeeLedgerBatch.outstandingCents(fee))
+                .total("lifetimeCents", lifetime)
+                .member(fee.getMembershipId(), "feeCents", lifetime);
+    }
+
+    List<Write> writes() {
+        List<Write> writes = new ArrayList<>();
+        Map<String, Long> totalDeltas = nonZero(totals);
+        if (!totalDeltas.isEmpty()) {
+            writes.add(Write.increment(COLLECTION, shardId(TOTALS, ThreadLocalRandom.current().nextInt(SHARDS)), totalDeltas));
+        }
+        entries.forEach((documentId, byKey) -> {
+            Map<String, Map<String, Long>> deltas = new LinkedHashMap<>();
+            byKey.forEach((key, fields) -> {
+                Map<String, Long> fieldDeltas = nonZero(fields);
+                if (!fieldDeltas.isEmpty()) {
+                    deltas.put(key, fieldDeltas);
+                }
+            });
+            if (!deltas.isEmpty()) {
+                writes.add(Write.increment(COLLECTION, documentId, deltas));
+            }
+        });
+        return writes;
+    }
+
+    // Entries of titles are keyed by author and name, separated by a line break
+    static String titleKey(String name, String author) {
+        return author + '\n' + name;
+    }
+
+    static String shardId(String kind, int shard) {
+        return kind + "-" + shard;
+    }
+
+    private StatsDelta entry(String kind, String key, String field, long delta) {
+        if (key == null) {
+            return this;
+        }
+        String documentId = shardId(kind, Math.floorMod(key.hashCode(), SHARDS));
+        entries.computeIfAbsent(documentId, id -> new LinkedHashMap<>())
+                .computeIfAbsent(key, k -> new LinkedHashMap<>())
+                .merge(field, delta, Long::sum);
+        return this;
+    }
+
+    private static Map<String, Long> nonZero(Map<String, Long> deltas) {
+        Map<String, Long> result = new LinkedHashMap<>();
+        deltas.forEach((field, delta) -> {
+            if (delta != 0) {
+                result.put(field, delta);
+            }
+        });
+        return result;
+    }
+}
@@ -0,0 +1,22 @@
+package com.example.bureaucratic_system_backend.store;
+
+import com.google.cloud.Timestamp;
+
+import java.util.List;
+
+/**
+ * Changes to one collection delivered to a {@link DocumentStore#listen} callback. The first
+ * change set after registering holds every existing document as {@code ADDED}.
+ *
+ * @param readTime when the store produced this change set
+ */
+public record ChangeSet(List<Change> changes, Timestamp readTime) {
+
+    public enum Type {
+        ADDED, MODIFIED, REMOVED
+    }
+
+    // For REMOVED changes, document holds the last known contents
+    public record Change(Type type, StoredDocument document) {
+    }
+}
@@ -0,0 +1,64 @@
+package com.example.bureaucratic_system_backend.store;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Converts the model classes to and from document data.
+ *
+ * Uses bean getters and setters like Firestore's own mapper, keeps null fields (queries such as
+ * {@code returnDate == null} rely on them) and ignores unknown fields. Numbers are normalized to
+ * Long and Double, which is what Firestore hands back, so both stores return the same types.
+ */
+public final class DocumentMapper {
+
+    static final ObjectMapper MAPPER = new ObjectMapper()
+            .configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, false);
+
+    private static final TypeReference<Map<String, Object>> DATA_TYPE = new TypeReference<>() {
+    };
+
+    private DocumentMapper() {
+    }
+
+    public static Map<String, Object> toData(Object value) {
+        if (value instanceof Map<?, ?> map) {
+            return normalize(map);
+        }
+        return normalize(MAPPER.convertValue(value, DATA_TYPE));
+    }
+
+    public static <T> T toObject(Map<String, Object> data, Class<T> type) {
+        return MAPPER.convertValue(data, type);
+    }
+
+    static Map<String, Object> normalize(Map<?, ?> map) {
+        Map<String, Object> result = new LinkedHashMap<>();
+        map.forEach((key, value) -> result.put(String.valueOf(key), normalizeValue(value)));
+        return result;
+    }
+
+    static Object normalizeValue(Object value) {
+        if (value instanceof Integer || value instanceof Short || value instanceof Byte) {
+            return ((Number) value).longValue();
+        }
+        if (value instanceof Float) {
+            return ((Float) value).doubleValue();
+        }
+        if (value instanceof Map<?, ?> map) {
+            return normalize(map);
+        }
+        if (value instanceof List<?> list) {
+            List<Object> result = new ArrayList<>(list.size());
+            list.forEach(item -> result.add(normalizeValue(item)));
+            return result;
+        }
+        return value;
+    }
+}
@@ -0,0 +1,39 @@
+package com.example.bureaucratic_system_backend.store;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Consumer;
+
+/**
+ * Document persistence used by {@link com.example.bureaucratic_system_backend.service.FirebaseService}.
+ *
+ * Implemented on top of Cloud Firestore ({@link FirestoreDocumentStore}) and by an embedded,
+ * single-node engine with a write-ahead log ({@link EmbeddedDocumentStore}); the backend picks
+ * one through {@code storage.backend}. Failed operations complete their future exceptionally.
+ */
+public interface DocumentStore extends AutoCloseable {
+
+    // Completes with null if the document does not exist
+    CompletableFuture<StoredDocument> get(String collection, String id);
+
+    CompletableFuture<List<StoredDocument>> query(Query query);
+
+    /**
+     * Applies all writes atomically, or none of them. Fails with {@link WriteConflictException}
+     * if a precondition does not hold.
+     */
+    CompletableFuture<Void> commit(List<Write> writes);
+
+    /**
+     * Calls {@code listener} with the current documents of the collection and then with every
+     * later change, in commit order.
+     */
+    void listen(String collection, Consumer<ChangeSet> listener);
+
+    // Largest number of writes accepted by one commit
+    int maxWritesPerCommit();
+
+    @Override
+    default void close() {
+    }
+}
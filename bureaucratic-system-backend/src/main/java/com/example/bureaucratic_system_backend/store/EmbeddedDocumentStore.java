@@ -0,0 +1,688 @@
+package com.example.bureaucratic_system_backend.store;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.google.cloud.Timestamp;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+
+/**
+ * Single-node {@link DocumentStore} that keeps every collection in memory and makes commits
+ * durable with an append-only write-ahead log.
+ *
+ * Each commit is validated, appended to {@code wal.log} as one checksummed record (and forced to
+ * disk when {@code fsync} is on) and only then applied, so a crash never exposes a write that
+ * would be lost on restart. Every {@code snapshotInterval} commits, and on shutdown, the whole
+ * state is written to {@code snapshot.json}. The snapshot is taken from a copy of the document
+ * references made under the commit lock, at which point the log is rotated to
+ * {@code wal-<sequence>.log}; serializing and forcing it happen on a background thread while
+ * commits go on, and the rotated logs it covers are deleted once it is on disk. Startup loads the
+ * snapshot and replays the rotated logs and then {@code wal.log}, skipping records the snapshot
+ * already holds; a torn record at the end of the log (a crash during an append) is discarded.
+ *
+ * Commits are serialized by one lock. A commit's documents are published together under the
+ * write side of a read-write lock that reads take shared, so a reader never sees part of a
+ * commit, and once any of its writes is visible all of them are. Queries scan the collection,
+ * which is fine at library scale since the hot lookups go through the in-memory indexes anyway.
+ *
+ * {@link #inMemory()} gives the same store without a log or snapshots, for benchmarks and tests.
+ */
+public class EmbeddedDocumentStore implements DocumentStore {
+
+    private static final Logger logger = LoggerFactory.getLogger(EmbeddedDocumentStore.class);
+
+    // Same cap as Firestore, so callers batch identically whichever store is configured
+    private static final int MAX_WRITES_PER_COMMIT = 500;
+    private static final int RECORD_HEADER_BYTES = Integer.BYTES + Long.BYTES; // length + CRC32
+
+    private static final TypeReference<Map<String, Object>> DATA_TYPE = new TypeReference<>() {
+    };
+
+    private final Map<String, NavigableMap<String, StoredDocument>> collections = new ConcurrentHashMap<>();
+    private final Map<String, List<Consumer<ChangeSet>>> listeners = new ConcurrentHashMap<>();
+    // One thread, so every listener sees change sets in commit order
+    private final ExecutorService listenerExecutor = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "store-listeners");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private final ReentrantLock commitLock = new ReentrantLock();
+    // Write side held while a commit's documents are published; reads hold the read side
+    private final ReentrantReadWriteLock stateLock = new ReentrantReadWriteLock();
+    private final Path walPath; // null when not persistent
+    private final Path snapshotPath;
+    private final boolean fsync;
+    private final int snapshotInterval;
+    private final ExecutorService snapshotExecutor; // null when not persistent
+
+    // Guarded by commitLock
+    private FileChannel wal;
+    private long sequence = 0;
+    private long lastVersionMicros = 0;
+    private int commitsSinceSnapshot = 0;
+    private CompletableFuture<Void> snapshotInFlight = CompletableFuture.completedFuture(null);
+    private boolean failed = false;
+    private boolean closed = false;
+    // Set by a background snapshot that failed, so the next commit tries again
+    private volatile boolean snapshotFailed = false;
+
+    public EmbeddedDocumentStore(Path directory, boolean fsync, int snapshotInterval) throws IOException {
+        if (snapshotInterval < 1) {
+            throw new IllegalArgumentException("Snapshot interval must be positive.");
+        }
+        this.walPath = directory.resolve("wal.log");
+        this.snapshotPath = directory.resolve("snapshot.json");
+        this.fsync = fsync;
+        this.snapshotInterval = snapshotInterval;
+        this.snapshotExecutor = Executors.newSingleThreadExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "store-snapshots");
+            thread.setDaemon(true);
+            return thread;
+        });
+
+        Files.createDirectories(directory);
+        long start = System.nanoTime();
+        long snapshotSequence = loadSnapshot();
+        int replayed = replayWal(snapshotSequence);
+        logger.info("Embedded store opened at {}: {} documents, {} log records replayed in {} ms.", directory,
+                documentCount(), replayed, TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+    }
+
+    private EmbeddedDocumentStore() {
+        this.walPath = null;
+        this.snapshotPath = null;
+        this.fsync = false;
+        this.snapshotInterval = Integer.MAX_VALUE;
+        this.snapshotExecutor = null;
+    }
+
+    // Store whose contents live only as long as the process; nothing is written to disk
+    public static EmbeddedDocumentStore inMemory() {
+        return new EmbeddedDocumentStore();
+    }
+
+    // ----------------------- Reads -----------------------
+
+    @Override
+    public CompletableFuture<StoredDocument> get(String collection, String id) {
+        stateLock.readLock().lock();
+        try {
+            NavigableMap<String, StoredDocument> documents = collections.get(collection);
+            return CompletableFuture.completedFuture(documents == null ? null : documents.get(id));
+        } finally {
+            stateLock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public CompletableFuture<List<StoredDocument>> query(Query query) {
+        List<StoredDocument> results = new ArrayList<>();
+        stateLock.readLock().lock();
+        try {
+            NavigableMap<String, StoredDocument> documents = collections.get(query.collection());
+            if (documents != null) {
+                Map<String, StoredDocument> range = (query.startAfter() != null)
+                        ? documents.tailMap(query.startAfter(), false)
+                        : documents;
+                for (StoredDocument document : range.values()) {
+                    if (matches(document, query.filters())) {
+                        results.add(document);
+                        if (query.limit() > 0 && results.size() == query.limit()) {
+                            break;
+                        }
+                    }
+                }
+            }
+        } finally {
+            stateLock.readLock().unlock();
+        }
+        return CompletableFuture.completedFuture(results);
+    }
+
+    private static boolean matches(StoredDocument document, Map<String, Object> filters) {
+        for (Map.Entry<String, Object> filter : filters.entrySet()) {
+            if (!document.data().containsKey(filter.getKey())
+                    || !valuesEqual(document.data().get(filter.getKey()), filter.getValue())) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean valuesEqual(Object stored, Object expected) {
+        if (stored instanceof Number a && expected instanceof Number b) {
+            if ((a instanceof Long) && (b instanceof Long)) {
+                return a.longValue() == b.longValue();
+            }
+            return a.doubleValue() == b.doubleValue();
+        }
+        return Objects.equals(stored, expected);
+    }
+
+    public int documentCount() {
+        return collections.values().stream().mapToInt(Map::size).sum();
+    }
+
+    // ----------------------- Writes -----------------------
+
+    @Override
+    public CompletableFuture<Void> commit(List<Write> writes) {
+        if (writes.size() > MAX_WRITES_PER_COMMIT) {
+            return CompletableFuture.failedFuture(new IllegalArgumentException(
+                    "At most " + MAX_WRITES_PER_COMMIT + " writes per commit, got " + writes.size() + "."));
+        }
+        commitLock.lock();
+        try {
+            if (failed || closed) {
+                throw new IllegalStateException("Embedded store is closed or failed; writes are rejected.");
+            }
+            long version = nextVersion();
+            Map<DocumentKey, Transition> transitions = resolve(writes, version, true);
+            long recordSequence = sequence + 1;
+            if (wal != null) {
+                appendToWal(recordSequence, version, writes);
+            }
+            sequence = recordSequence;
+            apply(transitions);
+            if (wal != null && (++commitsSinceSnapshot >= snapshotInterval || snapshotFailed) && snapshotInFlight.isDone()) {
+                try {
+                    startSnapshot();
+                } catch (IOException e) {
+                    // The commit is already durable in the log; retry the snapshot after the next one
+                    snapshotFailed = true;
+                    logger.error("Could not start embedded store snapshot: {}", e.getMessage());
+                }
+            }
+            return CompletableFuture.completedFuture(null);
+        } catch (RuntimeException | IOException e) {
+            return CompletableFuture.failedFuture(e);
+        } finally {
+            commitLock.unlock();
+        }
+    }
+
+    @Override
+    public int maxWritesPerCommit() {
+        return MAX_WRITES_PER_COMMIT;
+    }
+
+    private record DocumentKey(String collection, String id) {
+    }
+
+    // Document before and after a commit; either may be null
+    private record Transition(StoredDocument before, StoredDocument after) {
+    }
+
+    /**
+     * Works out the resulting document of every key the writes touch, in order, without changing
+     * the store. Preconditions are checked against the state as of the preceding writes.
+     */
+    private Map<DocumentKey, Transition> resolve(List<Write> writes, long versionMicros, boolean checkPreconditions) {
+        Timestamp version = Timestamp.ofTimeMicroseconds(versionMicros);
+        Map<DocumentKey, Transition> transitions = new LinkedHashMap<>();
+        for (Write write : writes) {
+            DocumentKey key = new DocumentKey(write.collection(), write.id());
+            Transition previous = transitions.get(key);
+            StoredDocument before = (previous != null) ? previous.before() : current(key);
+            StoredDocument current = (previous != null) ? previous.after() : before;
+
+            StoredDocument after = switch (write.type()) {
+                case SET -> new StoredDocument(write.id(), write.data(), version);
+                case CREATE -> {
+                    if (checkPreconditions && current != null) {
+                        throw new WriteConflictException("Document " + key.collection() + "/" + key.id() + " already exists.");
+                    }
+                    yield new StoredDocument(write.id(), write.data(), version);
+                }
+                case UPDATE -> {
+                    if (checkPreconditions && current == null) {
+                        throw new WriteConflictException("Document " + key.collection() + "/" + key.id() + " does not exist.");
+                    }
+                    if (checkPreconditions && write.expectedVersion() != null
+                            && !write.expectedVersion().equals(current.updateTime())) {
+                        throw new WriteConflictException("Document " + key.collection() + "/" + key.id() + " was modified.");
+                    }
+                    Map<String, Object> merged = new LinkedHashMap<>(current == null ? Map.of() : current.data());
+                    merged.putAll(write.data());
+                    write.removedFields().forEach(merged::remove);
+                    yield new StoredDocument(write.id(), merged, version);
+                }
+                case DELETE -> {
+                    if (checkPreconditions && write.expectedVersion() != null
+                            && (current == null || !write.expectedVersion().equals(current.updateTime()))) {
+                        throw new WriteConflictException("Document " + key.collection() + "/" + key.id() + " was modified.");
+                    }
+                    yield null;
+                }
+                case INCREMENT -> new StoredDocument(write.id(),
+                        increment(current == null ? Map.of() : current.data(), write.data()), version);
+            };
+            transitions.put(key, new Transition(before, after));
+        }
+        return transitions;
+    }
+
+    // Copy of data with the deltas added; nested maps of deltas are applied to nested maps
+    private static Map<String, Object> increment(Map<String, Object> data, Map<String, Object> deltas) {
+        Map<String, Object> incremented = new LinkedHashMap<>(data);
+        deltas.forEach((field, delta) -> {
+            Object value = incremented.get(field);
+            if (delta instanceof Map<?, ?> nested) {
+                @SuppressWarnings("unchecked")
+                Map<String, Object> nestedValue = (value instanceof Map<?, ?>) ? (Map<String, Object>) value : Map.of();
+                incremented.put(field, increment(nestedValue, DocumentMapper.normalize(nested)));
+            } else {
+                incremented.put(field, (value instanceof Number number ? number.longValue() : 0L) + ((Number) delta).longValue());
+            }
+        });
+        return incremented;
+    }
+
+    private StoredDocument current(DocumentKey key) {
+        NavigableMap<String, StoredDocument> documents = collections.get(key.collection());
+        return documents == null ? null : documents.get(key.id());
+    }
+
+    // Makes the transitions visible, all at once, and queues their change sets for the listeners
+    private void apply(Map<DocumentKey, Transition> transitions) {
+        Map<String, List<ChangeSet.Change>> changesByCollection = new HashMap<>();
+        stateLock.writeLock().lock();
+        try {
+            transitions.forEach((key, transition) -> {
+                NavigableMap<String, StoredDocument> documents =
+                        collections.computeIfAbsent(key.collection(), name -> new ConcurrentSkipListMap<>());
+                ChangeSet.Change change = null;
+                if (transition.after() != null) {
+                    documents.put(key.id(), transition.after());
+                    change = new ChangeSet.Change(transition.before() == null ? ChangeSet.Type.ADDED : ChangeSet.Type.MODIFIED,
+                            transition.after());
+                } else if (transition.before() != null) {
+                    documents.remove(key.id());
+                    change = new ChangeSet.Change(ChangeSet.Type.REMOVED, transition.before());
+                }
+                if (change != null) {
+                    changesByCollection.computeIfAbsent(key.collection(), name -> new ArrayList<>()).add(change);
+                }
+            });
+        } finally {
+            stateLock.writeLock().unlock();
+        }
+        Timestamp readTime = Timestamp.ofTimeMicroseconds(lastVersionMicros);
+        changesByCollection.forEach((collection, changes) -> dispatch(collection, new ChangeSet(changes, readTime)));
+    }
+
+    // Strictly increasing update times, even if the clock stalls or steps back
+    private long nextVersion() {
+        long now = TimeUnit.MILLISECONDS.toMicros(System.currentTimeMillis());
+        lastVersionMicros = Math.max(lastVersionMicros + 1, now);
+        return lastVersionMicros;
+    }
+
+    // ----------------------- Listeners -----------------------
+
+    @Override
+    public void listen(String collection, Consumer<ChangeSet> listener) {
+        // Registered under the commit lock so no commit falls between the initial state and the first change
+        commitLock.lock();
+        try {
+            listeners.computeIfAbsent(collection, name -> new CopyOnWriteArrayList<>()).add(listener);
+            List<ChangeSet.Change> initial = new ArrayList<>();
+            NavigableMap<String, StoredDocument> documents = collections.get(collection);
+            if (documents != null) {
+                documents.values().forEach(document -> initial.add(new ChangeSet.Change(ChangeSet.Type.ADDED, document)));
+            }
+            ChangeSet changeSet = new ChangeSet(initial, Timestamp.ofTimeMicroseconds(Math.max(lastVersionMicros, 1)));
+            listenerExecutor.execute(() -> deliver(listener, collection, changeSet));
+        } finally {
+            commitLock.unlock();
+        }
+    }
+
+    private void dispatch(String collection, ChangeSet changeSet) {
+        for (Consumer<ChangeSet> listener : listeners.getOrDefault(collection, List.of())) {
+            listenerExecutor.execute(() -> deliver(listener, collection, changeSet));
+        }
+    }
+
+    private static void deliver(Consumer<ChangeSet> listener, String collection, ChangeSet changeSet) {
+        try {
+            listener.accept(changeSet);
+        } catch (RuntimeException e) {
+            logger.error("Listener on {} failed: {}", collection, e.getMessage(), e);
+        }
+    }
+
+    // ----------------------- Write-ahead log -----------------------
+
+    private void appendToWal(long recordSequence, long versionMicros, List<Write> writes) throws IOException {
+        List<Map<String, Object>> encodedWrites = new ArrayList<>(writes.size());
+        for (Write write : writes) {
+            Map<String, Object> encoded = new LinkedHashMap<>();
+            encoded.put("t", write.type().name());
+            encoded.put("c", write.collection());
+            encoded.put("i", write.id());
+            encoded.put("d", write.data());
+            if (!write.removedFields().isEmpty()) {
+                encoded.put("r", write.removedFields());
+            }
+            encodedWrites.add(encoded);
+        }
+        Map<String, Object> record = new LinkedHashMap<>();
+        record.put("s", recordSequence);
+        record.put("v", versionMicros);
+        record.put("w", encodedWrites);
+        byte[] payload = DocumentMapper.MAPPER.writeValueAsBytes(record);
+
+        CRC32 crc = new CRC32();
+        crc.update(payload);
+        ByteBuffer buffer = ByteBuffer.allocate(RECORD_HEADER_BYTES + payload.length);
+        buffer.putInt(payload.length).putLong(crc.getValue()).put(payload).flip();
+
+        long position = wal.position();
+        try {
+            while (buffer.hasRemaining()) {
+                wal.write(buffer);
+            }
+            if (fsync) {
+                wal.force(false);
+            }
+        } catch (IOException e) {
+            // Drop the partial record so later appends do not land behind a torn one
+            try {
+                wal.truncate(position);
+                wal.position(position);
+            } catch (IOException truncateFailure) {
+                failed = true;
+                logger.error("Could not roll back a failed log append; rejecting further writes.", truncateFailure);
+            }
+            throw e;
+        }
+    }
+
+    // Replays the rotated logs not yet covered by a snapshot, then the active log
+    private int replayWal(long snapshotSequence) throws IOException {
+        int replayed = 0;
+        for (Path rotated : rotatedLogs()) {
+            if (rotatedSequence(rotated) <= snapshotSequence) {
+                Files.delete(rotated); // Left behind by a crash right after the snapshot was written
+                continue;
+            }
+            try (FileChannel channel = FileChannel.open(rotated, StandardOpenOption.READ)) {
+                replayed += replayRecords(channel, snapshotSequence);
+            }
+        }
+
+        wal = FileChannel.open(walPath, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        replayed += replayRecords(wal, snapshotSequence);
+        long validEnd = wal.position();
+        if (validEnd < wal.size()) {
+            logger.warn("Discarding {} bytes of incomplete log records at the end of {}.", wal.size() - validEnd, walPath);
+            wal.truncate(validEnd);
+        }
+        wal.position(validEnd);
+        return replayed;
+    }
+
+    // Applies the log's records after snapshotSequence, leaving the channel at the end of the last valid one
+    private int replayRecords(FileChannel channel, long snapshotSequence) throws IOException {
+        int replayed = 0;
+        long validEnd = 0;
+        ByteBuffer header = ByteBuffer.allocate(RECORD_HEADER_BYTES);
+        channel.position(0);
+        while (true) {
+            header.clear();
+            if (readFully(channel, header) < RECORD_HEADER_BYTES) {
+                break;
+            }
+            header.flip();
+            int length = header.getInt();
+            long expectedCrc = header.getLong();
+            if (length < 0 || length > channel.size() - channel.position()) {
+                break;
+            }
+            ByteBuffer payload = ByteBuffer.allocate(length);
+            if (readFully(channel, payload) < length) {
+                break;
+            }
+            CRC32 crc = new CRC32();
+            crc.update(payload.array());
+            if (crc.getValue() != expectedCrc) {
+                break;
+            }
+
+            JsonNode record = DocumentMapper.MAPPER.readTree(payload.array());
+            long recordSequence = record.get("s").asLong();
+            if (recordSequence > snapshotSequence) {
+                replayRecord(record);
+                replayed++;
+            }
+            validEnd = channel.position();
+        }
+        channel.position(validEnd);
+        return replayed;
+    }
+
+    private void replayRecord(JsonNode record) {
+        List<Write> writes = new ArrayList<>();
+        for (JsonNode encoded : record.get("w")) {
+            Map<String, Object> data = DocumentMapper.normalize(DocumentMapper.MAPPER.convertValue(encoded.get("d"), DATA_TYPE));
+            List<String> removedFields = new ArrayList<>();
+            if (encoded.has("r")) {
+                encoded.get("r").forEach(field -> removedFields.add(field.asText()));
+            }
+            writes.add(new Write(Write.Type.valueOf(encoded.get("t").asText()), encoded.get("c").asText(),
+                    encoded.get("i").asText(), data, null, removedFields));
+        }
+        sequence = record.get("s").asLong();
+        lastVersionMicros = Math.max(lastVersionMicros, record.get("v").asLong());
+        apply(resolve(writes, record.get("v").asLong(), false));
+    }
+
+    private static int readFully(FileChannel channel, ByteBuffer buffer) throws IOException {
+        int total = 0;
+        while (buffer.hasRemaining()) {
+            int read = channel.read(buffer);
+            if (read < 0) {
+                break;
+            }
+            total += read;
+        }
+        return total;
+    }
+
+    // ----------------------- Snapshots -----------------------
+
+    // Document references as of one sequence; documents are immutable, so this is a consistent view
+    private record SnapshotView(long sequence, long versionMicros, Map<String, List<StoredDocument>> collections) {
+    }
+
+    // Caller holds commitLock; the view is written on the snapshot thread while commits go on
+    private void startSnapshot() throws IOException {
+        SnapshotView view = captureView();
+        rotateWal();
+        commitsSinceSnapshot = 0;
+        snapshotFailed = false;
+        snapshotInFlight = CompletableFuture.runAsync(() -> {
+            try {
+                writeSnapshot(view);
+            } catch (IOException | RuntimeException e) {
+                // The rotated logs stay until a later snapshot covers them, so nothing is lost
+                snapshotFailed = true;
+                logger.error("Could not write embedded store snapshot: {}", e.getMessage());
+            }
+        }, snapshotExecutor);
+    }
+
+    // Caller holds commitLock, so no commit is applied while the references are copied
+    private SnapshotView captureView() {
+        Map<String, List<StoredDocument>> view = new LinkedHashMap<>();
+        collections.forEach((collection, documents) -> view.put(collection, new ArrayList<>(documents.values())));
+        return new SnapshotView(sequence, lastVersionMicros, view);
+    }
+
+    // Moves the active log aside as wal-<last sequence>.log, forced so a rotated log is never torn
+    private void rotateWal() throws IOException {
+        if (wal.size() == 0) {
+            return; // Nothing logged since the last rotation, whose log may still be waiting for its snapshot
+        }
+        wal.force(true);
+        wal.close();
+        try {
+            Files.move(walPath, walPath.resolveSibling(String.format("wal-%019d.log", sequence)),
+                    StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            // On a failed move the records stay in wal.log and are appended after
+            wal = FileChannel.open(walPath, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+            wal.position(wal.size());
+        }
+    }
+
+    private void writeSnapshot(SnapshotView view) throws IOException {
+        long start = System.nanoTime();
+        int documents = 0;
+        Path temporary = snapshotPath.resolveSibling("snapshot.json.tmp");
+        try (FileChannel channel = FileChannel.open(temporary, StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+             OutputStream output = new BufferedOutputStream(Channels.newOutputStream(channel), 1 << 16);
+             JsonGenerator generator = DocumentMapper.MAPPER.getFactory().createGenerator(output)) {
+            generator.writeStartObject();
+            generator.writeNumberField("sequence", view.sequence());
+            generator.writeNumberField("version", view.versionMicros());
+            generator.writeObjectFieldStart("collections");
+            for (Map.Entry<String, List<StoredDocument>> collection : view.collections().entrySet()) {
+                generator.writeObjectFieldStart(collection.getKey());
+                for (StoredDocument document : collection.getValue()) {
+                    generator.writeObjectFieldStart(document.id());
+                    generator.writeNumberField("v", toMicros(document.updateTime()));
+                    generator.writeObjectField("d", document.data());
+                    generator.writeEndObject();
+                    documents++;
+                }
+                generator.writeEndObject();
+            }
+            generator.writeEndObject();
+            generator.writeEndObject();
+            generator.flush();
+            channel.force(true);
+        }
+        Files.move(temporary, snapshotPath, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+
+        // The rotated logs up to the view are now covered by the snapshot; records are also
+        // skipped by sequence on replay, so a crash before they are deleted is harmless
+        for (Path rotated : rotatedLogs()) {
+            if (rotatedSequence(rotated) <= view.sequence()) {
+                Files.delete(rotated);
+            }
+        }
+        logger.info("Embedded store snapshot written at sequence {} ({} documents) in {} ms.", view.sequence(),
+                documents, TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+    }
+
+    // Rotated logs in sequence order
+    private List<Path> rotatedLogs() throws IOException {
+        try (Stream<Path> files = Files.list(walPath.getParent())) {
+            return files.filter(path -> path.getFileName().toString().matches("wal-\\d{19}\\.log"))
+                    .sorted()
+                    .toList();
+        }
+    }
+
+    private static long rotatedSequence(Path rotated) {
+        String name = rotated.getFileName().toString();
+        return Long.parseLong(name.substring("wal-".length(), name.length() - ".log".length()));
+    }
+
+    private long loadSnapshot() throws IOException {
+        if (!Files.exists(snapshotPath)) {
+            return 0;
+        }
+        JsonNode snapshot = DocumentMapper.MAPPER.readTree(snapshotPath.toFile());
+        Iterator<Map.Entry<String, JsonNode>> collectionNodes = snapshot.get("collections").fields();
+        while (collectionNodes.hasNext()) {
+            Map.Entry<String, JsonNode> collection = collectionNodes.next();
+            NavigableMap<String, StoredDocument> documents = new ConcurrentSkipListMap<>();
+            Iterator<Map.Entry<String, JsonNode>> documentNodes = collection.getValue().fields();
+            while (documentNodes.hasNext()) {
+                Map.Entry<String, JsonNode> document = documentNodes.next();
+                Map<String, Object> data = DocumentMapper.normalize(
+                        DocumentMapper.MAPPER.convertValue(document.getValue().get("d"), DATA_TYPE));
+                Timestamp version = Timestamp.ofTimeMicroseconds(document.getValue().get("v").asLong());
+                documents.put(document.getKey(), new StoredDocument(document.getKey(), data, version));
+            }
+            collections.put(collection.getKey(), documents);
+        }
+        sequence = snapshot.get("sequence").asLong();
+        lastVersionMicros = snapshot.get("version").asLong();
+        return sequence;
+    }
+
+    private static long toMicros(Timestamp timestamp) {
+        return TimeUnit.SECONDS.toMicros(timestamp.getSeconds()) + TimeUnit.NANOSECONDS.toMicros(timestamp.getNanos());
+    }
+
+    // ----------------------- Lifecycle -----------------------
+
+    @Override
+    public void close() {
+        commitLock.lock();
+        try {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            if (wal == null) {
+                return; // In-memory store
+            }
+            snapshotInFlight.join();
+            // Also covers records replayed at startup or left behind by a skipped or failed snapshot
+            if (!failed && (wal.size() > 0 || !rotatedLogs().isEmpty())) {
+                SnapshotView view = captureView();
+                rotateWal();
+                writeSnapshot(view); // Next startup then has nothing to replay
+            }
+            wal.close();
+            wal = null;
+        } catch (IOException e) {
+            logger.error("Error closing embedded store: {}", e.getMessage());
+        } finally {
+            commitLock.unlock();
+            listenerExecutor.shutdown();
+            if (snapshotExecutor != null) {
+                snapshotExecutor.shutdown();
+            }
+        }
+    }
+}
@@ -0,0 +1,201 @@
+package com.example.bureaucratic_system_backend.store;
+
+import com.google.api.core.ApiFuture;
+import com.google.api.core.ApiFutureCallback;
+import com.google.api.core.ApiFutures;
+import com.google.api.gax.rpc.ApiException;
+import com.google.cloud.firestore.DocumentChange;
+import com.google.cloud.firestore.DocumentReference;
+import com.google.cloud.firestore.DocumentSnapshot;
+import com.google.cloud.firestore.FieldPath;
+import com.google.cloud.firestore.FieldValue;
+import com.google.cloud.firestore.Firestore;
+import com.google.cloud.firestore.FirestoreException;
+import com.google.cloud.firestore.Precondition;
+import com.google.cloud.firestore.SetOptions;
+import com.google.cloud.firestore.WriteBatch;
+import com.google.common.util.concurrent.MoreExecutors;
+import com.google.firebase.cloud.FirestoreClient;
+import io.grpc.Status;
+import io.grpc.StatusRuntimeException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Consumer;
+
+/**
+ * {@link DocumentStore} backed by Cloud Firestore through the Firebase Admin SDK.
+ */
+public class FirestoreDocumentStore implements DocumentStore {
+
+    private static final Logger logger = LoggerFactory.getLogger(FirestoreDocumentStore.class);
+
+    // Firestore rejects batched writes with more than 500 operations
+    private static final int MAX_BATCH_WRITES = 500;
+
+    private static Firestore getFirestore() {
+        return FirestoreClient.getFirestore();
+    }
+
+    @Override
+    public CompletableFuture<StoredDocument> get(String collection, String id) {
+        return toCompletableFuture(getFirestore().collection(collection).document(id).get())
+                .thenApply(snapshot -> snapshot.exists() ? toStored(snapshot) : null);
+    }
+
+    @Override
+    public CompletableFuture<List<StoredDocument>> query(Query query) {
+        com.google.cloud.firestore.Query firestoreQuery = getFirestore().collection(query.collection());
+        for (Map.Entry<String, Object> filter : query.filters().entrySet()) {
+            firestoreQuery = firestoreQuery.whereEqualTo(filter.getKey(), filter.getValue());
+        }
+        if (query.startAfter() != null) {
+            firestoreQuery = firestoreQuery.orderBy(FieldPath.documentId()).startAfter(query.startAfter());
+        }
+        if (query.limit() > 0) {
+            firestoreQuery = firestoreQuery.limit(query.limit());
+        }
+        return toCompletableFuture(firestoreQuery.get())
+                .thenApply(snapshot -> {
+                    List<StoredDocument> documents = new ArrayList<>(snapshot.size());
+                    snapshot.getDocuments().forEach(document -> documents.add(toStored(document)));
+                    return documents;
+                });
+    }
+
+    @Override
+    public CompletableFuture<Void> commit(List<Write> writes) {
+        if (writes.size() > MAX_BATCH_WRITES) {
+            return CompletableFuture.failedFuture(new IllegalArgumentException(
+                    "At most " + MAX_BATCH_WRITES + " writes per commit, got " + writes.size() + "."));
+        }
+        Firestore firestore = getFirestore();
+        WriteBatch batch = firestore.batch();
+        for (Write write : writes) {
+            DocumentReference ref = firestore.collection(write.collection()).document(write.id());
+            switch (write.type()) {
+                case SET -> batch.set(ref, write.data());
+                case CREATE -> batch.create(ref, write.data());
+                case UPDATE -> {
+                    Map<String, Object> fields = write.data();
+                    if (!write.removedFields().isEmpty()) {
+                        fields = new HashMap<>(fields);
+                        for (String removed : write.removedFields()) {
+                            fields.put(removed, FieldValue.delete());
+                        }
+                    }
+                    if (write.expectedVersion() != null) {
+                        batch.update(ref, fields, Precondition.updatedAt(write.expectedVersion()));
+                    } else {
+                        batch.update(ref, fields);
+                    }
+                }
+                case DELETE -> {
+                    if (write.expectedVersion() != null) {
+                        batch.delete(ref, Precondition.updatedAt(write.expectedVersion()));
+                    } else {
+                        batch.delete(ref);
+                    }
+                }
+                case INCREMENT -> batch.set(ref, toIncrements(write.data()), SetOptions.merge());
+            }
+        }
+        CompletableFuture<Void> result = new CompletableFuture<>();
+        toCompletableFuture(batch.commit()).whenComplete((results, error) -> {
+            if (error == null) {
+                result.complete(null);
+            } else if (isWriteConflict(error)) {
+                result.completeExceptionally(new WriteConflictException(error.getMessage(), error));
+            } else {
+                result.completeExceptionally(error);
+            }
+        });
+        return result;
+    }
+
+    @Override
+    public void listen(String collection, Consumer<ChangeSet> listener) {
+        getFirestore().collection(collection).addSnapshotListener((snapshots, e) -> {
+            if (e != null) {
+                logger.error("Error listening to {}: {}", collection, e.getMessage());
+                return;
+            }
+            if (snapshots == null) {
+                return;
+            }
+            List<ChangeSet.Change> changes = new ArrayList<>(snapshots.getDocumentChanges().size());
+            for (DocumentChange change : snapshots.getDocumentChanges()) {
+                changes.add(new ChangeSet.Change(toChangeType(change.getType()), toStored(change.getDocument())));
+            }
+            listener.accept(new ChangeSet(changes, snapshots.getReadTime()));
+        });
+    }
+
+    @Override
+    public int maxWritesPerCommit() {
+        return MAX_BATCH_WRITES;
+    }
+
+    // ----------------------- Conversion -----------------------
+
+    private static StoredDocument toStored(DocumentSnapshot snapshot) {
+        Map<String, Object> data = snapshot.getData();
+        return new StoredDocument(snapshot.getId(), data == null ? Map.of() : data, snapshot.getUpdateTime());
+    }
+
+    // Merged set of FieldValue.increment sentinels, nested like the deltas
+    private static Map<String, Object> toIncrements(Map<String, Object> deltas) {
+        Map<String, Object> increments = new HashMap<>();
+        deltas.forEach((field, delta) -> increments.put(field, (delta instanceof Map<?, ?> nested)
+                ? toIncrements(DocumentMapper.normalize(nested))
+                : FieldValue.increment(((Number) delta).longValue())));
+        return increments;
+    }
+
+    private static ChangeSet.Type toChangeType(DocumentChange.Type type) {
+        return switch (type) {
+            case ADDED -> ChangeSet.Type.ADDED;
+            case MODIFIED -> ChangeSet.Type.MODIFIED;
+            case REMOVED -> ChangeSet.Type.REMOVED;
+        };
+    }
+
+    private static boolean isWriteConflict(Throwable error) {
+        for (Throwable t = error; t != null; t = t.getCause()) {
+            Status.Code code = null;
+            if (t instanceof FirestoreException firestoreException && firestoreException.getStatus() != null) {
+                code = firestoreException.getStatus().getCode();
+            } else if (t instanceof StatusRuntimeException statusException) {
+                code = statusException.getStatus().getCode();
+            } else if (t instanceof ApiException apiException) {
+                code = Status.Code.valueOf(apiException.getStatusCode().getCode().name());
+            }
+            if (code == Status.Code.FAILED_PRECONDITION || code == Status.Code.ALREADY_EXISTS
+                    || code == Status.Code.ABORTED || code == Status.Code.NOT_FOUND) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static <T> CompletableFuture<T> toCompletableFuture(ApiFuture<T> apiFuture) {
+        CompletableFuture<T> result = new CompletableFuture<>();
+        ApiFutures.addCallback(apiFuture, new ApiFutureCallback<T>() {
+            @Override
+            public void onSuccess(T value) {
+                result.complete(value);
+            }
+
+            @Override
+            public void onFailure(Throwable t) {
+                result.completeExceptionally(t);
+            }
+        }, MoreExecutors.directExecutor());
+        return result;
+    }
+}
@@ -0,0 +1,98 @@
+package com.example.bureaucratic_system_backend.store;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * Records the latency of every store operation in the {@code store.operation} timer, tagged with
+ * the operation, the collection and whether it succeeded, conflicted or failed.
+ *
+ * The timer is measured until the returned future completes, so it covers the round trip to
+ * Firestore and not just the time to issue the call.
+ */
+public class InstrumentedDocumentStore implements DocumentStore {
+
+    private final DocumentStore delegate;
+    private final MeterRegistry meterRegistry;
+    // Timers are looked up once per tag combination, not on every call
+    private final Map<String, Timer> timers = new ConcurrentHashMap<>();
+
+    public InstrumentedDocumentStore(DocumentStore delegate, MeterRegistry meterRegistry) {
+        this.delegate = delegate;
+        this.meterRegistry = meterRegistry;
+    }
+
+    @Override
+    public CompletableFuture<StoredDocument> get(String collection, String id) {
+        return timed("get", collection, System.nanoTime(), delegate.get(collection, id));
+    }
+
+    @Override
+    public CompletableFuture<List<StoredDocument>> query(Query query) {
+        return timed("query", query.collection(), System.nanoTime(), delegate.query(query));
+    }
+
+    @Override
+    public CompletableFuture<Void> commit(List<Write> writes) {
+        return timed("commit", collectionsOf(writes), System.nanoTime(), delegate.commit(writes));
+    }
+
+    @Override
+    public void listen(String collection, Consumer<ChangeSet> listener) {
+        delegate.listen(collection, listener);
+    }
+
+    @Override
+    public int maxWritesPerCommit() {
+        return delegate.maxWritesPerCommit();
+    }
+
+    @Override
+    public void close() {
+        delegate.close();
+    }
+
+    private <T> CompletableFuture<T> timed(String operation, String collection, long start, CompletableFuture<T> result) {
+        result.whenComplete((value, error) -> {
+            Throwable cause = (error instanceof CompletionException) ? error.getCause() : error;
+            String outcome = cause == null ? "success" : (cause instanceof WriteConflictException ? "conflict" : "error");
+            timer(operation, collection, outcome).record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        });
+        return result;
+    }
+
+    private Timer timer(String operation, String collection, String outcome) {
+        return timers.computeIfAbsent(operation + '|' + collection + '|' + outcome, key -> Timer.builder("store.operation")
+                .description("Latency of document store operations")
+                .tag("operation", operation)
+                .tag("collection", collection)
+                .tag("outcome", outcome)
+                .publishPercentileHistogram()
+                .register(meterRegistry));
+    }
+
+    // A loan commit touches books and borrows; it is tagged "books+borrows"
+    private static String collectionsOf(List<Write> writes) {
+        if (writes.isEmpty()) {
+            return "none";
+        }
+        String first = writes.get(0).collection();
+        for (Write write : writes) {
+            if (!write.collection().equals(first)) {
+                TreeSet<String> collections = new TreeSet<>();
+                writes.forEach(w -> collections.add(w.collection()));
+                return String.join("+", collections);
+            }
+        }
+        return first;
+    }
+}
@@ -0,0 +1,38 @@
+package com.example.bureaucratic_system_backend.store;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Equality query over one collection, e.g.
+ * {@code Query.of("books").whereEqualTo("name", title).limit(1)}. As in Firestore, a filter on
+ * null only matches documents that store the field with a null value. Results come back ordered
+ * by document ID, so {@link #startAfter} with the last ID of a page fetches the next one.
+ */
+public record Query(String collection, Map<String, Object> filters, int limit, String startAfter) {
+
+    public Query {
+        filters = Collections.unmodifiableMap(filters);
+    }
+
+    public static Query of(String collection) {
+        return new Query(collection, Map.of(), 0, null);
+    }
+
+    public Query whereEqualTo(String field, Object value) {
+        Map<String, Object> combined = new LinkedHashMap<>(filters);
+        combined.put(field, DocumentMapper.normalizeValue(value));
+        return new Query(collection, combined, limit, startAfter);
+    }
+
+    // 0 means no limit
+    public Query limit(int limit) {
+        return new Query(collection, filters, limit, startAfter);
+    }
+
+    // Only documents whose ID sorts after documentId; null starts from the beginning
+    public Query startAfter(String documentId) {
+        return new Query(collection, filters, limit, documentId);
+    }
+}
@@ -0,0 +1,40 @@
+package com.example.bureaucratic_system_backend.store;
+
+import com.google.cloud.Timestamp;
+
+import java.util.Collections;
+import java.util.Map;
+
+/**
+ * A document as read from a {@link DocumentStore}. {@code updateTime} is the version of the
+ * document and can be passed back as the precondition of {@link Write#update(String, String, Map, Timestamp)}.
+ */
+public record StoredDocument(String id, Map<String, Object> data, Timestamp updateTime) {
+
+    public StoredDocument {
+        data = Collections.unmodifiableMap(data);
+    }
+
+    public Object get(String field) {
+        return data.get(field);
+    }
+
+    public String getString(String field) {
+        Object value = data.get(field);
+        return value == null ? null : value.toString();
+    }
+
+    public Boolean getBoolean(String field) {
+        Object value = data.get(field);
+        return value instanceof Boolean bool ? bool : null;
+    }
+
+    public Long getLong(String field) {
+        Object value = data.get(field);
+        return value instanceof Number number ? number.longValue() : null;
+    }
+
+    public <T> T toObject(Class<T> type) {
+        return DocumentMapper.toObject(data, type);
+    }
+}
@@ -0,0 +1,66 @@
+package com.example.bureaucratic_system_backend.store;
+
+import com.google.cloud.Timestamp;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * One operation of an atomic {@link DocumentStore#commit}.
+ *
+ * {@code CREATE} fails if the document exists, {@code UPDATE} fails if it does not and, when
+ * {@code expectedVersion} is set, if its update time changed; either failure rejects the whole
+ * commit with a {@link WriteConflictException}. An {@code UPDATE} also removes the fields listed in
+ * {@code removedFields}. {@code DELETE} with an {@code expectedVersion}
+ * fails the same way. {@code INCREMENT} adds its values to numeric fields, creating the document
+ * and the fields as needed, so counters can be kept without reading them first.
+ */
+public record Write(Type type, String collection, String id, Map<String, Object> data, Timestamp expectedVersion,
+                    List<String> removedFields) {
+
+    public enum Type {
+        SET, CREATE, UPDATE, DELETE, INCREMENT
+    }
+
+    public Write(Type type, String collection, String id, Map<String, Object> data, Timestamp expectedVersion) {
+        this(type, collection, id, data, expectedVersion, List.of());
+    }
+
+    public static Write set(String collection, String id, Object value) {
+        return new Write(Type.SET, collection, id, DocumentMapper.toData(value), null);
+    }
+
+    public static Write create(String collection, String id, Object value) {
+        return new Write(Type.CREATE, collection, id, DocumentMapper.toData(value), null);
+    }
+
+    // Merges the given fields into the existing document
+    public static Write update(String collection, String id, Map<String, Object> fields) {
+        return new Write(Type.UPDATE, collection, id, DocumentMapper.toData(fields), null);
+    }
+
+    public static Write update(String collection, String id, Map<String, Object> fields, Timestamp expectedVersion) {
+        return new Write(Type.UPDATE, collection, id, DocumentMapper.toData(fields), expectedVersion);
+    }
+
+    // Merges the given fields and drops the removed ones, e.g. fields of an older document format
+    public static Write update(String collection, String id, Map<String, Object> fields, List<String> removedFields,
+                               Timestamp expectedVersion) {
+        return new Write(Type.UPDATE, collection, id, DocumentMapper.toData(fields), expectedVersion,
+                List.copyOf(removedFields));
+    }
+
+    public static Write delete(String collection, String id) {
+        return new Write(Type.DELETE, collection, id, Map.of(), null);
+    }
+
+    public static Write delete(String collection, String id, Timestamp expectedVersion) {
+        return new Write(Type.DELETE, collection, id, Map.of(), expectedVersion);
+    }
+
+    // Adds each delta to the field of the same name (a missing field counts as 0); a nested map
+    // of deltas increments the fields of the map field of that name
+    public static Write increment(String collection, String id, Map<String, ?> deltas) {
+        return new Write(Type.INCREMENT, collection, id, DocumentMapper.toData(deltas), null);
+    }
+}
@@ -0,0 +1,18 @@
+package com.example.bureaucratic_system_backend.store;
+
+/**
+ * A commit was rejected because a precondition no longer held: a created document already
+ * existed, or an updated one was missing or had changed since it was read.
+ */
+public class WriteConflictException extends RuntimeException {
+
+    private static final long serialVersionUID = 1L;
+
+    public WriteConflictException(String message) {
+        super(message);
+    }
+
+    public WriteConflictException(String message, Throwable cause) {
+        super(message, cause);
+    }
+}
@@ -0,0 +1,105 @@
+package com.example.bureaucratic_system_backend.service;
+
+import com.example.bureaucratic_system_backend.model.LoanRequest;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class FairShareLoanQueueTest {
+
+    // ----------------------- Round robin -----------------------
+
+    @Test
+    void testQuantumOfOneAlternatesBetweenCitizens() {
+        FairShareLoanQueue queue = new FairShareLoanQueue(16, 8, 1);
+        offerBursts(queue);
+        assertEquals(List.of("A1", "B1", "C1", "A2", "B2", "A3"), drain(queue));
+    }
+
+    @Test
+    void testQuantumOfTwoServesTwoRequestsPerTurn() {
+        FairShareLoanQueue queue = new FairShareLoanQueue(16, 8, 2);
+        offerBursts(queue);
+        assertEquals(List.of("A1", "A2", "B1", "B2", "C1", "A3"), drain(queue));
+    }
+
+    @Test
+    void testInvalidSettingsAreRejected() {
+        assertThrows(IllegalArgumentException.class, () -> new FairShareLoanQueue(0, 1, 1));
+        assertThrows(IllegalArgumentException.class, () -> new FairShareLoanQueue(4, 0, 1));
+        assertThrows(IllegalArgumentException.class, () -> new FairShareLoanQueue(4, 1, 0));
+    }
+
+    // ----------------------- Limits -----------------------
+
+    @Test
+    void testRejectsPastPerCitizenLimitAndCapacity() {
+        FairShareLoanQueue queue = new FairShareLoanQueue(4, 2, 1);
+        assertEquals("A1", queue.offer("Title 1", "Author", "A", "A1"));
+        assertEquals("A2", queue.offer("Title 2", "Author", "A", "A2"));
+        assertNull(queue.offer("Title 3", "Author", "A", "A3")); // A's share is full
+
+        assertEquals("B1", queue.offer("Title 1", "Author", "B", "B1"));
+        assertEquals("B2", queue.offer("Title 2", "Author", "B", "B2"));
+        assertNull(queue.offer("Title 1", "Author", "C", "C1")); // The queue is full
+        assertEquals(4, queue.size());
+
+        // Serving A's first request frees a place in the queue and in A's share
+        LoanRequest request = new LoanRequest();
+        assertTrue(queue.poll(request));
+        assertEquals("A1", request.getTicketId());
+        assertEquals("A3", queue.offer("Title 3", "Author", "A", "A3"));
+        assertNull(queue.offer("Title 1", "Author", "C", "C1"));
+    }
+
+    // ----------------------- Duplicates -----------------------
+
+    @Test
+    void testDuplicateSharesPendingTicketUntilTaken() {
+        FairShareLoanQueue queue = new FairShareLoanQueue(16, 8, 1);
+        assertEquals("t1", queue.offer("Dune", "Frank Herbert", "A", "t1"));
+        assertEquals("t1", queue.offer("Dune", "Frank Herbert", "A", "t2"));
+        assertEquals("t3", queue.offer("Dune Messiah", "Frank Herbert", "A", "t3")); // Another title
+        assertEquals("t4", queue.offer("Dune", "Frank Herbert", "B", "t4")); // Another citizen
+        assertEquals(3, queue.size());
+        assertEquals(1, queue.getSuppressedDuplicates());
+
+        LoanRequest request = new LoanRequest();
+        assertTrue(queue.poll(request));
+        assertEquals("t1", request.getTicketId());
+        assertEquals("A", request.getCitizenId());
+        assertEquals("Dune", request.getBookTitle());
+
+        // Handed to a counter, so the same request can be queued again
+        assertEquals("t5", queue.offer("Dune", "Frank Herbert", "A", "t5"));
+        assertEquals(List.of("t4", "t3", "t5"), drain(queue));
+        assertEquals(1, queue.getSuppressedDuplicates());
+    }
+
+    // ----------------------- Helpers -----------------------
+
+    // A bursts three requests, B two and C one, all before any is served
+    private static void offerBursts(FairShareLoanQueue queue) {
+        for (int i = 1; i <= 3; i++) {
+            queue.offer("Title " + i, "Author", "A", "A" + i);
+        }
+        for (int i = 1; i <= 2; i++) {
+            queue.offer("Title " + i, "Author", "B", "B" + i);
+        }
+        queue.offer("Title 1", "Author", "C", "C1");
+    }
+
+    // Ticket IDs in the order the queue serves them
+    private static List<String> drain(FairShareLoanQueue queue) {
+        List<String> served = new ArrayList<>();
+        LoanRequest request = new LoanRequest();
+        while (queue.poll(request)) {
+            served.add(request.getTicketId());
+        }
+        assertEquals(0, queue.size());
+        return served;
+    }
+}
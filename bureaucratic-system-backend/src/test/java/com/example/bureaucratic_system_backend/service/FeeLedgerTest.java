@@ -0,0 +1,157 @@
+package com.example.bureaucratic_system_backend.service;
+
+import com.example.bureaucratic_system_backend.model.Borrows;
+import com.example.bureaucratic_system_backend.model.FeeBalance;
+import com.example.bureaucratic_system_backend.model.Fees;
+import com.example.bureaucratic_system_backend.store.EmbeddedDocumentStore;
+import com.example.bureaucratic_system_backend.store.StoredDocument;
+import com.example.bureaucratic_system_backend.store.Write;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDate;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class FeeLedgerTest {
+
+    private static final String MEMBER = "M1";
+
+    private EmbeddedDocumentStore store;
+    private FeeService feeService;
+    private OverdueFeeAccrualJob accrualJob;
+
+    @BeforeEach
+    void setUp() {
+        store = EmbeddedDocumentStore.inMemory();
+        FirebaseService.useDocumentStore(store);
+        feeService = new FeeService(new FirebaseService(new MembershipCache(100)), new KeyedLockRegistry());
+        accrualJob = new OverdueFeeAccrualJob(true, 200);
+    }
+
+    @AfterEach
+    void tearDown() {
+        store.close();
+    }
+
+    // ----------------------- Accrual -----------------------
+
+    @Test
+    void testPaidFeeOwesOnlyFurtherAccrual() {
+        seedBorrow("B1", "2026-01-01", null);
+        accrualJob.run(LocalDate.parse("2026-01-04"));
+        assertBalance(300, 300);
+
+        feeService.markFeeAsPaid("B1");
+        assertBalance(0, 300);
+
+        // Two more days out: the $3 paid stay paid, the $2 since are owed
+        accrualJob.run(LocalDate.parse("2026-01-06"));
+        Fees fee = fee("B1");
+        assertEquals(500, fee.getAmountCents());
+        assertEquals(300, fee.getPaidCents());
+        assertFalse(fee.isPaid());
+        assertBalance(200, 500);
+
+        feeService.markFeeAsPaid("B1");
+        assertBalance(0, 500);
+    }
+
+    // ----------------------- Return -----------------------
+
+    @Test
+    void testReturnSettlesPartiallyAccruedFees() {
+        seedBorrow("B1", "2026-01-01", null);
+        seedBorrow("B2", "2026-01-01", null);
+        accrualJob.run(LocalDate.parse("2026-01-03"));
+        feeService.markFeeAsPaid("B1");
+        assertBalance(200, 400);
+
+        // Both come back two days later; B1 owes those two days, B2 all four
+        seedBorrow("B1", "2026-01-01", "2026-01-05");
+        seedBorrow("B2", "2026-01-01", "2026-01-05");
+        feeService.generateOverdueFee("B1");
+        feeService.generateOverdueFee("B2");
+        assertEquals(200, fee("B1").getPaidCents());
+        assertEquals(0, fee("B2").getPaidCents());
+        assertBalance(200 + 400, 800);
+
+        // Settling again changes nothing
+        feeService.generateOverdueFee("B1");
+        assertBalance(600, 800);
+    }
+
+    // ----------------------- Legacy fees -----------------------
+
+    @Test
+    void testLegacyFeesAreConvertedAndCounted() {
+        seedBorrow("B1", "2026-01-01", null);
+        seedBorrow("B2", "2026-01-01", "2026-01-04");
+        seedLegacyFee("B1", "3.00", "Yes");
+        seedLegacyFee("B2", "3.00", "No");
+
+        // An open borrow's paid legacy fee grows; the returned one's is only rewritten in cents
+        accrualJob.run(LocalDate.parse("2026-01-06"));
+        feeService.generateOverdueFee("B2");
+
+        StoredDocument grown = FirebaseService.await(store.get("fees", "B1"));
+        assertNull(grown.get("amount"));
+        assertEquals(500L, grown.getLong("amountCents"));
+        assertEquals(300L, grown.getLong("paidCents"));
+        assertEquals(Boolean.FALSE, grown.getBoolean("paid"));
+
+        StoredDocument converted = FirebaseService.await(store.get("fees", "B2"));
+        assertNull(converted.get("amount"));
+        assertEquals(300L, converted.getLong("amountCents"));
+        assertEquals(Boolean.FALSE, converted.getBoolean("paid"));
+
+        // Never counted in the old format, so only the new amounts are
+        assertBalance(200 + 300, 800);
+    }
+
+    // ----------------------- Helpers -----------------------
+
+    private void seedBorrow(String borrowId, String dueDate, String returnDate) {
+        Borrows borrow = new Borrows(borrowId, "1", MEMBER, "2025-12-01", dueDate, returnDate);
+        store.commit(List.of(Write.set("borrows", borrowId, borrow))).join();
+    }
+
+    private void seedLegacyFee(String borrowId, String amount, String paid) {
+        Map<String, Object> data = new HashMap<>();
+        data.put("id", borrowId);
+        data.put("membershipId", MEMBER);
+        data.put("borrowId", borrowId);
+        data.put("amount", amount);
+        data.put("paid", paid);
+        store.commit(List.of(Write.set("fees", borrowId, data))).join();
+    }
+
+    private Fees fee(String borrowId) {
+        return FirebaseService.toFee(FirebaseService.await(store.get("fees", borrowId)));
+    }
+
+    // The member's balance and the library-wide statistics agree
+    private void assertBalance(long outstandingCents, long lifetimeCents) {
+        FeeBalance balance = feeService.getBalance(MEMBER);
+        assertEquals(outstandingCents, balance.getOutstandingCents(), "outstanding");
+        assertEquals(lifetimeCents, balance.getLifetimeCents(), "lifetime");
+        assertEquals(outstandingCents, statsTotal("outstandingCents"), "outstanding in the statistics");
+        assertEquals(lifetimeCents, statsTotal("lifetimeCents"), "lifetime in the statistics");
+    }
+
+    private long statsTotal(String field) {
+        long total = 0;
+        for (int shard = 0; shard < StatsDelta.SHARDS; shard++) {
+            StoredDocument totals = FirebaseService.await(
+                    store.get(StatsDelta.COLLECTION, StatsDelta.shardId(StatsDelta.TOTALS, shard)));
+            if (totals != null && totals.getLong(field) != null) {
+                total += totals.getLong(field);
+            }
+        }
+        return total;
+    }
+}
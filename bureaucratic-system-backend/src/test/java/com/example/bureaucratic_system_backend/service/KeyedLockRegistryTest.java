@@ -0,0 +1,134 @@
+package com.example.bureaucratic_system_backend.service;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.Lock;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class KeyedLockRegistryTest {
+
+    private static final int THREADS = 8;
+    private static final int ITERATIONS = 5_000;
+
+    private KeyedLockRegistry registry;
+
+    @BeforeEach
+    void setUp() {
+        registry = new KeyedLockRegistry();
+    }
+
+    // ----------------------- Reference counting -----------------------
+
+    @Test
+    void testEntryExistsOnlyWhileHeld() {
+        Lock lock = registry.get("book:1");
+        assertEquals(0, registry.activeKeys());
+
+        lock.lock();
+        assertEquals(1, registry.activeKeys());
+        lock.lock(); // Reentrant
+        lock.unlock();
+        assertEquals(1, registry.activeKeys());
+        lock.unlock();
+        assertEquals(0, registry.activeKeys());
+    }
+
+    @Test
+    void testFailedTryLockReleasesItsReference() throws Exception {
+        Lock lock = registry.get("book:1");
+        lock.lock();
+
+        AtomicInteger acquired = new AtomicInteger();
+        Thread other = new Thread(() -> {
+            if (registry.get("book:1").tryLock()) {
+                acquired.incrementAndGet();
+            }
+            try {
+                if (registry.get("book:1").tryLock(10, TimeUnit.MILLISECONDS)) {
+                    acquired.incrementAndGet();
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+        other.start();
+        other.join();
+
+        assertEquals(0, acquired.get());
+        assertEquals(1, registry.activeKeys());
+        lock.unlock();
+        assertEquals(0, registry.activeKeys());
+    }
+
+    @Test
+    void testUnlockWithoutHoldingThrows() {
+        assertThrows(IllegalMonitorStateException.class, () -> registry.get("book:1").unlock());
+        assertEquals(0, registry.activeKeys());
+    }
+
+    // ----------------------- Contention -----------------------
+
+    @Test
+    void testMutualExclusionAndCleanupUnderContention() throws Exception {
+        String[] keys = {"book:1", "book:2", "fee:1"};
+        int[] counters = new int[keys.length]; // Only changed under the key's lock
+        AtomicInteger inside = new AtomicInteger();
+        AtomicInteger overlaps = new AtomicInteger();
+        CountDownLatch start = new CountDownLatch(1);
+        List<Thread> threads = new ArrayList<>();
+
+        for (int t = 0; t < THREADS; t++) {
+            int offset = t;
+            threads.add(new Thread(() -> {
+                try {
+                    start.await();
+                } catch (InterruptedException e) {
+                    return;
+                }
+                for (int i = 0; i < ITERATIONS; i++) {
+                    int k = (i + offset) % keys.length;
+                    Lock lock = registry.get(keys[k]);
+                    boolean acquired;
+                    if (i % 3 == 0) {
+                        acquired = lock.tryLock();
+                    } else {
+                        lock.lock();
+                        acquired = true;
+                    }
+                    if (!acquired) {
+                        continue;
+                    }
+                    try {
+                        if (k == 0 && inside.incrementAndGet() > 1) {
+                            overlaps.incrementAndGet();
+                        }
+                        counters[k]++;
+                        if (k == 0) {
+                            inside.decrementAndGet();
+                        }
+                    } finally {
+                        lock.unlock();
+                    }
+                }
+            }));
+        }
+        threads.forEach(Thread::start);
+        start.countDown();
+        for (Thread thread : threads) {
+            thread.join(TimeUnit.SECONDS.toMillis(60));
+            assertFalse(thread.isAlive());
+        }
+
+        assertEquals(0, overlaps.get());
+        assertEquals(0, registry.activeKeys());
+        long acquisitions = (long) registry.getStats().get("acquisitions");
+        assertEquals(acquisitions, (long) counters[0] + counters[1] + counters[2]);
+    }
+}
@@ -0,0 +1,128 @@
+package com.example.bureaucratic_system_backend.service;
+
+import com.example.bureaucratic_system_backend.model.LoanRequest;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class LoanDispatchQueueTest {
+
+    private static final int PRODUCERS = 2;
+    private static final int CONSUMERS = 2;
+    private static final int REQUESTS_PER_PRODUCER = 5_000;
+
+    // ----------------------- Single thread -----------------------
+
+    @Test
+    void testCapacityRoundsUpToPowerOfTwo() {
+        assertEquals(8, new LoanDispatchQueue(5, LoanDispatchQueue.WaitStrategy.BLOCKING).capacity());
+        assertEquals(8, new LoanDispatchQueue(8, LoanDispatchQueue.WaitStrategy.BLOCKING).capacity());
+        assertThrows(IllegalArgumentException.class, () -> new LoanDispatchQueue(1, LoanDispatchQueue.WaitStrategy.BLOCKING));
+    }
+
+    @Test
+    void testPreservesOrderAndRejectsWhenFull() {
+        LoanDispatchQueue queue = new LoanDispatchQueue(4, LoanDispatchQueue.WaitStrategy.BLOCKING);
+        for (int i = 0; i < 4; i++) {
+            assertEquals("t" + i, queue.offer("Title " + i, "Author", "C" + i, "t" + i));
+        }
+        assertNull(queue.offer("Title 4", "Author", "C4", "t4"));
+        assertEquals(4, queue.size());
+
+        LoanRequest request = new LoanRequest();
+        for (int i = 0; i < 4; i++) {
+            assertTrue(queue.poll(request));
+            assertEquals("Title " + i, request.getBookTitle());
+            assertEquals("C" + i, request.getCitizenId());
+            assertEquals("t" + i, request.getTicketId());
+        }
+        assertFalse(queue.poll(request));
+        assertEquals(0, queue.size());
+
+        // Slots are reused on the next lap
+        assertEquals("t5", queue.offer("Title 5", "Author", "C5", "t5"));
+        assertTrue(queue.poll(request));
+        assertEquals("t5", request.getTicketId());
+    }
+
+    // ----------------------- Concurrent hand-off -----------------------
+
+    @Test
+    void testBlockingHandOffLosesAndDuplicatesNothing() throws Exception {
+        assertEveryRequestTakenOnce(LoanDispatchQueue.WaitStrategy.BLOCKING);
+    }
+
+    @Test
+    void testSpinningHandOffLosesAndDuplicatesNothing() throws Exception {
+        assertEveryRequestTakenOnce(LoanDispatchQueue.WaitStrategy.SPINNING);
+    }
+
+    @Test
+    void testParkingHandOffLosesAndDuplicatesNothing() throws Exception {
+        assertEveryRequestTakenOnce(LoanDispatchQueue.WaitStrategy.PARKING);
+    }
+
+    // Producers retry while the (deliberately small) queue is full; consumers take until every request is seen
+    private static void assertEveryRequestTakenOnce(LoanDispatchQueue.WaitStrategy waitStrategy) throws Exception {
+        LoanDispatchQueue queue = new LoanDispatchQueue(64, waitStrategy);
+        int total = PRODUCERS * REQUESTS_PER_PRODUCER;
+        Set<String> taken = ConcurrentHashMap.newKeySet();
+        AtomicInteger duplicates = new AtomicInteger();
+        AtomicInteger mismatched = new AtomicInteger();
+        CountDownLatch done = new CountDownLatch(total);
+        List<Thread> threads = new ArrayList<>();
+
+        for (int c = 0; c < CONSUMERS; c++) {
+            threads.add(new Thread(() -> {
+                LoanRequest request = new LoanRequest();
+                try {
+                    while (true) {
+                        queue.take(request);
+                        // Fields of one request must never be mixed with another's
+                        if (!request.getTicketId().equals(request.getCitizenId() + "/" + request.getBookTitle())) {
+                            mismatched.incrementAndGet();
+                        }
+                        if (!taken.add(request.getTicketId())) {
+                            duplicates.incrementAndGet();
+                        }
+                        done.countDown();
+                    }
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }, "consumer-" + c));
+        }
+        for (int p = 0; p < PRODUCERS; p++) {
+            String citizenId = "C" + p;
+            threads.add(new Thread(() -> {
+                for (int i = 0; i < REQUESTS_PER_PRODUCER; i++) {
+                    String ticketId = citizenId + "/" + i;
+                    while (queue.offer(String.valueOf(i), "Author", citizenId, ticketId) == null) {
+                        Thread.onSpinWait();
+                    }
+                }
+            }, "producer-" + p));
+        }
+        threads.forEach(Thread::start);
+
+        boolean finished = done.await(60, TimeUnit.SECONDS);
+        threads.forEach(Thread::interrupt);
+        for (Thread thread : threads) {
+            thread.join(TimeUnit.SECONDS.toMillis(5));
+        }
+
+        assertTrue(finished, "Only " + (total - done.getCount()) + " of " + total + " requests were taken.");
+        assertEquals(total, taken.size());
+        assertEquals(0, duplicates.get());
+        assertEquals(0, mismatched.get());
+        assertEquals(0, queue.size());
+    }
+}
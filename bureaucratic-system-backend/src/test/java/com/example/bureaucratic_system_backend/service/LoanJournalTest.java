@@ -0,0 +1,205 @@
+package com.example.bureaucratic_system_backend.service;
+
+import com.example.bureaucratic_system_backend.model.LoanRequest;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class LoanJournalTest {
+
+    private static final int SEGMENT_BYTES = 64 * 1024;
+
+    private Path directory;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        directory = Files.createTempDirectory("loan-journal-test");
+    }
+
+    @AfterEach
+    void tearDown() throws IOException {
+        try (Stream<Path> files = Files.walk(directory)) {
+            for (Path path : files.sorted(Comparator.reverseOrder()).toList()) {
+                Files.deleteIfExists(path);
+            }
+        }
+    }
+
+    // ----------------------- Recovery -----------------------
+
+    @Test
+    void testAcknowledgedRequestsAreNotRecovered() throws Exception {
+        LoanJournal journal = open();
+        journal.enqueued(entry("t1"));
+        journal.enqueued(entry("t2"));
+        journal.enqueued(entry("t3"));
+        journal.completed("t2");
+        journal.completed("unknown"); // Never journaled: ignored
+        assertEquals(2, journal.pendingCount());
+        journal.close();
+
+        LoanJournal reopened = open();
+        assertEquals(List.of(entry("t1"), entry("t3")), reopened.recovered());
+        assertEquals(2, reopened.pendingCount());
+        assertEquals(1, segmentFiles().size()); // The old segment is replaced by the recovered one
+        reopened.close();
+    }
+
+    @Test
+    void testTornTailIsDiscardedOnReplay() throws Exception {
+        LoanJournal journal = open();
+        journal.enqueued(entry("t1"));
+        journal.enqueued(entry("t2"));
+        journal.enqueued(entry("t3"));
+        journal.close();
+
+        // A crash in the middle of writing the third record
+        Path segment = segmentFiles().get(0);
+        long secondRecordEnd = recordEnds(segment).get(1);
+        try (FileChannel channel = FileChannel.open(segment, StandardOpenOption.WRITE)) {
+            channel.truncate(secondRecordEnd + 10);
+        }
+
+        LoanJournal reopened = open();
+        assertEquals(List.of(entry("t1"), entry("t2")), reopened.recovered());
+        reopened.enqueued(entry("t4"));
+        reopened.close();
+
+        LoanJournal again = open();
+        assertEquals(List.of(entry("t1"), entry("t2"), entry("t4")), again.recovered());
+        again.close();
+    }
+
+    @Test
+    void testCorruptRecordEndsReplay() throws Exception {
+        LoanJournal journal = open();
+        journal.enqueued(entry("t1"));
+        journal.enqueued(entry("t2"));
+        journal.enqueued(entry("t3"));
+        journal.close();
+
+        Path segment = segmentFiles().get(0);
+        long firstRecordEnd = recordEnds(segment).get(0);
+        try (FileChannel channel = FileChannel.open(segment, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            ByteBuffer one = ByteBuffer.allocate(1);
+            channel.read(one, firstRecordEnd + 12);
+            one.put(0, (byte) (one.get(0) ^ 0x5A)); // Flip bits in the second record's payload
+            channel.write(one.flip(), firstRecordEnd + 12);
+        }
+
+        LoanJournal reopened = open();
+        assertEquals(List.of(entry("t1")), reopened.recovered());
+        reopened.close();
+    }
+
+    // ----------------------- Compaction -----------------------
+
+    @Test
+    void testCompactionKeepsPendingRequestsAcrossRollsAndRestart() throws Exception {
+        LoanJournal journal = open();
+        journal.enqueued(entry("first"));
+        // Enough served requests to fill several segments
+        for (int i = 0; i < 3_000; i++) {
+            journal.enqueued(entry("served-" + i));
+            if (i == 1_500) {
+                journal.enqueued(entry("middle"));
+            }
+            journal.completed("served-" + i);
+        }
+        journal.enqueued(entry("last"));
+        assertEquals(3, journal.pendingCount());
+        assertTrue(segmentFiles().size() <= 2, "Drained segments should be deleted, found " + segmentFiles());
+        journal.close();
+
+        LoanJournal reopened = open();
+        assertEquals(List.of(entry("first"), entry("middle"), entry("last")), reopened.recovered());
+        reopened.completed("middle");
+        reopened.close();
+
+        LoanJournal again = open();
+        assertEquals(List.of(entry("first"), entry("last")), again.recovered());
+        again.close();
+    }
+
+    // ----------------------- Appends -----------------------
+
+    @Test
+    void testDurableAppendsAndClosedJournal() throws Exception {
+        LoanJournal journal = new LoanJournal(directory, SEGMENT_BYTES, 1, TimeUnit.MILLISECONDS, true);
+        journal.enqueued(entry("t1")); // Returns once a flush covers it
+        journal.close();
+        assertThrows(IllegalStateException.class, () -> journal.enqueued(entry("t2")));
+
+        LoanJournal reopened = open();
+        assertEquals(List.of(entry("t1")), reopened.recovered());
+        reopened.close();
+    }
+
+    @Test
+    void testDispatcherRequeuesPendingRequestsAfterRestart() throws Exception {
+        JournaledLoanDispatcher dispatcher = new JournaledLoanDispatcher(
+                new LoanDispatchQueue(8, LoanDispatchQueue.WaitStrategy.BLOCKING), open());
+        for (int i = 1; i <= 3; i++) {
+            assertEquals("t" + i, dispatcher.offer("Title", "Author", "C" + i, "t" + i));
+        }
+        LoanRequest request = new LoanRequest();
+        assertTrue(dispatcher.poll(request));
+        dispatcher.complete(request.getTicketId());
+        assertTrue(dispatcher.poll(request)); // Taken but not completed: served again after the restart
+        dispatcher.close();
+
+        JournaledLoanDispatcher restarted = new JournaledLoanDispatcher(
+                new LoanDispatchQueue(8, LoanDispatchQueue.WaitStrategy.BLOCKING), open());
+        assertEquals(2, restarted.size());
+        assertEquals(List.of("t2", "t3"), restarted.recovered().stream().map(LoanJournal.Entry::ticketId).toList());
+        assertTrue(restarted.poll(request));
+        assertEquals("t2", request.getTicketId());
+        assertEquals("C2", request.getCitizenId());
+        restarted.close();
+    }
+
+    // ----------------------- Helpers -----------------------
+
+    private LoanJournal open() throws IOException {
+        return new LoanJournal(directory, SEGMENT_BYTES, 0, TimeUnit.MILLISECONDS, false);
+    }
+
+    private static LoanJournal.Entry entry(String ticketId) {
+        return new LoanJournal.Entry(ticketId, "C-" + ticketId, "Dune", "Frank Herbert", 1_000L);
+    }
+
+    private List<Path> segmentFiles() throws IOException {
+        try (Stream<Path> files = Files.list(directory)) {
+            return files.filter(path -> path.getFileName().toString().startsWith("segment-")).sorted().toList();
+        }
+    }
+
+    // Offsets just past each record: a length and a checksum, then the payload
+    private static List<Long> recordEnds(Path segment) throws IOException {
+        ByteBuffer buffer = ByteBuffer.wrap(Files.readAllBytes(segment));
+        List<Long> ends = new ArrayList<>();
+        while (buffer.remaining() >= 8) {
+            int length = buffer.getInt();
+            if (length <= 0) {
+                break;
+            }
+            buffer.position(buffer.position() + 4 + length);
+            ends.add((long) buffer.position());
+        }
+        return ends;
+    }
+}
@@ -0,0 +1,142 @@
+package com.example.bureaucratic_system_backend.service;
+
+import com.example.bureaucratic_system_backend.model.Borrows;
+import com.example.bureaucratic_system_backend.store.EmbeddedDocumentStore;
+import com.example.bureaucratic_system_backend.store.Write;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class LoanWaitlistTest {
+
+    private static final String TITLE = "Dune";
+    private static final String AUTHOR = "Frank Herbert";
+    private static final CatalogIndex.TitleKey TITLE_KEY = new CatalogIndex.TitleKey(TITLE, AUTHOR);
+
+    private EmbeddedDocumentStore store;
+
+    @BeforeEach
+    void setUp() {
+        store = EmbeddedDocumentStore.inMemory();
+        FirebaseService.useDocumentStore(store);
+    }
+
+    @AfterEach
+    void tearDown() {
+        store.close();
+    }
+
+    // ----------------------- Joining -----------------------
+
+    @Test
+    void testMembersWaitInOrderAndKeepTheirPlace() throws Exception {
+        LoanWaitlist waitlist = newWaitlist(10);
+        LoanWaitlist.Reservation first = reservation("C1", "M1", "t1");
+        assertSame(first, waitlist.add(first));
+        assertNotNull(waitlist.add(reservation("C2", "M2", "t2")));
+
+        // A second request of a waiting member gets the earlier reservation back
+        LoanWaitlist.Reservation again = reservation("C1", "M1", "t3");
+        assertEquals("t1", waitlist.add(again).ticketId());
+        assertEquals(2, waitlist.size());
+        assertEquals("t1", waitlist.peek(TITLE, AUTHOR).ticketId());
+    }
+
+    @Test
+    void testFullWaitlistRejects() throws Exception {
+        LoanWaitlist waitlist = newWaitlist(1);
+        assertNotNull(waitlist.add(reservation("C1", "M1", "t1")));
+        assertNull(waitlist.add(reservation("C2", "M2", "t2")));
+        assertEquals(1, waitlist.size());
+    }
+
+    // ----------------------- Across instances and restarts -----------------------
+
+    @Test
+    void testReservationsSurviveARestart() throws Exception {
+        LoanWaitlist before = newWaitlist(10);
+        before.add(reservation("C1", "M1", "t1"));
+        before.add(reservation("C2", "M2", "t2"));
+
+        LoanWaitlist restarted = newWaitlist(10);
+        assertEquals(2, restarted.size());
+        LoanWaitlist.Reservation head = restarted.peek(TITLE, AUTHOR);
+        assertEquals("t1", head.ticketId());
+        assertEquals("M1", head.membershipId());
+        assertNotNull(head.version());
+    }
+
+    @Test
+    void testReservationIsHandedOffOnlyOnce() throws Exception {
+        LoanWaitlist instanceA = newWaitlist(10);
+        LoanWaitlist instanceB = newWaitlist(10);
+        LoanWaitlist.Reservation waiting = instanceA.add(reservation("C1", "M1", "t1"));
+        awaitSize(instanceB, 1);
+        seedBorrow("B1", "M9");
+        seedBorrow("B2", "M8");
+
+        // Both instances see the same head; only the first return serves it
+        LoanWaitlist.Reservation seenByB = instanceB.peek(TITLE, AUTHOR);
+        assertTrue(FirebaseService.commitReturn("B1", "2026-01-02", "1", handOff("H1", "M1"), TITLE_KEY, waiting));
+        assertFalse(FirebaseService.commitReturn("B2", "2026-01-02", "2", handOff("H2", "M1"), TITLE_KEY, seenByB));
+        assertFalse(instanceB.isWaiting(seenByB));
+        assertNull(FirebaseService.await(store.get("borrows", "H2")));
+        assertNull(FirebaseService.await(store.get("borrows", "B2")).getString("returnDate"));
+
+        awaitSize(instanceA, 0);
+        awaitSize(instanceB, 0);
+    }
+
+    @Test
+    void testCancelledReservationIsGoneEverywhere() throws Exception {
+        LoanWaitlist instanceA = newWaitlist(10);
+        LoanWaitlist instanceB = newWaitlist(10);
+        LoanWaitlist.Reservation waiting = instanceA.add(reservation("C1", "M1", "t1"));
+        awaitSize(instanceB, 1);
+
+        instanceA.cancel(waiting);
+        assertEquals(0, instanceA.size());
+        awaitSize(instanceB, 0);
+        assertEquals(0, newWaitlist(10).size());
+    }
+
+    // ----------------------- Helpers -----------------------
+
+    private static LoanWaitlist newWaitlist(int maxPerTitle) throws Exception {
+        LoanWaitlist waitlist = new LoanWaitlist(new KeyedLockRegistry(), new SimpleMeterRegistry(), maxPerTitle);
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+        while (!waitlist.isReady()) {
+            assertTrue(System.nanoTime() < deadline, "The waitlist listener did not deliver its first snapshot.");
+            Thread.sleep(5);
+        }
+        return waitlist;
+    }
+
+    private static LoanWaitlist.Reservation reservation(String citizenId, String membershipId, String ticketId) {
+        return LoanWaitlist.Reservation.of(TITLE, AUTHOR, citizenId, membershipId, ticketId);
+    }
+
+    private static Borrows handOff(String borrowId, String membershipId) {
+        return new Borrows(borrowId, "1", membershipId, "2026-01-02", "2026-02-01", null);
+    }
+
+    private void seedBorrow(String borrowId, String membershipId) {
+        Borrows borrow = new Borrows(borrowId, "1", membershipId, "2026-01-01", "2026-01-31", null);
+        store.commit(List.of(Write.set("borrows", borrowId, borrow))).join();
+    }
+
+    // Changes made through one instance reach the others through the listener
+    private static void awaitSize(LoanWaitlist waitlist, int size) throws Exception {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+        while (waitlist.size() != size) {
+            assertTrue(System.nanoTime() < deadline, "Waitlist holds " + waitlist.size() + " reservations, not " + size + ".");
+            Thread.sleep(5);
+        }
+    }
+}
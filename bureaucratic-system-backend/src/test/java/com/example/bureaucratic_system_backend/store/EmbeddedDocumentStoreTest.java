@@ -0,0 +1,230 @@
+package com.example.bureaucratic_system_backend.store;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class EmbeddedDocumentStoreTest {
+
+    private Path directory;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        directory = Files.createTempDirectory("embedded-store-test");
+    }
+
+    @AfterEach
+    void tearDown() throws IOException {
+        try (Stream<Path> files = Files.walk(directory)) {
+            for (Path path : files.sorted(Comparator.reverseOrder()).toList()) {
+                Files.deleteIfExists(path);
+            }
+        }
+    }
+
+    // ----------------------- Recovery -----------------------
+
+    @Test
+    void testReplaysLogAfterCrash() throws Exception {
+        EmbeddedDocumentStore crashed = new EmbeddedDocumentStore(directory, true, 1000);
+        commit(crashed, Write.set("books", "1", Map.of("name", "Dune", "available", true)));
+        commit(crashed, Write.update("books", "1", Map.of("available", false)));
+        commit(crashed, Write.set("books", "2", Map.of("name", "Emma", "available", true)));
+        // Not closed: no snapshot, everything has to come back from the log
+
+        EmbeddedDocumentStore reopened = new EmbeddedDocumentStore(directory, true, 1000);
+        assertEquals(2, reopened.documentCount());
+        assertEquals(false, get(reopened, "books", "1").getBoolean("available"));
+        assertEquals("Dune", get(reopened, "books", "1").getString("name"));
+        reopened.close();
+    }
+
+    @Test
+    void testRemovedFieldsStayRemovedAfterReplay() throws Exception {
+        EmbeddedDocumentStore crashed = new EmbeddedDocumentStore(directory, true, 1000);
+        commit(crashed, Write.set("fees", "1", Map.of("amount", "2.50", "paid", "No")));
+        StoredDocument legacy = get(crashed, "fees", "1");
+        commit(crashed, Write.update("fees", "1", Map.of("amountCents", 250L, "paid", false), List.of("amount"),
+                legacy.updateTime()));
+        assertFalse(get(crashed, "fees", "1").data().containsKey("amount"));
+
+        EmbeddedDocumentStore reopened = new EmbeddedDocumentStore(directory, true, 1000);
+        StoredDocument fee = get(reopened, "fees", "1");
+        assertFalse(fee.data().containsKey("amount"));
+        assertEquals(250L, fee.getLong("amountCents"));
+        assertEquals(false, fee.getBoolean("paid"));
+        reopened.close();
+    }
+
+    @Test
+    void testTornTailIsDiscardedOnReplay() throws Exception {
+        EmbeddedDocumentStore crashed = new EmbeddedDocumentStore(directory, true, 1000);
+        commit(crashed, Write.set("books", "1", Map.of("name", "Dune")));
+        commit(crashed, Write.set("books", "2", Map.of("name", "Emma")));
+
+        // A crash in the middle of appending the second record
+        Path wal = directory.resolve("wal.log");
+        long size = Files.size(wal);
+        byte[] log = Files.readAllBytes(wal);
+        Files.write(wal, Arrays.copyOf(log, (int) size - 5));
+
+        EmbeddedDocumentStore reopened = new EmbeddedDocumentStore(directory, true, 1000);
+        assertNotNull(get(reopened, "books", "1"));
+        assertNull(get(reopened, "books", "2"));
+        long truncated = Files.size(wal);
+        assertTrue(truncated < size - 5, "The partial record should be cut off the log.");
+
+        // Appends continue after the last valid record and survive the next restart
+        commit(reopened, Write.set("books", "3", Map.of("name", "Ulysses")));
+        EmbeddedDocumentStore again = new EmbeddedDocumentStore(directory, true, 1000);
+        assertNotNull(get(again, "books", "1"));
+        assertNull(get(again, "books", "2"));
+        assertNotNull(get(again, "books", "3"));
+        again.close();
+    }
+
+    @Test
+    void testCorruptRecordEndsReplay() throws Exception {
+        EmbeddedDocumentStore crashed = new EmbeddedDocumentStore(directory, true, 1000);
+        commit(crashed, Write.set("books", "1", Map.of("name", "Dune")));
+        long firstRecordEnd = Files.size(directory.resolve("wal.log"));
+        commit(crashed, Write.set("books", "2", Map.of("name", "Emma")));
+
+        byte[] log = Files.readAllBytes(directory.resolve("wal.log"));
+        log[(int) firstRecordEnd + 20] ^= 0x5A; // Flip bits in the second record's payload
+        Files.write(directory.resolve("wal.log"), log);
+
+        EmbeddedDocumentStore reopened = new EmbeddedDocumentStore(directory, true, 1000);
+        assertEquals(1, reopened.documentCount());
+        assertEquals(firstRecordEnd, Files.size(directory.resolve("wal.log")));
+        reopened.close();
+    }
+
+    // ----------------------- Snapshots -----------------------
+
+    @Test
+    void testSnapshotsRotateTheLogAndRecover() throws Exception {
+        EmbeddedDocumentStore crashed = new EmbeddedDocumentStore(directory, true, 3);
+        for (int i = 0; i < 10; i++) {
+            commit(crashed, Write.set("books", String.valueOf(i), Map.of("name", "Title " + i)));
+        }
+        commit(crashed, Write.delete("books", "0"));
+        awaitNoRotatedLogs();
+        assertTrue(Files.exists(directory.resolve("snapshot.json")));
+
+        // Snapshot plus the records logged after it
+        EmbeddedDocumentStore reopened = new EmbeddedDocumentStore(directory, true, 3);
+        assertEquals(9, reopened.documentCount());
+        assertNull(get(reopened, "books", "0"));
+        assertEquals("Title 9", get(reopened, "books", "9").getString("name"));
+        reopened.close();
+
+        // A clean shutdown leaves nothing to replay
+        assertEquals(0, Files.size(directory.resolve("wal.log")));
+        EmbeddedDocumentStore again = new EmbeddedDocumentStore(directory, true, 3);
+        assertEquals(9, again.documentCount());
+        again.close();
+    }
+
+    @Test
+    void testRotatedLogIsReplayedWhenSnapshotWasNotWritten() throws Exception {
+        EmbeddedDocumentStore crashed = new EmbeddedDocumentStore(directory, true, 1000);
+        commit(crashed, Write.set("books", "1", Map.of("name", "Dune")));
+        commit(crashed, Write.set("books", "2", Map.of("name", "Emma")));
+        // A crash after the log was rotated but before the snapshot reached the disk
+        Files.move(directory.resolve("wal.log"), directory.resolve(String.format("wal-%019d.log", 2)));
+        Files.createFile(directory.resolve("wal.log"));
+
+        EmbeddedDocumentStore reopened = new EmbeddedDocumentStore(directory, true, 1000);
+        assertEquals(2, reopened.documentCount());
+        commit(reopened, Write.set("books", "3", Map.of("name", "Ulysses")));
+        reopened.close();
+
+        assertFalse(Files.exists(directory.resolve(String.format("wal-%019d.log", 2))));
+        EmbeddedDocumentStore again = new EmbeddedDocumentStore(directory, true, 1000);
+        assertEquals(3, again.documentCount());
+        again.close();
+    }
+
+    // ----------------------- Atomicity -----------------------
+
+    @Test
+    void testFailedPreconditionWritesNothing() throws Exception {
+        EmbeddedDocumentStore store = EmbeddedDocumentStore.inMemory();
+        commit(store, Write.set("books", "1", Map.of("available", true)));
+
+        Exception failure = assertThrows(Exception.class, () -> commit(store,
+                Write.update("books", "1", Map.of("available", false)),
+                Write.create("borrows", "B1", Map.of("bookId", "1")),
+                Write.create("books", "1", Map.of("available", false))));
+        assertInstanceOf(WriteConflictException.class, failure.getCause());
+        assertEquals(true, get(store, "books", "1").getBoolean("available"));
+        assertNull(get(store, "borrows", "B1"));
+    }
+
+    @Test
+    void testReadersNeverSeePartOfACommit() throws Exception {
+        EmbeddedDocumentStore store = EmbeddedDocumentStore.inMemory();
+        commit(store, Write.set("pairs", "a", Map.of("n", 0L)), Write.set("pairs", "b", Map.of("n", 0L)));
+        AtomicBoolean stop = new AtomicBoolean();
+        AtomicInteger torn = new AtomicInteger();
+
+        Thread reader = new Thread(() -> {
+            while (!stop.get()) {
+                // "a" is written first in every commit, so once it shows a commit, "b" must too
+                long a = get(store, "pairs", "a").getLong("n");
+                long b = get(store, "pairs", "b").getLong("n");
+                List<StoredDocument> both = store.query(Query.of("pairs")).join();
+                if (b < a || !both.get(0).getLong("n").equals(both.get(1).getLong("n"))) {
+                    torn.incrementAndGet();
+                }
+            }
+        });
+        reader.start();
+        for (long n = 1; n <= 20_000; n++) {
+            commit(store, Write.set("pairs", "a", Map.of("n", n)), Write.set("pairs", "b", Map.of("n", n)));
+        }
+        stop.set(true);
+        reader.join(TimeUnit.SECONDS.toMillis(10));
+
+        assertEquals(0, torn.get());
+    }
+
+    // ----------------------- Helpers -----------------------
+
+    private static void commit(DocumentStore store, Write... writes) {
+        store.commit(List.of(writes)).join();
+    }
+
+    private static StoredDocument get(DocumentStore store, String collection, String id) {
+        return store.get(collection, id).join();
+    }
+
+    // Snapshots are written in the background; their rotated logs go once they are on disk
+    private void awaitNoRotatedLogs() throws Exception {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+        while (true) {
+            try (Stream<Path> files = Files.list(directory)) {
+                if (files.noneMatch(path -> path.getFileName().toString().startsWith("wal-"))) {
+                    return;
+                }
+            }
+            assertTrue(System.nanoTime() < deadline, "Rotated logs were not removed by a snapshot.");
+            Thread.sleep(10);
+        }
+    }
+}
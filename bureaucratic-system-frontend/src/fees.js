@@ -0,0 +1,16 @@
+// Fees store amountCents (a number), paid (a boolean) and paidCents, the part of the amount
+// already paid. Fees the backend has not migrated yet still have amount as a dollar string and
+// paid as 'Yes'/'No'.
+
+// Amount in dollars
+export const feeAmount = (fee) =>
+    fee.amountCents != null ? fee.amountCents / 100 : parseFloat(fee.amount) || 0;
+
+export const isFeePaid = (fee) => fee.paid === true || fee.paid === 'Yes';
+
+// Amount still owed in dollars: an overdue fee that grew after being paid owes only the increase
+export const feeAmountDue = (fee) =>
+    isFeePaid(fee) ? 0 : feeAmount(fee) - (fee.paidCents || 0) / 100;
+
+// Values of the paid field that mean unpaid, for Firestore queries
+export const UNPAID_VALUES = [false, 'No'];
@@ -1,6 +1,7 @@
 import React, { useState, useEffect } from 'react';
 import { auth } from '../firebaseconfig'; // Firebase Auth
 import { getFirestore, collection, query, where, getDocs } from 'firebase/firestore'; // Firestore
+import { feeAmount, isFeePaid } from '../fees.js';
 
 const CitizenDashboard = () => {
     const [profile, setProfile] = useState(null);
@@ -91,7 +92,8 @@ const CitizenDashboard = () => {
                                 ...fee,
                                 bookTitle: book?.name || 'Unknown Book',
                                 bookAuthor: book?.author || 'Unknown Author',
-                                paid: fee.paid || false, // Ensure `paid` is a boolean
+                                amount: feeAmount(fee),
+                                paid: isFeePaid(fee),
                             };
                         });
 
@@ -217,11 +219,11 @@ const CitizenDashboard = () => {
                                             <strong>Author:</strong> {fee.bookAuthor}
                                         </p>
                                         <p className="text-gray-600">
-                                            <strong>Fee Amount:</strong> ${fee.amount}
+                                            <strong>Fee Amount:</strong> ${fee.amount.toFixed(2)}
                                         </p>
                                         <div className="mt-2 text-sm text-gray-500">
                                             <p><strong>Fee ID:</strong> {fee.id}</p>
-                                            <p><strong>Paid:</strong> {fee.paid}</p>
+                                            <p><strong>Paid:</strong> {fee.paid ? 'Yes' : 'No'}</p>
                                         </div>
                                     </li>
                                 ))}
@@ -2,6 +2,7 @@ import React, { useState, useEffect } from 'react';
 import axios from 'axios';
 import { useAuth } from '../components/AuthProvider.js'; // Import Auth Context
 import { getFirestore, collection, query, where, getDocs } from 'firebase/firestore'; // Firestore
+import { feeAmountDue, UNPAID_VALUES } from '../fees.js';
 
 const PayFee = () => {
     const { user, role } = useAuth(); // Get the user role from AuthContext
@@ -46,7 +47,7 @@ const PayFee = () => {
 
                         // Fetch unpaid fees
                         const feesCollection = collection(db, 'fees');
-                        const feesQuery = query(feesCollection, where('membershipId', '==', membershipData.id), where('paid', '==', 'No'));
+                        const feesQuery = query(feesCollection, where('membershipId', '==', membershipData.id), where('paid', 'in', UNPAID_VALUES));
                         const feesSnapshot = await getDocs(feesQuery);
 
                         const feesData = await Promise.all(
@@ -72,7 +73,7 @@ const PayFee = () => {
                                         return {
                                             feeId: feeData.id,
                                             borrowId: feeData.borrowId,
-                                            amount: feeData.amount,
+                                            amount: feeAmountDue(feeData),
                                             returnDate: borrowData.dueDate,
                                             bookTitle: bookData.name,
                                             bookAuthor: bookData.author,
@@ -189,7 +190,7 @@ const PayFee = () => {
                                         className="p-2 hover:bg-gray-200 cursor-pointer"
                                         onClick={() => handleSelectFee(fee)}
                                     >
-                                        {fee.bookTitle} - {fee.bookAuthor} (Due: {fee.returnDate}) - ${fee.amount}
+                                        {fee.bookTitle} - {fee.bookAuthor} (Due: {fee.returnDate}) - ${fee.amount.toFixed(2)}
                                     </li>
                                 ))}
                             </ul>
@@ -217,7 +218,7 @@ const PayFee = () => {
                             <strong>Return Date:</strong> {feeDetails.returnDate}
                         </p>
                         <p>
-                            <strong>Amount:</strong> ${feeDetails.amount}
+                            <strong>Amount:</strong> ${feeDetails.amount.toFixed(2)}
                         </p>
                     </div>
                 )}
@@ -0,0 +1,6 @@
+// Fees store amountCents (a number) and paid (a boolean). Fees the backend has not migrated
+// yet still have amount as a dollar string and paid as "Yes"/"No".
+
+// Amount in dollars
+export const feeAmount = (fee) =>
+    fee.amountCents != null ? fee.amountCents / 100 : parseFloat(fee.amount) || 0;
@@ -3,6 +3,7 @@ import { ResponsiveBar } from "@nivo/bar";
 import { ResponsivePie } from "@nivo/pie";
 import { db } from "../firebaseconfig.js";
 import { collection, onSnapshot } from "firebase/firestore";
+import { feeAmount } from "../fees.js";
 
 const BooksPage = () => {
     const [booksWithFees, setBooksWithFees] = useState([]);
@@ -103,7 +104,7 @@ const BooksPage = () => {
                 return {
                     id: fee.id,
                     label: book?.name || "Unknown",
-                    value: parseFloat(fee.amount),
+                    value: feeAmount(fee),
                 };
             });
 
@@ -114,7 +115,7 @@ const BooksPage = () => {
                 const borrow = borrowsData.find((b) => b.id === fee.borrowId);
                 const book = booksData.find((b) => b.id === borrow.bookId);
                 if (book) {
-                    acc[book.name] = (acc[book.name] || 0) + parseFloat(fee.amount);
+                    acc[book.name] = (acc[book.name] || 0) + feeAmount(fee);
                 }
                 return acc;
             }, {});
@@ -4,6 +4,7 @@ import { ResponsivePie } from "@nivo/pie";
 import { ResponsiveLine } from "@nivo/line";
 import { db } from "../firebaseconfig.js";
 import { collection, onSnapshot } from "firebase/firestore";
+import { feeAmount } from "../fees.js";
 
 const RevenuePage = () => {
     const [revenueByMember, setRevenueByMember] = useState([]);
@@ -37,7 +38,7 @@ const RevenuePage = () => {
             // Revenue by Member
             const revenueByMemberData = feesData.reduce((acc, fee) => {
                 const memberId = fee.membershipId;
-                const amount = parseFloat(fee.amount);
+                const amount = feeAmount(fee);
                 acc[memberId] = (acc[memberId] || 0) + amount;
                 return acc;
             }, {});
@@ -55,7 +56,7 @@ const RevenuePage = () => {
                 const borrow = borrowsData.find((b) => b.id === fee.borrowId);
                 const book = booksData.find((b) => b.id === borrow.bookId);
                 if (book) {
-                    acc[book.name] = (acc[book.name] || 0) + parseFloat(fee.amount);
+                    acc[book.name] = (acc[book.name] || 0) + feeAmount(fee);
                 }
                 return acc;
             }, {});
@@ -75,7 +76,7 @@ const RevenuePage = () => {
                     month: "short",
                     year: "numeric",
                 });
-                acc[date] = (acc[date] || 0) + parseFloat(fee.amount);
+                acc[date] = (acc[date] || 0) + feeAmount(fee);
                 return acc;
             }, {});
 
@@ -94,7 +95,7 @@ const RevenuePage = () => {
                 return {
                     id: fee.id,
                     label: book?.name || "Unknown",
-                    value: parseFloat(fee.amount),
+                    value: feeAmount(fee),
                 };
             });
 
@@ -3,6 +3,7 @@ import { ResponsiveBar } from "@nivo/bar";
 import { ResponsivePie } from "@nivo/pie";
 import { db } from "../firebaseconfig.js";
 import { collection, onSnapshot } from "firebase/firestore";
+import { feeAmount } from "../fees.js";
 
 const UsersPage = () => {
     const [userActivity] = useState([]);
@@ -85,7 +86,7 @@ const UsersPage = () => {
             // Fee Payments Per User
             const feesByUser = feesData.reduce((acc, fee) => {
                 const userName = membershipIdToCitizenName[fee.membershipId] || "Unknown Membership";
-                acc[userName] = (acc[userName] || 0) + parseFloat(fee.amount);
+                acc[userName] = (acc[userName] || 0) + feeAmount(fee);
                 return acc;
             }, {});
 